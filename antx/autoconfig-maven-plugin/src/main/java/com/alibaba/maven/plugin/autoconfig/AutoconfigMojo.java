@@ -92,6 +92,27 @@ public class AutoconfigMojo extends AbstractMojo {
      */
     private String type;
 
+    /**
+     * Number of independent packages or directories to configure at the same time.
+     *
+     * @parameter expression="${autoconfig.parallelism}" default-value="1"
+     */
+    private int parallelism;
+
+    /**
+     * Regenerate all files even if the descriptors, templates and referenced properties are unchanged.
+     *
+     * @parameter expression="${autoconfig.force}" default-value="false"
+     */
+    private boolean force;
+
+    /**
+     * Templates and other buffered contents larger than this number of bytes are spilled to temp files.
+     *
+     * @parameter expression="${autoconfig.spillThreshold}" default-value="1048576"
+     */
+    private int spillThreshold;
+
     /**
      * User properties file.
      *
@@ -149,6 +170,9 @@ public class AutoconfigMojo extends AbstractMojo {
             runtimeImpl.setInteractiveMode(interactiveMode);
             runtimeImpl.setDests(new String[] { dest.getAbsolutePath() });
             runtimeImpl.setType(type);
+            runtimeImpl.setParallelism(parallelism);
+            runtimeImpl.setIncremental(!force);
+            runtimeImpl.setSpillThreshold(spillThreshold);
 
             if (descriptors != null) {
                 runtimeImpl.setDescriptorPatterns(descriptors.getIncludes(), descriptors.getExcludes());
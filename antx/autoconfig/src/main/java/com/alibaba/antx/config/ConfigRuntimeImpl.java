@@ -26,13 +26,15 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 import com.alibaba.antx.config.descriptor.ConfigDescriptor;
 import com.alibaba.antx.config.entry.ConfigEntry;
+import com.alibaba.antx.config.entry.ConfigEntryExecutor;
 import com.alibaba.antx.config.entry.ConfigEntryFactory;
 import com.alibaba.antx.config.entry.ConfigEntryFactoryImpl;
+import com.alibaba.antx.config.generator.ContentBufferStore;
+import com.alibaba.antx.config.generator.VelocityTemplateEngine;
 import com.alibaba.antx.config.props.PropertiesResource;
 import com.alibaba.antx.config.props.PropertiesSet;
 import com.alibaba.antx.config.wizard.text.ConfigWizardLoader;
@@ -57,7 +59,12 @@ public class ConfigRuntimeImpl implements ConfigRuntime {
     private PropertiesSet  props;
     private boolean        verbose;
     private File           tempdir;
-    private ConfigEntryFactory configEntryFactory = new ConfigEntryFactoryImpl(this);
+    private int            parallelism = 1;
+    private boolean        incremental = true;
+    private int            spillThreshold = ContentBufferStore.DEFAULT_SPILL_THRESHOLD;
+    private ContentBufferStore           contentBufferStore;
+    private ConfigEntryFactory           configEntryFactory = new ConfigEntryFactoryImpl(this);
+    private volatile ConfigEntryExecutor configEntryExecutor;
 
     public ConfigRuntimeImpl() {
         this(System.in, System.out, System.err, null);
@@ -90,11 +97,13 @@ public class ConfigRuntimeImpl implements ConfigRuntime {
     }
 
     public PrintWriter getOut() {
-        return out;
+        PrintWriter captured = configEntryExecutor == null ? null : configEntryExecutor.getCapturedOut();
+        return captured == null ? out : captured;
     }
 
     public PrintWriter getErr() {
-        return err;
+        PrintWriter captured = configEntryExecutor == null ? null : configEntryExecutor.getCapturedErr();
+        return captured == null ? err : captured;
     }
 
     public String getCharset() {
@@ -137,6 +146,15 @@ public class ConfigRuntimeImpl implements ConfigRuntime {
         return verbose;
     }
 
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /** 设置是否跳过descriptor、模板及属性值均未改变的目标文件，默认为<code>true</code>。 */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
     public String getType() {
         return type;
     }
@@ -149,6 +167,56 @@ public class ConfigRuntimeImpl implements ConfigRuntime {
         return configEntryFactory;
     }
 
+    public synchronized ConfigEntryExecutor getConfigEntryExecutor() {
+        if (configEntryExecutor == null) {
+            configEntryExecutor = new ConfigEntryExecutor(this, parallelism);
+        }
+
+        return configEntryExecutor;
+    }
+
+    private synchronized void shutdownConfigEntryExecutor() {
+        if (configEntryExecutor != null) {
+            configEntryExecutor.shutdown();
+            configEntryExecutor = null;
+        }
+    }
+
+    public synchronized ContentBufferStore getContentBufferStore() {
+        if (contentBufferStore == null) {
+            contentBufferStore = new ContentBufferStore(spillThreshold, tempdir);
+        }
+
+        return contentBufferStore;
+    }
+
+    public int getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /** 设置暂存内容的阈值，超过该字节数的模板等内容将被转存到临时文件中。 */
+    public void setSpillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold < 0 ? 0 : spillThreshold;
+    }
+
+    public File getTempdir() {
+        return tempdir;
+    }
+
+    /** 设置临时目录，被转存的模板等内容将被保存在该目录中。 */
+    public void setTempdir(File tempdir) {
+        this.tempdir = tempdir;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /** 设置并行生成entries的线程数，1表示串行。 */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism < 1 ? 1 : parallelism;
+    }
+
     public void setDescriptorPatterns(String includes, String excludes) {
         this.descriptorPatterns = new PatternSet(includes, excludes);
     }
@@ -324,14 +392,25 @@ public class ConfigRuntimeImpl implements ConfigRuntime {
             wizard.loadAndStart();
 
             // 生成配置文件
-            boolean allSuccess = true;
-
-            for (Iterator i = entries.iterator(); i.hasNext(); ) {
-                ConfigEntry entry = (ConfigEntry) i.next();
+            boolean allSuccess;
 
-                allSuccess &= entry.generate();
+            try {
+                allSuccess = getConfigEntryExecutor().generate(
+                        (ConfigEntry[]) entries.toArray(new ConfigEntry[entries.size()]));
+            } finally {
+                shutdownConfigEntryExecutor();
             }
 
+            VelocityTemplateEngine engine = VelocityTemplateEngine.getInstance();
+
+            debug("Template cache: " + engine.getTemplateCacheHits() + " hits, " + engine.getTemplateCacheMisses()
+                  + " misses\n");
+
+            ContentBufferStore store = getContentBufferStore();
+
+            debug("Peak buffered bytes: " + store.getPeakBufferedBytes() + ", spilled " + store.getSpilledBytes()
+                  + " bytes to " + store.getSpilledFiles() + " temp files\n");
+
             return allSuccess;
         } else {
             ConfigWizardLoader wizard = new ConfigWizardLoader(this, inlineDescriptor);
@@ -21,7 +21,9 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.PrintWriter;
 
+import com.alibaba.antx.config.entry.ConfigEntryExecutor;
 import com.alibaba.antx.config.entry.ConfigEntryFactory;
+import com.alibaba.antx.config.generator.ContentBufferStore;
 import com.alibaba.antx.config.props.PropertiesSet;
 import com.alibaba.antx.util.PatternSet;
 
@@ -50,7 +52,15 @@ public interface ConfigSettings extends ConfigLogger {
 
     boolean isVerbose();
 
+    /** 是否跳过descriptor、模板及属性值均未改变的目标文件。 */
+    boolean isIncremental();
+
     ConfigEntryFactory getConfigEntryFactory();
 
+    ConfigEntryExecutor getConfigEntryExecutor();
+
+    /** 取得用来暂存模板等内容的store，较大的内容将被转存到临时文件中。 */
+    ContentBufferStore getContentBufferStore();
+
     String getType();
 }
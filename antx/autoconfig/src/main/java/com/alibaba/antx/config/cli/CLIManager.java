@@ -48,6 +48,10 @@ public class CLIManager {
     public static final String OPT_SHARED_PROPERTIES_NAME = "n";
     public static final String OPT_OUTPUT_FILES           = "o";
     public static final String OPT_TYPE                   = "T";
+    public static final String OPT_PARALLELISM            = "j";
+    public static final String OPT_FORCE                  = "f";
+    public static final String OPT_SPILL_THRESHOLD        = "b";
+    public static final String OPT_TEMPDIR                = "m";
     private Options options;
 
     public CLIManager() {
@@ -97,6 +101,20 @@ public class CLIManager {
 
         options.addOption(builder.withLongOpt("type").hasArg().withDescription("文件类型，例如：war, jar, ear等")
                                  .create(OPT_TYPE));
+
+        options.addOption(builder.withLongOpt("parallelism").hasArg()
+                                 .withDescription("同时生成多少个互相独立的包或目录，默认为1，即串行生成。"
+                                                  + "并行时控制台输出仍按顺序显示，但日志可能交错").create(OPT_PARALLELISM));
+
+        options.addOption(builder.withLongOpt("force").withDescription("强制重新生成所有文件，即使模板和属性值均未改变")
+                                 .create(OPT_FORCE));
+
+        options.addOption(builder.withLongOpt("spill-threshold").hasArg()
+                                 .withDescription("模板等内容超过多少字节时，转存到临时文件中，以节省内存，默认为1048576")
+                                 .create(OPT_SPILL_THRESHOLD));
+
+        options.addOption(builder.withLongOpt("tempdir").hasArg().withDescription("保存临时文件的目录，默认为当前目录")
+                                 .create(OPT_TEMPDIR));
     }
 
     public CommandLine parse(String[] args) {
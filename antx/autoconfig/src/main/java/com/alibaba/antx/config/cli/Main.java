@@ -17,6 +17,7 @@
 
 package com.alibaba.antx.config.cli;
 
+import java.io.File;
 import java.text.MessageFormat;
 
 import com.alibaba.antx.config.ConfigConstant;
@@ -125,6 +126,35 @@ public class Main {
                                        cli.getOptionValue(CLIManager.OPT_EXCLUDE_PACKAGES));
 
         runtimeImpl.setType(cli.getOptionValue(CLIManager.OPT_TYPE));
+
+        if (cli.hasOption(CLIManager.OPT_PARALLELISM)) {
+            String parallelism = cli.getOptionValue(CLIManager.OPT_PARALLELISM);
+
+            try {
+                runtimeImpl.setParallelism(Integer.parseInt(parallelism.trim()));
+            } catch (NumberFormatException e) {
+                throw new CLIException("Invalid parallelism: " + parallelism);
+            }
+        }
+
+        if (cli.hasOption(CLIManager.OPT_FORCE)) {
+            runtimeImpl.setIncremental(false);
+        }
+
+        if (cli.hasOption(CLIManager.OPT_SPILL_THRESHOLD)) {
+            String spillThreshold = cli.getOptionValue(CLIManager.OPT_SPILL_THRESHOLD);
+
+            try {
+                runtimeImpl.setSpillThreshold(Integer.parseInt(spillThreshold.trim()));
+            } catch (NumberFormatException e) {
+                throw new CLIException("Invalid spill threshold: " + spillThreshold);
+            }
+        }
+
+        if (cli.hasOption(CLIManager.OPT_TEMPDIR)) {
+            runtimeImpl.setTempdir(new File(cli.getOptionValue(CLIManager.OPT_TEMPDIR)));
+        }
+
         runtimeImpl.setDests(cli.getArgs());
 
         String[] outputs = null;
@@ -17,24 +17,42 @@
 
 package com.alibaba.antx.config.descriptor;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Properties;
 
 import com.alibaba.antx.config.ConfigException;
 import com.alibaba.antx.config.ConfigResource;
+import com.alibaba.toolkit.util.collection.ConcurrentSoftHashMap;
 import org.apache.commons.digester.Digester;
 import org.apache.commons.digester.plugins.PluginCreateRule;
 import org.apache.commons.digester.plugins.PluginDeclarationRule;
+import org.apache.commons.digester.plugins.PluginException;
 import org.apache.commons.digester.plugins.PluginRules;
 
 /**
  * 装入一个config descriptor的工具类。
+ * <p>
+ * <code>validators.xml</code>只被解析一次；相同内容（指纹）的descriptor也只被解析一次，以后只需将记录的SAX事件重放给新的digester，
+ * 生成新的<code>ConfigDescriptor</code>对象。此类可被多个线程同时使用。
+ * </p>
+ * <p>
+ * 被记录的文档以软引用保存，最多保存{@link #MAX_CACHED_DOCUMENTS}个，内存不足时可被回收。
+ * </p>
  *
  * @author Michael Zhou
  */
 public class ConfigDescriptorLoader {
+    /** 最多缓存的descriptor个数。 */
+    public static final  int                   MAX_CACHED_DOCUMENTS = 256;
+    private static final ConcurrentSoftHashMap cache                = new ConcurrentSoftHashMap(MAX_CACHED_DOCUMENTS);
+    private static       Map<String, String>   validatorClasses;
+
     /**
      * 从指定输入流装入配置文件。
      *
@@ -42,28 +60,75 @@ public class ConfigDescriptorLoader {
      * @param name descriptor的名字（路径）
      * @return config descriptor
      */
-    public synchronized ConfigDescriptor load(ConfigResource descriptorResource, InputStream istream) {
+    public ConfigDescriptor load(ConfigResource descriptorResource, InputStream istream) {
+        return load(descriptorResource, parse(descriptorResource, istream));
+    }
+
+    /**
+     * 从descriptor的内容装入配置文件，相同指纹的内容只被解析一次。
+     *
+     * @param content descriptor的内容
+     * @param digest  内容的指纹
+     * @return config descriptor
+     */
+    public ConfigDescriptor load(ConfigResource descriptorResource, byte[] content, String digest) {
+        RecordedDocument document = (RecordedDocument) cache.get(digest);
+
+        if (document == null) {
+            document = parse(descriptorResource, new ByteArrayInputStream(content));
+            cache.putIfAbsent(digest, document);
+        }
+
+        return load(descriptorResource, document);
+    }
+
+    private RecordedDocument parse(ConfigResource descriptorResource, InputStream istream) {
+        try {
+            return RecordedDocument.parse(istream);
+        } catch (Exception e) {
+            throw new ConfigException("Failed to load config descriptor: " + descriptorResource.getURL(), e);
+        }
+    }
+
+    private ConfigDescriptor load(ConfigResource descriptorResource, RecordedDocument document) {
+        ConfigDescriptor descriptor = new ConfigDescriptor(descriptorResource);
         Digester digester = getDigester();
 
-        digester.push(new ConfigDescriptor(descriptorResource));
+        digester.push(descriptor);
 
         try {
-            return (ConfigDescriptor) digester.parse(istream);
+            document.replay(digester);
         } catch (Exception e) {
             throw new ConfigException("Failed to load config descriptor: " + descriptorResource.getURL(), e);
         }
+
+        return descriptor;
     }
 
     /** 取得validator的列表。 */
-    public synchronized Map loadValidatorClasses() {
-        Digester digester = loadValidatorPlugins();
-
-        return (Map) digester.pop();
+    public Map loadValidatorClasses() {
+        return new HashMap<String, String>(getValidatorClasses());
     }
 
     /** 创建读取descriptor的digester。 */
     protected Digester getDigester() {
-        Digester digester = loadValidatorPlugins();
+        Digester digester = new Digester();
+
+        digester.setRules(new PluginRules());
+
+        // 声明validators.xml中定义的validator plugins
+        try {
+            for (Map.Entry<String, String> entry : getValidatorClasses().entrySet()) {
+                Properties props = new Properties();
+
+                props.setProperty("id", entry.getKey());
+                props.setProperty("class", entry.getValue());
+
+                PluginDeclarationRule.declarePlugin(digester, props);
+            }
+        } catch (PluginException e) {
+            throw new ConfigException("Failed to load validators", e);
+        }
 
         // config
         digester.addSetProperties("config");
@@ -97,37 +162,36 @@ public class ConfigDescriptorLoader {
         return digester;
     }
 
-    /** 读取validators.xml中的validator定义。 */
-    private Digester loadValidatorPlugins() {
-        Digester digester = new Digester();
+    /** 读取validators.xml中的validator定义，只读取一次。 */
+    private static synchronized Map<String, String> getValidatorClasses() {
+        if (validatorClasses == null) {
+            Digester digester = new Digester();
 
-        digester.setRules(new PluginRules());
+            digester.addObjectCreate("config-property-validators", LinkedHashMap.class);
 
-        digester.addObjectCreate("config-property-validators", HashMap.class);
+            digester.addCallMethod("config-property-validators/validator", "put", 2);
+            digester.addCallParam("config-property-validators/validator", 0, "id");
+            digester.addCallParam("config-property-validators/validator", 1, "class");
 
-        digester.addCallMethod("config-property-validators/validator", "put", 2);
-        digester.addCallParam("config-property-validators/validator", 0, "id");
-        digester.addCallParam("config-property-validators/validator", 1, "class");
+            InputStream istream = ConfigDescriptorLoader.class.getResourceAsStream("validators.xml");
 
-        digester.addRule("config-property-validators/validator", new PluginDeclarationRule());
+            try {
+                @SuppressWarnings("unchecked")
+                Map<String, String> classes = (Map<String, String>) digester.parse(istream);
 
-        InputStream istream = getClass().getResourceAsStream("validators.xml");
-
-        try {
-            digester.push(digester.parse(istream));
-        } catch (Exception e) {
-            throw new ConfigException("Failed to load validators", e);
-        } finally {
-            if (istream != null) {
-                try {
-                    istream.close();
-                } catch (IOException e) {
+                validatorClasses = Collections.unmodifiableMap(classes);
+            } catch (Exception e) {
+                throw new ConfigException("Failed to load validators", e);
+            } finally {
+                if (istream != null) {
+                    try {
+                        istream.close();
+                    } catch (IOException e) {
+                    }
                 }
             }
         }
 
-        digester.getRules().clear();
-
-        return digester;
+        return validatorClasses;
     }
 }
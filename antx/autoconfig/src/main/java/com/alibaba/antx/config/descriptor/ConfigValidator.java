@@ -55,6 +55,14 @@ public abstract class ConfigValidator {
         return getConfigProperty().getName() + ": " + this;
     }
 
+    /**
+     * 在批量验证之前被调用，以便提前开始耗时的检查（例如域名解析）。默认什么也不做。
+     *
+     * @param value 将要被验证的值
+     */
+    public void prepare(String value) {
+    }
+
     public abstract boolean validate(String value);
 
     @Override
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.config.descriptor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.LocatorImpl;
+
+/**
+ * 记录一个XML文档的SAX事件，不必重新解析XML，即可将同样的事件多次重放给<code>ContentHandler</code>（例如digester）。
+ * <p>
+ * 每个事件同时记录其在文档中的行号和列号，重放时通过<code>Locator</code>提供给handler，以便错误信息中仍能指出出错的位置。
+ * 记录完成后，此对象是不可变的，可被多个线程同时重放。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+class RecordedDocument {
+    private final List<Event> events = new ArrayList<Event>();
+
+    private RecordedDocument() {
+    }
+
+    /** 解析并记录XML文档。 */
+    public static RecordedDocument parse(InputStream istream) throws IOException, SAXException,
+                                                                      ParserConfigurationException {
+        RecordedDocument document = new RecordedDocument();
+
+        SAXParserFactory.newInstance().newSAXParser().parse(istream, document.new Recorder());
+
+        return document;
+    }
+
+    /** 将记录的事件重放给指定的handler。 */
+    public void replay(ContentHandler handler) throws SAXException {
+        LocatorImpl locator = new LocatorImpl();
+
+        locator.setLineNumber(-1);
+        locator.setColumnNumber(-1);
+
+        handler.setDocumentLocator(locator);
+        handler.startDocument();
+
+        for (Event event : events) {
+            locator.setLineNumber(event.lineNumber);
+            locator.setColumnNumber(event.columnNumber);
+            event.replay(handler);
+        }
+
+        handler.endDocument();
+    }
+
+    /** 将SAX事件记录下来。 */
+    private class Recorder extends DefaultHandler {
+        private Locator locator;
+
+        @Override
+        public void setDocumentLocator(Locator locator) {
+            this.locator = locator;
+        }
+
+        @Override
+        public void startPrefixMapping(String prefix, String uri) {
+            add(Event.START_PREFIX_MAPPING, prefix, uri, null, null, null);
+        }
+
+        @Override
+        public void endPrefixMapping(String prefix) {
+            add(Event.END_PREFIX_MAPPING, prefix, null, null, null, null);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            add(Event.START_ELEMENT, uri, localName, qName, new AttributesImpl(attributes), null);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            add(Event.END_ELEMENT, uri, localName, qName, null, null);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            add(Event.CHARACTERS, null, null, null, null, new String(ch, start, length));
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+            add(Event.IGNORABLE_WHITESPACE, null, null, null, null, new String(ch, start, length));
+        }
+
+        @Override
+        public void processingInstruction(String target, String data) {
+            add(Event.PROCESSING_INSTRUCTION, target, data, null, null, null);
+        }
+
+        /** 记录事件及其当前位置。 */
+        private void add(int type, String name1, String name2, String qName, Attributes attributes, String text) {
+            int lineNumber = locator == null ? -1 : locator.getLineNumber();
+            int columnNumber = locator == null ? -1 : locator.getColumnNumber();
+
+            events.add(new Event(type, name1, name2, qName, attributes, text, lineNumber, columnNumber));
+        }
+    }
+
+    /** 代表一个SAX事件。 */
+    private static class Event {
+        private static final int START_PREFIX_MAPPING   = 1;
+        private static final int END_PREFIX_MAPPING     = 2;
+        private static final int START_ELEMENT          = 3;
+        private static final int END_ELEMENT            = 4;
+        private static final int CHARACTERS             = 5;
+        private static final int IGNORABLE_WHITESPACE   = 6;
+        private static final int PROCESSING_INSTRUCTION = 7;
+        private final int        type;
+        private final String     name1;
+        private final String     name2;
+        private final String     qName;
+        private final Attributes attributes;
+        private final String     text;
+        private final int        lineNumber;
+        private final int        columnNumber;
+
+        public Event(int type, String name1, String name2, String qName, Attributes attributes, String text,
+                     int lineNumber, int columnNumber) {
+            this.type = type;
+            this.name1 = name1;
+            this.name2 = name2;
+            this.qName = qName;
+            this.attributes = attributes;
+            this.text = text;
+            this.lineNumber = lineNumber;
+            this.columnNumber = columnNumber;
+        }
+
+        public void replay(ContentHandler handler) throws SAXException {
+            switch (type) {
+                case START_PREFIX_MAPPING:
+                    handler.startPrefixMapping(name1, name2);
+                    break;
+
+                case END_PREFIX_MAPPING:
+                    handler.endPrefixMapping(name1);
+                    break;
+
+                case START_ELEMENT:
+                    handler.startElement(name1, name2, qName, attributes);
+                    break;
+
+                case END_ELEMENT:
+                    handler.endElement(name1, name2, qName);
+                    break;
+
+                case CHARACTERS:
+                    handler.characters(text.toCharArray(), 0, text.length());
+                    break;
+
+                case IGNORABLE_WHITESPACE:
+                    handler.ignorableWhitespace(text.toCharArray(), 0, text.length());
+                    break;
+
+                case PROCESSING_INSTRUCTION:
+                    handler.processingInstruction(name1, name2);
+                    break;
+
+                default:
+                    throw new IllegalStateException("Unknown event type: " + type);
+            }
+        }
+    }
+}
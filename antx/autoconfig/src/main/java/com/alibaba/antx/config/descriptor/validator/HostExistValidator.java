@@ -17,9 +17,6 @@
 
 package com.alibaba.antx.config.descriptor.validator;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
-
 import com.alibaba.antx.config.descriptor.ConfigValidator;
 import com.alibaba.antx.util.StringUtil;
 import org.slf4j.Logger;
@@ -34,6 +31,11 @@ public class HostExistValidator extends ConfigValidator {
         return log;
     }
 
+    @Override
+    public void prepare(String value) {
+        HostResolver.getInstance().prefetch(value);
+    }
+
     @Override
     public boolean validate(String value) {
         if (value == null) {
@@ -50,13 +52,7 @@ public class HostExistValidator extends ConfigValidator {
 
         hostname = value;
 
-        try {
-            InetAddress.getByName(hostname);
-        } catch (UnknownHostException e) {
-            return false;
-        }
-
-        return true;
+        return HostResolver.getInstance().exists(hostname);
     }
 
     @Override
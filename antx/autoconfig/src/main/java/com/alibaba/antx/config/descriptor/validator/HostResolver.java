@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.config.descriptor.validator;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.alibaba.antx.util.StringUtil;
+
+/**
+ * 检查域名或IP是否存在，供<code>HostExistValidator</code>和<code>UrlValidator</code>使用。
+ * <p>
+ * 解析在后台线程中进行，结果在<code>ttl</code>时间内被缓存，同一个域名的并发请求共享同一次解析。
+ * 解析超过<code>timeout</code>时间仍未完成的，视作不存在。
+ * </p>
+ * <p>
+ * 可以通过{@link #setInstance(HostResolver)}替换成覆盖了{@link #resolve(String)}的实现，以避免访问真实的DNS。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+public class HostResolver {
+    public static final     long                          DEFAULT_TTL     = 60 * 1000;
+    public static final     long                          DEFAULT_TIMEOUT = 10 * 1000;
+    private static final    int                           MAX_THREADS     = 16;
+    private static volatile HostResolver                  instance        = new HostResolver();
+    private final           long                          ttl;
+    private final           long                          timeout;
+    private final           ConcurrentMap<String, Lookup> cache           = new ConcurrentHashMap<String, Lookup>();
+    private final           ThreadPoolExecutor            executor;
+
+    public HostResolver() {
+        this(DEFAULT_TTL, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * 创建resolver。
+     *
+     * @param ttl     缓存解析结果的毫秒数
+     * @param timeout 等待每次解析的最长毫秒数
+     */
+    public HostResolver(long ttl, long timeout) {
+        this.ttl = ttl;
+        this.timeout = timeout;
+        this.executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS,
+                                               new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "host-resolver-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /** 取得当前使用的resolver。 */
+    public static HostResolver getInstance() {
+        return instance;
+    }
+
+    /** 替换当前使用的resolver，例如在测试中使用不访问DNS的实现。 */
+    public static void setInstance(HostResolver resolver) {
+        instance = resolver == null ? new HostResolver() : resolver;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /** 在后台开始解析域名，不等待结果。 */
+    public void prefetch(String hostname) {
+        if (!StringUtil.isBlank(hostname)) {
+            getLookup(hostname.trim());
+        }
+    }
+
+    /**
+     * 查看域名或IP是否存在。
+     *
+     * @param hostname 域名或IP
+     * @return 如果能在timeout时间内解析成功，则返回<code>true</code>
+     */
+    public boolean exists(String hostname) {
+        if (StringUtil.isBlank(hostname)) {
+            return false;
+        }
+
+        FutureTask<Boolean> task = getLookup(hostname.trim()).task;
+
+        try {
+            return task.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    /** 清除缓存。 */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * 解析域名，如果域名不存在，则抛出<code>UnknownHostException</code>。子类可以覆盖此方法，以免访问真实的DNS。
+     */
+    protected void resolve(String hostname) throws UnknownHostException {
+        InetAddress.getByName(hostname);
+    }
+
+    private Lookup getLookup(final String hostname) {
+        long now = System.currentTimeMillis();
+        Lookup lookup = cache.get(hostname);
+
+        while (lookup == null || lookup.isExpired(now)) {
+            Lookup newLookup = new Lookup(now + ttl, new FutureTask<Boolean>(new Callable<Boolean>() {
+                public Boolean call() {
+                    try {
+                        resolve(hostname);
+                        return true;
+                    } catch (UnknownHostException e) {
+                        return false;
+                    }
+                }
+            }));
+
+            boolean added = lookup == null ? cache.putIfAbsent(hostname, newLookup) == null : cache.replace(hostname,
+                                                                                                              lookup, newLookup);
+
+            if (added) {
+                executor.execute(newLookup.task);
+                return newLookup;
+            }
+
+            lookup = cache.get(hostname);
+        }
+
+        return lookup;
+    }
+
+    /** 代表一次解析及其结果。 */
+    private static class Lookup {
+        private final long                expires;
+        private final FutureTask<Boolean> task;
+
+        public Lookup(long expires, FutureTask<Boolean> task) {
+            this.expires = expires;
+            this.task = task;
+        }
+
+        /** 未完成的解析不会过期，以免同一域名被重复解析。 */
+        public boolean isExpired(long now) {
+            return task.isDone() && now > expires;
+        }
+    }
+}
@@ -17,10 +17,8 @@
 
 package com.alibaba.antx.config.descriptor.validator;
 
-import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.UnknownHostException;
 
 import com.alibaba.antx.config.descriptor.ConfigValidator;
 import com.alibaba.antx.util.StringUtil;
@@ -51,6 +49,17 @@ public class UrlValidator extends ConfigValidator {
         this.endsWithSlash = endsWithSlash;
     }
 
+    @Override
+    public void prepare(String value) {
+        if (checkHostExist && !StringUtil.isBlank(value)) {
+            try {
+                HostResolver.getInstance().prefetch(new URL(value.trim()).getHost());
+            } catch (MalformedURLException e) {
+                // 留待validate报告
+            }
+        }
+    }
+
     @Override
     public boolean validate(String value) {
         if (value == null) {
@@ -89,9 +98,7 @@ public class UrlValidator extends ConfigValidator {
         if (checkHostExist) {
             getLogger().info("Validating host name or IP address: " + url.getHost());
 
-            try {
-                InetAddress.getByName(url.getHost());
-            } catch (UnknownHostException e) {
+            if (!HostResolver.getInstance().exists(url.getHost())) {
                 message = "非法的域名或IP：" + url.getHost();
                 return false;
             }
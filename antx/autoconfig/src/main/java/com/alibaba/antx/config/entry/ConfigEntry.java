@@ -31,7 +31,6 @@ import com.alibaba.antx.config.ConfigSettings;
 import com.alibaba.antx.config.descriptor.ConfigDescriptor;
 import com.alibaba.antx.config.generator.ConfigGenerator;
 import com.alibaba.antx.util.PatternSet;
-import com.alibaba.antx.util.SelectorUtil;
 import com.alibaba.antx.util.scanner.DefaultScannerHandler;
 
 /**
@@ -59,6 +58,8 @@ public abstract class ConfigEntry {
         this.outputFile = outputFile;
         this.settings = settings;
         this.generator = new ConfigGenerator(settings);
+        this.generator.setIncremental(settings.isIncremental());
+        this.generator.setContentBufferStore(settings.getContentBufferStore());
     }
 
     /**
@@ -267,11 +268,8 @@ public abstract class ConfigEntry {
             String name = getScanner().getPath();
             boolean followUp = false;
 
-            followUp |= SelectorUtil.matchPathPrefix(name, getDescriptorPatterns().getIncludes(),
-                                                     getDescriptorPatterns().getExcludes());
-
-            followUp |= SelectorUtil.matchPathPrefix(name, getPackagePatterns().getIncludes(), getPackagePatterns()
-                    .getExcludes());
+            followUp |= getDescriptorPatterns().matchPathPrefix(name);
+            followUp |= getPackagePatterns().matchPathPrefix(name);
 
             if (isPackageFile(name)) {
                 return false;
@@ -314,8 +312,7 @@ public abstract class ConfigEntry {
          * @return 如果符合descriptor的patterns，则返回<code>true</code>
          */
         private boolean isDescriptorFile(String name) {
-            return SelectorUtil.matchPath(name, getDescriptorPatterns().getIncludes(), getDescriptorPatterns()
-                    .getExcludes());
+            return getDescriptorPatterns().matchPath(name);
         }
 
         /**
@@ -325,7 +322,7 @@ public abstract class ConfigEntry {
          * @return 如果符合jarfile的patterns，则返回<code>true</code>
          */
         private boolean isPackageFile(String name) {
-            return SelectorUtil.matchPath(name, getPackagePatterns().getIncludes(), getPackagePatterns().getExcludes());
+            return getPackagePatterns().matchPath(name);
         }
     }
 }
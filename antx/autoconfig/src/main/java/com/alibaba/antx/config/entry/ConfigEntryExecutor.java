@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.config.entry;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.alibaba.antx.config.ConfigException;
+import com.alibaba.antx.config.ConfigSettings;
+
+/**
+ * 用来生成一组互相独立的<code>ConfigEntry</code>的执行器。
+ * <p>
+ * 当parallelism大于1时，entries在一个有界的线程池中并行生成。每个entry的控制台输出被暂存起来，待所有entries结束后，
+ * 按entries原有的顺序输出，因此输出的内容和顺序与串行执行时相同。同一entry的标准输出和错误输出被暂存在同一个有序的缓冲区中，
+ * 以保持两者之间的相对顺序。
+ * </p>
+ * <p>
+ * 只有通过<code>ConfigSettings</code>输出的内容被暂存，通过logger输出的日志不经过暂存区，并行时可能和其它entries的日志交错。
+ * </p>
+ * <p>
+ * 父entry在等待子entries时，会亲自执行那些尚未被线程池取走的子entries，因此嵌套的entries不会因线程池耗尽而死锁。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+public class ConfigEntryExecutor {
+    private final ConfigSettings             settings;
+    private final ExecutorService            executor;
+    private final ThreadLocal<OutputCapture> captures = new ThreadLocal<OutputCapture>();
+
+    public ConfigEntryExecutor(ConfigSettings settings, int parallelism) {
+        this.settings = settings;
+
+        if (parallelism > 1) {
+            this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "autoconfig-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /** 取得线程池，如果parallelism为1，则返回<code>null</code>。 */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /** 取得当前线程暂存的标准输出，如果当前线程不在生成entry，则返回<code>null</code>。 */
+    public PrintWriter getCapturedOut() {
+        OutputCapture capture = captures.get();
+        return capture == null ? null : capture.out;
+    }
+
+    /** 取得当前线程暂存的错误输出，如果当前线程不在生成entry，则返回<code>null</code>。 */
+    public PrintWriter getCapturedErr() {
+        OutputCapture capture = captures.get();
+        return capture == null ? null : capture.err;
+    }
+
+    /**
+     * 生成一组顶层的entries。
+     *
+     * @return 如果全部成功，则返回<code>true</code>
+     */
+    public boolean generate(ConfigEntry[] entries) {
+        return generate(entries, true);
+    }
+
+    /**
+     * 生成一组子entries。
+     *
+     * @return 如果全部成功，则返回<code>true</code>
+     */
+    public boolean generateSubEntries(ConfigEntry[] entries) {
+        return generate(entries, false);
+    }
+
+    private boolean generate(ConfigEntry[] entries, final boolean topLevel) {
+        boolean allSuccess = true;
+
+        if (executor == null || entries.length < 2) {
+            for (ConfigEntry entry : entries) {
+                allSuccess &= topLevel ? entry.generate() : entry.generate(null, null);
+            }
+
+            return allSuccess;
+        }
+
+        @SuppressWarnings("unchecked")
+        FutureTask<Boolean>[] tasks = new FutureTask[entries.length];
+        OutputCapture[] outputs = new OutputCapture[entries.length];
+
+        for (int i = 0; i < entries.length; i++) {
+            final ConfigEntry entry = entries[i];
+            final OutputCapture output = new OutputCapture();
+
+            outputs[i] = output;
+            tasks[i] = new FutureTask<Boolean>(new Callable<Boolean>() {
+                public Boolean call() {
+                    OutputCapture saved = captures.get();
+
+                    captures.set(output);
+
+                    try {
+                        return topLevel ? entry.generate() : entry.generate(null, null);
+                    } finally {
+                        output.flush();
+
+                        if (saved == null) {
+                            captures.remove();
+                        } else {
+                            captures.set(saved);
+                        }
+                    }
+                }
+            });
+
+            executor.execute(tasks[i]);
+        }
+
+        for (int i = 0; i < tasks.length; i++) {
+            // 如果该任务仍未开始，则在当前线程中执行，否则什么也不做。
+            tasks[i].run();
+
+            try {
+                allSuccess &= tasks[i].get();
+            } catch (InterruptedException e) {
+                cancel(tasks, i);
+                Thread.currentThread().interrupt();
+                throw new ConfigException(e);
+            } catch (ExecutionException e) {
+                outputs[i].writeTo(settings);
+                cancel(tasks, i);
+
+                Throwable cause = e.getCause();
+
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else {
+                    throw new ConfigException(cause);
+                }
+            }
+
+            outputs[i].writeTo(settings);
+        }
+
+        return allSuccess;
+    }
+
+    private void cancel(FutureTask<Boolean>[] tasks, int index) {
+        for (int i = index + 1; i < tasks.length; i++) {
+            tasks[i].cancel(false);
+        }
+    }
+
+    /** 关闭线程池。 */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /** 暂存一个entry的输出，标准输出和错误输出按写入的顺序保存在同一个列表中。 */
+    private static class OutputCapture {
+        private final List<Chunk> chunks = new ArrayList<Chunk>();
+        private final PrintWriter out    = new PrintWriter(new ChunkWriter(false), true);
+        private final PrintWriter err    = new PrintWriter(new ChunkWriter(true), true);
+
+        private void flush() {
+            out.flush();
+            err.flush();
+        }
+
+        /** 将暂存的输出按原来的顺序写到当前线程的输出中，后者可能是真正的控制台，也可能是父entry的暂存区。 */
+        private void writeTo(ConfigSettings settings) {
+            synchronized (chunks) {
+                for (Chunk chunk : chunks) {
+                    PrintWriter writer = chunk.err ? settings.getErr() : settings.getOut();
+
+                    writer.print(chunk.text);
+                    writer.flush();
+                }
+            }
+        }
+
+        /** 写入同一个列表的writer，和前一段同为标准输出或错误输出的内容被合并。 */
+        private class ChunkWriter extends Writer {
+            private final boolean err;
+
+            private ChunkWriter(boolean err) {
+                this.err = err;
+            }
+
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+                synchronized (chunks) {
+                    Chunk last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+
+                    if (last == null || last.err != err) {
+                        last = new Chunk(err);
+                        chunks.add(last);
+                    }
+
+                    last.text.append(cbuf, off, len);
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        }
+    }
+
+    /** 一段标准输出或错误输出。 */
+    private static class Chunk {
+        private final boolean       err;
+        private final StringBuilder text = new StringBuilder();
+
+        private Chunk(boolean err) {
+            this.err = err;
+        }
+    }
+}
@@ -27,7 +27,6 @@ import com.alibaba.antx.config.ConfigSettings;
 import com.alibaba.antx.config.generator.ConfigGeneratorSession;
 import com.alibaba.antx.config.generator.DirectoryCallback;
 import com.alibaba.antx.util.scanner.DirectoryScanner;
-import com.alibaba.antx.util.scanner.Scanner;
 import com.alibaba.antx.util.scanner.ScannerException;
 
 /**
@@ -50,7 +49,10 @@ public class DirectoryConfigEntry extends ConfigEntry {
     @Override
     protected void scan(InputStream istream) {
         Handler handler = new Handler();
-        Scanner scanner = new DirectoryScanner(getConfigEntryResource().getFile(), handler);
+        DirectoryScanner scanner = new DirectoryScanner(getConfigEntryResource().getFile(), handler);
+
+        // 借用生成entries的线程池预读子目录，回调的顺序不变
+        scanner.setExecutor(getConfigSettings().getConfigEntryExecutor().getExecutor());
 
         try {
             scanner.scan();
@@ -79,12 +81,8 @@ public class DirectoryConfigEntry extends ConfigEntry {
             getGenerator().closeSession();
         }
 
-        // 处理子entries
-        ConfigEntry[] subEntries = getSubEntries();
-
-        for (ConfigEntry subEntry : subEntries) {
-            allSuccess &= subEntry.generate(null, null);
-        }
+        // 处理子entries，子entries互相独立，可并行生成
+        allSuccess &= getConfigSettings().getConfigEntryExecutor().generateSubEntries(getSubEntries());
 
         return allSuccess;
     }
@@ -19,16 +19,17 @@ package com.alibaba.antx.config.entry;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -38,6 +39,11 @@ import com.alibaba.antx.config.ConfigSettings;
 import com.alibaba.antx.config.descriptor.ConfigDescriptor;
 import com.alibaba.antx.config.descriptor.ConfigGenerate;
 import com.alibaba.antx.config.generator.ConfigGeneratorCallback;
+import com.alibaba.antx.config.generator.ConfigGeneratorSession;
+import com.alibaba.antx.config.generator.ContentBuffer;
+import com.alibaba.antx.config.generator.ExistingEntryReader;
+import com.alibaba.antx.util.RawZipFile;
+import com.alibaba.antx.util.RawZipOutputStream;
 import com.alibaba.antx.util.scanner.ScannerException;
 import com.alibaba.antx.util.scanner.ZipScanner;
 
@@ -67,6 +73,11 @@ public class ZipConfigEntry extends ConfigEntry {
         Handler handler = new Handler();
         ZipScanner scanner = new ZipScanner(getConfigEntryResource().getURL(), handler);
 
+        // 如果是本地文件，则通过中央目录随机访问之，只解压需要的entries
+        if (istream == null) {
+            scanner.setZipFile(getConfigEntryResource().getFile());
+        }
+
         scanner.setInputStream(istream);
 
         try {
@@ -91,6 +102,14 @@ public class ZipConfigEntry extends ConfigEntry {
 
         getConfigSettings().debug("Processing files in " + getConfigEntryResource());
 
+        // 如果是原地修改本地zip文件，且所有目标文件都和上次生成时相同，则不必重写zip文件
+        if (istream == null && ostream == null && outputFile == null && getGenerator().isIncremental()
+            && isUpToDate(getConfigEntryResource().getFile())) {
+            getConfigSettings().info("<" + getConfigEntryResource().getURL() + ">\n    Unchanged, skipped\n");
+            return true;
+        }
+
+        RawZipFile rawZipFile = null;
         ZipInputStream zis = null;
         ZipOutputStream zos = null;
         Set dirs = new HashSet();
@@ -116,8 +135,13 @@ public class ZipConfigEntry extends ConfigEntry {
                 needCloseOutputStream = true;
             }
 
-            // 检查或打开istream
+            // 如果是本地文件，则随机访问之，未改变的文件将被原样复制，而不必解压和重新压缩
             if (istream == null) {
+                rawZipFile = openRawZipFile(getConfigEntryResource().getFile());
+            }
+
+            // 检查或打开istream
+            if (istream == null && rawZipFile == null) {
                 istream = getConfigEntryResource().getURL().openStream();
 
                 if (!(istream instanceof BufferedInputStream)) {
@@ -127,15 +151,23 @@ public class ZipConfigEntry extends ConfigEntry {
                 needCloseInputStream = true;
             }
 
-            zis = new ZipInputStream(istream);
-            zos = new ZipOutputStream(ostream);
+            getGenerator().startSession(getConfigSettings().getPropertiesSet());
+
+            if (rawZipFile != null) {
+                zos = new RawZipOutputStream(ostream);
 
-            ZipEntry zipEntry;
+                for (RawZipFile.Entry rawEntry : rawZipFile.getEntries()) {
+                    allSuccess &= processRawZipEntry(rawEntry, zos, dirs);
+                }
+            } else {
+                zis = new ZipInputStream(istream);
+                zos = new ZipOutputStream(ostream);
 
-            getGenerator().startSession(getConfigSettings().getPropertiesSet());
+                ZipEntry zipEntry;
 
-            while ((zipEntry = zis.getNextEntry()) != null) {
-                allSuccess &= processZipEntry(zipEntry, zis, zos, dirs);
+                while ((zipEntry = zis.getNextEntry()) != null) {
+                    allSuccess &= processZipEntry(zipEntry, zis, null, zos, dirs);
+                }
             }
 
             allSuccess &= getGenerator().getSession().generateLazyItems(new ZipCallback(zos, dirs));
@@ -157,6 +189,13 @@ public class ZipConfigEntry extends ConfigEntry {
                 }
             }
 
+            if (rawZipFile != null) {
+                try {
+                    rawZipFile.close();
+                } catch (IOException e) {
+                }
+            }
+
             // 仅当输入流是由当前entry亲自打开的，才关闭流
             if (needCloseInputStream && istream != null) {
                 try {
@@ -214,8 +253,50 @@ public class ZipConfigEntry extends ConfigEntry {
         return allSuccess;
     }
 
-    private boolean processZipEntry(ZipEntry zipEntry, ZipInputStream zis, ZipOutputStream zos, Set dirs)
-            throws IOException {
+    /** 试图随机访问本地zip文件，如果不是本地文件或格式不支持，则返回<code>null</code>。 */
+    private RawZipFile openRawZipFile(File file) {
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+
+        try {
+            return new RawZipFile(file);
+        } catch (ZipException e) {
+            getConfigSettings().debug("Could not access " + file + " randomly, reading it as a stream: " + e.getMessage());
+        } catch (IOException e) {
+            throw new ConfigException(e);
+        }
+
+        return null;
+    }
+
+    private boolean processRawZipEntry(RawZipFile.Entry rawEntry, ZipOutputStream zos, Set dirs) throws IOException {
+        ZipEntry zipEntry = rawEntry.toZipEntry();
+        String name = zipEntry.getName();
+
+        // 只有嵌套的jar和模板需要读取内容，其它entry被原样复制或忽略，不必解压
+        if (getSubEntry(name) == null && !getGenerator().isTemplateFile(name)) {
+            return processZipEntry(zipEntry, null, rawEntry, zos, dirs);
+        }
+
+        InputStream istream = rawEntry.getZipFile().getInputStream(rawEntry);
+
+        try {
+            return processZipEntry(zipEntry, istream, rawEntry, zos, dirs);
+        } finally {
+            istream.close();
+        }
+    }
+
+    /**
+     * 处理zip文件中的一个entry。
+     *
+     * @param zis      entry的内容，如果<code>rawEntry</code>不为<code>null</code>，且entry不需要读取内容，则为
+     *                 <code>null</code>
+     * @param rawEntry 如果不为<code>null</code>，则zos为<code>RawZipOutputStream</code>，不需要改变的文件将被原样复制
+     */
+    private boolean processZipEntry(ZipEntry zipEntry, InputStream zis, RawZipFile.Entry rawEntry,
+                                    ZipOutputStream zos, Set dirs) throws IOException {
         String name = zipEntry.getName();
         ConfigEntry subEntry = getSubEntry(name);
 
@@ -227,38 +308,155 @@ public class ZipConfigEntry extends ConfigEntry {
 
             return subEntry.generate(zis, zos);
         } else if (getGenerator().isTemplateFile(name)) {
-            // 先把流倒到内存里，因为要用多次
-            byte[] bytes = streamToBytes(zis);
-
             if (getGenerator().isDestFile(name)) {
                 // 对于目标文件，假设为WEB-INF/web.xml，先保存其内容。
                 // 在最后，检查如果没有META-INF/autoconf/WEB-INF/web.xml存在，则将其视为模板并生成之。
-                getGenerator().getSession().addLazyGenerateItem(name, bytes);
+                getGenerator().getSession().addLazyGenerateItem(name, zis);
                 return true;
             } else {
-                // 假设当前文件为META-INF/autoconf/**，那么复制并生成目标文件。
-                copyFile(zipEntry, new ByteArrayInputStream(bytes), zos);
-                return getGenerator().getSession().generate(name, new ZipCallback(bytes, zos, dirs));
+                // 先把流倒到buffer里，因为要用多次。较大的文件将被转存到临时文件中。
+                ContentBuffer buffer = getGenerator().getContentBufferStore().read(zis);
+
+                try {
+                    // 假设当前文件为META-INF/autoconf/**，那么复制并生成目标文件。
+                    InputStream istream = buffer.getInputStream();
+
+                    try {
+                        copyFile(zipEntry, rawEntry, istream, zos);
+                    } finally {
+                        istream.close();
+                    }
+
+                    return getGenerator().getSession().generate(name, new ZipCallback(buffer, zos, dirs));
+                } finally {
+                    buffer.dispose();
+                }
             }
         } else if (getGenerator().isDestFile(name)) {
             // 这个文件将被模板生成的文件覆盖，故忽略之
-        } else if (getGenerator().isDescriptorLogFile(name)) {
-            // 这个文件将被descriptor日志文件覆盖，故忽略之
+        } else if (getGenerator().isDescriptorLogFile(name) || getGenerator().isDescriptorFingerprintFile(name)) {
+            // 这个文件将被descriptor日志文件或指纹清单覆盖，故忽略之
         } else if (zipEntry.isDirectory()) {
             // 这是一个的目录，在不重复创建目录的前提下，复制即可
             mkdirs(zipEntry.getName(), zos, dirs);
         } else {
             // 这是一个普通文件，复制即可
-            copyFile(zipEntry, zis, zos);
+            copyFile(zipEntry, rawEntry, zis, zos);
         }
 
         return true;
     }
 
-    private byte[] streamToBytes(ZipInputStream zis) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        io(zis, baos);
-        return baos.toByteArray();
+    /** 检查本地zip文件中上次生成的结果是否仍然有效。 */
+    private boolean isUpToDate(File file) {
+        RawZipFile rawZipFile = openRawZipFile(file);
+
+        if (rawZipFile == null) {
+            return false;
+        }
+
+        try {
+            final Map<String, RawZipFile.Entry> entries = new HashMap<String, RawZipFile.Entry>();
+
+            for (RawZipFile.Entry entry : rawZipFile.getEntries()) {
+                entries.put(entry.getName().replace('\\', '/'), entry);
+            }
+
+            return isUpToDate(new ExistingEntries() {
+                public InputStream open(String name) throws IOException {
+                    RawZipFile.Entry entry = entries.get(name);
+                    return entry == null ? null : entry.getZipFile().getInputStream(entry);
+                }
+            });
+        } catch (IOException e) {
+            throw new ConfigException(e);
+        } finally {
+            try {
+                rawZipFile.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /** 检查嵌套的zip文件中上次生成的结果是否仍然有效。只有需要的文件才会被读入内存。 */
+    private boolean isUpToDate(InputStream istream) throws IOException {
+        Set<String> names = new HashSet<String>();
+
+        for (ConfigDescriptor descriptor : getGenerator().getConfigDescriptors()) {
+            names.add(getGenerator().getDescriptorFingerprintFile(descriptor));
+
+            for (ConfigGenerate generate : descriptor.getGenerates()) {
+                names.add(generate.getTemplateBase() + generate.getTemplate());
+                names.add(generate.getTemplate());
+                names.add(generate.getDestfile());
+            }
+        }
+
+        for (ConfigEntry subEntry : getSubEntries()) {
+            names.add(subEntry.getName());
+        }
+
+        final Map<String, ContentBuffer> entries = new HashMap<String, ContentBuffer>();
+
+        try {
+            ZipInputStream zis = new ZipInputStream(istream);
+            ZipEntry zipEntry;
+
+            while ((zipEntry = zis.getNextEntry()) != null) {
+                String name = zipEntry.getName().replace('\\', '/');
+
+                if (names.contains(name)) {
+                    entries.put(name, getGenerator().getContentBufferStore().read(zis));
+                }
+            }
+
+            return isUpToDate(new ExistingEntries() {
+                public InputStream open(String name) throws IOException {
+                    ContentBuffer buffer = entries.get(name);
+                    return buffer == null ? null : buffer.getInputStream();
+                }
+            });
+        } finally {
+            for (ContentBuffer buffer : entries.values()) {
+                buffer.dispose();
+            }
+        }
+    }
+
+    private boolean isUpToDate(ExistingEntries existingEntries) throws IOException {
+        // 检查自己的descriptors
+        try {
+            ConfigGeneratorSession session = getGenerator().startSession(getConfigSettings().getPropertiesSet());
+
+            if (!session.isUpToDate(new CheckingReader(existingEntries))) {
+                return false;
+            }
+        } finally {
+            getGenerator().closeSession();
+        }
+
+        // 检查嵌套的zip文件
+        for (ConfigEntry subEntry : getSubEntries()) {
+            if (!(subEntry instanceof ZipConfigEntry)) {
+                return false;
+            }
+
+            InputStream istream = existingEntries.open(subEntry.getName());
+
+            if (istream == null) {
+                return false;
+            }
+
+            try {
+                if (!((ZipConfigEntry) subEntry).isUpToDate(istream)) {
+                    return false;
+                }
+            } finally {
+                istream.close();
+            }
+        }
+
+        return true;
     }
 
     private void mkdirs(String dir, ZipOutputStream zos, Set dirs) throws IOException {
@@ -282,9 +480,14 @@ public class ZipConfigEntry extends ConfigEntry {
         }
     }
 
-    private void copyFile(ZipEntry zipEntry, InputStream istream, ZipOutputStream zos) throws IOException {
-        zos.putNextEntry(new ZipEntry(zipEntry));
-        io(istream, zos);
+    private void copyFile(ZipEntry zipEntry, RawZipFile.Entry rawEntry, InputStream istream, ZipOutputStream zos)
+            throws IOException {
+        if (rawEntry != null) {
+            ((RawZipOutputStream) zos).putRawEntry(rawEntry);
+        } else {
+            zos.putNextEntry(new ZipEntry(zipEntry));
+            io(istream, zos);
+        }
     }
 
     private void io(InputStream in, OutputStream out) throws IOException {
@@ -320,26 +523,34 @@ public class ZipConfigEntry extends ConfigEntry {
 
     /** 用来生成目标文件的callback。 */
     private final class ZipCallback implements ConfigGeneratorCallback {
-        private final byte[]          bytes;
+        private final ContentBuffer   buffer;
         private final ZipOutputStream zos;
         private final Set             dirs;
+        private       InputStream     istream;
 
         private ZipCallback(ZipOutputStream zos, Set dirs) {
             this(null, zos, dirs);
         }
 
-        private ZipCallback(byte[] bytes, ZipOutputStream zos, Set dirs) {
-            this.bytes = bytes;
+        private ZipCallback(ContentBuffer buffer, ZipOutputStream zos, Set dirs) {
+            this.buffer = buffer;
             this.zos = zos;
             this.dirs = dirs;
         }
 
         public String nextEntry(String template, ConfigGenerate generate) {
-            nextEntry(generate.getConfigDescriptor(), new ByteArrayInputStream(bytes), generate.getDestfile());
+            try {
+                nextEntry(generate.getConfigDescriptor(), buffer.getInputStream(), generate.getDestfile());
+            } catch (IOException e) {
+                throw new ConfigException(e);
+            }
+
             return template;
         }
 
         public void nextEntry(ConfigDescriptor descriptor, InputStream is, String dest) {
+            istream = is;
+
             try {
                 makeParentDirs(dest);
                 zos.putNextEntry(new ZipEntry(dest));
@@ -362,8 +573,20 @@ public class ZipConfigEntry extends ConfigEntry {
             getGenerator().getSession().setOutputStream(zos);
         }
 
+        public InputStream openExistingEntry(ConfigDescriptor descriptor, String name) {
+            return null; // zip文件总是被完整地重新生成
+        }
+
         public void closeEntry() {
-            // 不需要关闭流，因为是zip stream。
+            // 不需要关闭输出流，因为是zip stream；但输入流可能来自临时文件，需要关闭。
+            if (istream != null) {
+                try {
+                    istream.close();
+                } catch (IOException e) {
+                }
+
+                istream = null;
+            }
         }
 
         private void makeParentDirs(String name) throws IOException {
@@ -374,4 +597,27 @@ public class ZipConfigEntry extends ConfigEntry {
             }
         }
     }
+
+    /** 已存在的zip文件中的entries。 */
+    private interface ExistingEntries {
+        /** 打开指定名称的entry，如果不存在，则返回<code>null</code>。 */
+        InputStream open(String name) throws IOException;
+    }
+
+    /** 用来检查上次生成的结果是否仍然有效，只能读取已存在的entries。 */
+    private static final class CheckingReader implements ExistingEntryReader {
+        private final ExistingEntries existingEntries;
+
+        private CheckingReader(ExistingEntries existingEntries) {
+            this.existingEntries = existingEntries;
+        }
+
+        public InputStream openExistingEntry(ConfigDescriptor descriptor, String name) {
+            try {
+                return existingEntries.open(name);
+            } catch (IOException e) {
+                throw new ConfigException(e);
+            }
+        }
+    }
 }
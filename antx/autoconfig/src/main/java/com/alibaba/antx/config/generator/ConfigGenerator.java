@@ -21,6 +21,8 @@ import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -34,6 +36,7 @@ import com.alibaba.antx.config.descriptor.ConfigDescriptorLoader;
 import com.alibaba.antx.config.descriptor.ConfigGenerate;
 import com.alibaba.antx.config.props.PropertiesSet;
 import com.alibaba.antx.util.FileUtil;
+import com.alibaba.antx.util.StreamUtil;
 import com.alibaba.antx.util.StringUtil;
 
 public class ConfigGenerator {
@@ -42,8 +45,11 @@ public class ConfigGenerator {
     Map<String, List<ConfigGenerate>> generateTemplateFiles                   = new HashMap<String, List<ConfigGenerate>>();
     Map<String, List<ConfigGenerate>> generateTemplateFilesIncludingMetaInfos = new HashMap<String, List<ConfigGenerate>>();
     Map<String, ConfigGenerate>       generateDestFiles                       = new HashMap<String, ConfigGenerate>();
+    private Map<ConfigDescriptor, String> descriptorDigests = new HashMap<ConfigDescriptor, String>();
     private ConfigGeneratorSession session;
     private boolean initialized = false;
+    private boolean incremental = true;
+    private ContentBufferStore contentBufferStore = new ContentBufferStore();
 
     public ConfigGenerator(ConfigLogger logger) {
         this.logger = logger;
@@ -80,14 +86,67 @@ public class ConfigGenerator {
             throw new IllegalStateException("Cannot add config descriptors after initialization");
         }
 
+        // 先读入内存，以便计算整个descriptor的指纹
+        byte[] content;
+
+        try {
+            content = StreamUtil.readBytes(istream, false).toByteArray();
+        } catch (IOException e) {
+            throw new ConfigException(e);
+        }
+
+        String digest = digest(content);
         ConfigDescriptorLoader loader = new ConfigDescriptorLoader();
-        ConfigDescriptor descriptor = loader.load(descriptorResource, istream);
+        ConfigDescriptor descriptor = loader.load(descriptorResource, content, digest);
 
         configDescriptors.add(descriptor);
+        descriptorDigests.put(descriptor, digest);
 
         return descriptor;
     }
 
+    /** 计算SHA-1指纹。 */
+    static String digest(byte[] content) {
+        try {
+            return toHexString(MessageDigest.getInstance("SHA-1").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new ConfigException(e); // 不应发生
+        }
+    }
+
+    static String toHexString(byte[] bytes) {
+        StringBuilder buf = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes) {
+            buf.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return buf.toString();
+    }
+
+    /** 取得descriptor内容的指纹。 */
+    public String getDescriptorDigest(ConfigDescriptor descriptor) {
+        return descriptorDigests.get(descriptor);
+    }
+
+    /** 是否跳过指纹未变的目标文件，默认为<code>true</code>。 */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /** 取得用来暂存模板等内容的store。 */
+    public ContentBufferStore getContentBufferStore() {
+        return contentBufferStore;
+    }
+
+    public void setContentBufferStore(ContentBufferStore contentBufferStore) {
+        this.contentBufferStore = contentBufferStore;
+    }
+
     /** 在所有的descriptor都被加入进来以后，需要执行该方法进行初始化。 */
     public void init() {
         if (initialized) {
@@ -204,6 +263,22 @@ public class ConfigGenerator {
         return false;
     }
 
+    public String getDescriptorFingerprintFile(ConfigDescriptor descriptor) {
+        return descriptor.getName() + ".fingerprint";
+    }
+
+    public boolean isDescriptorFingerprintFile(String name) {
+        ensureInitialized();
+
+        for (ConfigDescriptor descriptor : configDescriptors) {
+            if (getDescriptorFingerprintFile(descriptor).equals(name)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     public ConfigGeneratorSession getSession() {
         ensureInitialized();
 
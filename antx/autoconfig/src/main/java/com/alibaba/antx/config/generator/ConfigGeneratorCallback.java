@@ -22,7 +22,7 @@ import java.io.InputStream;
 import com.alibaba.antx.config.descriptor.ConfigDescriptor;
 import com.alibaba.antx.config.descriptor.ConfigGenerate;
 
-public interface ConfigGeneratorCallback {
+public interface ConfigGeneratorCallback extends ExistingEntryReader {
     /** 切换到下一个目标文件，并设置相应的输入/输出流。 */
     String nextEntry(String template, ConfigGenerate generate);
 
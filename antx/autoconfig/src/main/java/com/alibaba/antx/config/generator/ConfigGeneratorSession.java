@@ -20,6 +20,7 @@ package com.alibaba.antx.config.generator;
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -29,13 +30,19 @@ import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -46,27 +53,38 @@ import com.alibaba.antx.config.props.PropertiesSet;
 import com.alibaba.antx.util.StreamUtil;
 import com.alibaba.antx.util.StringUtil;
 import com.alibaba.antx.util.i18n.LocaleInfo;
-import org.apache.velocity.app.event.EventCartridge;
-import org.apache.velocity.context.AbstractContext;
 import org.apache.velocity.context.Context;
 
 /** 代表一组运行时状态。 */
 public class ConfigGeneratorSession {
     protected final ConfigGenerator               generator;
     protected final Map                           props;
+    private final   ResolvedProperties            resolvedProps;
     private final   Map<String, Object[]>         descriptorLogs;
+    private final   Map<String, DescriptorContext> descriptorContexts;
     private final   Set<String>                   processedDestfiles;
     private final   Map<String, LazyGenerateItem> lazyGenerateItems;
+    private final   Map<String, FingerprintManifest> previousManifests;
+    private final   Map<String, FingerprintManifest> manifests;
+    private final   Set<String>                   regeneratedDescriptors;
+    private final   Set<String>                   unchangedDescriptors;
     private         ConfigGenerate                currentGenerate;
     private         InputStream                   currentInputStream;
     private         OutputStream                  currentOutputStream;
+    private         Map<String, String>           currentReferences;
 
     protected ConfigGeneratorSession(ConfigGenerator generator, PropertiesSet propSet) {
         this.generator = generator;
         this.props = propSet.getMergedProperties();
+        this.resolvedProps = new ResolvedProperties(props, generator.logger);
         this.descriptorLogs = new HashMap<String, Object[]>();
+        this.descriptorContexts = new HashMap<String, DescriptorContext>();
         this.processedDestfiles = new HashSet<String>();
         this.lazyGenerateItems = new HashMap<String, LazyGenerateItem>();
+        this.previousManifests = new HashMap<String, FingerprintManifest>();
+        this.manifests = new HashMap<String, FingerprintManifest>();
+        this.regeneratedDescriptors = new HashSet<String>();
+        this.unchangedDescriptors = new HashSet<String>();
 
         // 初始化日志，将被写入到和descriptor并列的目录中。
         ConfigDescriptor[] descriptors = generator.getConfigDescriptors();
@@ -105,49 +123,15 @@ public class ConfigGeneratorSession {
             throw new IllegalStateException("Have not call nextEntry method yet");
         }
 
-        final Map descriptorProps = new HashMap(currentGenerate.getConfigDescriptor().getContext());
+        ConfigDescriptor descriptor = currentGenerate.getConfigDescriptor();
+        DescriptorContext descriptorContext = descriptorContexts.get(descriptor.getName());
 
-        EventCartridge eventCartridge = new EventCartridge();
-        eventCartridge.addEventHandler(new PropertiesReferenceInsertionHandler(currentGenerate.getConfigDescriptor(),
-                                                                               props));
-
-        Context context = new AbstractContext() {
-            @Override
-            public Object internalRemove(Object key) {
-                return descriptorProps.remove(key);
-            }
-
-            @Override
-            public Object internalPut(String key, Object value) {
-                return descriptorProps.put(key, value);
-            }
-
-            @Override
-            public Object[] internalGetKeys() {
-                Set<Object> keys = new LinkedHashSet<Object>(props.keySet());
-                keys.addAll(descriptorProps.keySet());
-                return keys.toArray(new Object[keys.size()]);
-            }
-
-            @Override
-            public Object internalGet(String key) {
-                if (descriptorProps.containsKey(key)) {
-                    return descriptorProps.get(key);
-                } else {
-                    return PropertiesLoader.evaluate(key, props);
-                }
-            }
-
-            @Override
-            public boolean internalContainsKey(Object key) {
-                return descriptorProps.containsKey(key) || props.containsKey(key);
-            }
-        };
-
-        eventCartridge.attachToContext(context); // 允许使用${a.b.c}
-        context.put("D", "$"); // 可以用${D}来生成$
+        if (descriptorContext == null) {
+            descriptorContext = new DescriptorContext(descriptor, resolvedProps);
+            descriptorContexts.put(descriptor.getName(), descriptorContext);
+        }
 
-        return context;
+        return descriptorContext.createContext(currentReferences);
     }
 
     /** 将所有template生成相应的文件，并生成日志。 */
@@ -183,7 +167,7 @@ public class ConfigGeneratorSession {
                     throw new IllegalStateException("InputStream/OutputStream has not been set");
                 }
 
-                allSuccess &= generate(template, currentGenerate, currentInputStream, currentOutputStream);
+                allSuccess &= generate(template, currentGenerate, currentInputStream, currentOutputStream, callback);
             } finally {
                 try {
                     callback.closeEntry();
@@ -198,13 +182,57 @@ public class ConfigGeneratorSession {
         return allSuccess;
     }
 
-    private boolean generate(String template, ConfigGenerate generate, InputStream istream, OutputStream ostream) {
+    private boolean generate(String template, ConfigGenerate generate, InputStream istream, OutputStream ostream,
+                             ConfigGeneratorCallback callback) {
         // 记录处理过的destfiles
         processedDestfiles.add(generate.getDestfile());
 
+        // 模板需要读取两次：计算指纹及生成文件，较大的模板将被转存到临时文件中
+        ContentBuffer templateContent;
+
+        try {
+            templateContent = generator.getContentBufferStore().read(istream);
+        } catch (IOException e) {
+            throw new ConfigException(e);
+        }
+
+        try {
+            return generate(template, generate, templateContent, ostream, callback);
+        } finally {
+            templateContent.dispose();
+        }
+    }
+
+    private boolean generate(String template, ConfigGenerate generate, ContentBuffer templateContent,
+                             OutputStream ostream, ConfigGeneratorCallback callback) {
+        ConfigDescriptor descriptor = generate.getConfigDescriptor();
         String charset = generate.getCharset();
         String outputCharset = generate.getOutputCharset();
-        PrintWriter descriptorLog = (PrintWriter) descriptorLogs.get(generate.getConfigDescriptor().getName())[1];
+        PrintWriter descriptorLog = (PrintWriter) descriptorLogs.get(descriptor.getName())[1];
+        InputStream istream;
+
+        // 假如descriptor、模板及其引用的属性值均未改变，且目标文件存在，则不必重新生成
+        FingerprintManifest previousManifest = getPreviousManifest(descriptor, callback);
+
+        if (previousManifest != null && isUnchanged(generate, templateContent, previousManifest, callback)) {
+            getManifest(descriptor).copy(previousManifest, generate.getDestfile());
+            unchangedDescriptors.add(descriptor.getName());
+
+            descriptorLog.println("Unchanged " + template + " => " + generate.getDestfile());
+
+            generator.logger.info("<" + descriptor.getBaseURL() + ">\n    Unchanged " + template + " => "
+                                  + generate.getDestfile() + "\n");
+
+            return true;
+        }
+
+        regeneratedDescriptors.add(descriptor.getName());
+
+        try {
+            istream = templateContent.getInputStream();
+        } catch (IOException e) {
+            throw new ConfigException(e);
+        }
 
         if (StringUtil.isBlank(charset)) {
             istream = new BufferedInputStream(istream);
@@ -221,6 +249,7 @@ public class ConfigGeneratorSession {
 
         Reader reader = null;
         Writer writer = null;
+        MessageDigest outputDigest = newDigest();
 
         try {
             reader = new BufferedReader(new InputStreamReader(istream, charset)) {
@@ -229,7 +258,9 @@ public class ConfigGeneratorSession {
                     // 避免关闭
                 }
             };
-            writer = new BufferedWriter(new OutputStreamWriter(ostream, outputCharset)) {
+            // 计算生成结果的摘要，以便下次生成时检查目标文件是否被其它程序改变
+            writer = new BufferedWriter(new OutputStreamWriter(new DigestOutputStream(ostream, outputDigest),
+                                                               outputCharset)) {
                 @Override
                 public void close() throws IOException {
                     // 避免关闭
@@ -242,8 +273,26 @@ public class ConfigGeneratorSession {
             generator.logger.info("<" + generate.getConfigDescriptor().getBaseURL() + ">\n    Generating " + template
                                   + " [" + charset + "] => " + generate.getDestfile() + " [" + outputCharset + "]\n");
 
-            return VelocityTemplateEngine.getInstance().render(getVelocityContext(), reader, writer, template,
-                                                               generate.getConfigDescriptor().getName(), generate.getConfigDescriptor().getBaseURL());
+            currentReferences = new TreeMap<String, String>();
+
+            boolean success = VelocityTemplateEngine.getInstance().render(getVelocityContext(), reader, writer,
+                                                                          template,
+                                                                          computeTemplateDigest(templateContent,
+                                                                                                charset),
+                                                                          descriptor.getName(),
+                                                                          descriptor.getBaseURL());
+
+            // 记录指纹，以便下次生成时比较
+            if (success) {
+                writer.flush();
+
+                getManifest(descriptor).put(generate.getDestfile(),
+                                            computeDigest(generate, templateContent, currentReferences.keySet()),
+                                            ConfigGenerator.toHexString(outputDigest.digest()),
+                                            currentReferences.keySet());
+            }
+
+            return success;
         } catch (Exception e) {
             if (e instanceof RuntimeException) {
                 throw (RuntimeException) e;
@@ -251,6 +300,13 @@ public class ConfigGeneratorSession {
                 throw new ConfigException(e);
             }
         } finally {
+            currentReferences = null;
+
+            try {
+                istream.close();
+            } catch (IOException e) {
+            }
+
             if (writer != null) {
                 try {
                     writer.flush();
@@ -260,6 +316,254 @@ public class ConfigGeneratorSession {
         }
     }
 
+    /** 检查所有目标文件是否都和上次生成时相同，如果是，则完全不必重新生成。 */
+    public boolean isUpToDate(ExistingEntryReader reader) {
+        for (ConfigDescriptor descriptor : generator.getConfigDescriptors()) {
+            FingerprintManifest previousManifest = getPreviousManifest(descriptor, reader);
+
+            if (previousManifest == null) {
+                return false;
+            }
+
+            for (ConfigGenerate generate : descriptor.getGenerates()) {
+                // 和生成时一样，优先使用META-INF/autoconf/下的模板
+                ContentBuffer templateContent = readExistingEntry(descriptor, generate.getTemplateBase()
+                                                                              + generate.getTemplate(), reader);
+
+                if (templateContent == null) {
+                    templateContent = readExistingEntry(descriptor, generate.getTemplate(), reader);
+                }
+
+                if (templateContent == null) {
+                    return false;
+                }
+
+                try {
+                    if (!isUnchanged(generate, templateContent, previousManifest, reader)) {
+                        return false;
+                    }
+                } finally {
+                    templateContent.dispose();
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isUnchanged(ConfigGenerate generate, ContentBuffer templateContent,
+                                FingerprintManifest previousManifest, ExistingEntryReader reader) {
+        String destfile = generate.getDestfile();
+        String previousDigest = previousManifest.getDigest(destfile);
+        String previousOutputDigest = previousManifest.getOutputDigest(destfile);
+
+        if (previousDigest == null || previousOutputDigest == null) {
+            return false;
+        }
+
+        // 目标文件必须仍是上次生成的结果，而不是被重新复制的模板，或被手工修改过的文件
+        InputStream existingDestfile = reader.openExistingEntry(generate.getConfigDescriptor(), destfile);
+
+        if (existingDestfile == null) {
+            return false;
+        }
+
+        MessageDigest md = newDigest();
+
+        try {
+            byte[] buffer = new byte[8192];
+            int count;
+
+            while ((count = existingDestfile.read(buffer)) >= 0) {
+                md.update(buffer, 0, count);
+            }
+        } catch (IOException e) {
+            throw new ConfigException(e);
+        } finally {
+            try {
+                existingDestfile.close();
+            } catch (IOException e) {
+            }
+        }
+
+        if (!previousOutputDigest.equals(ConfigGenerator.toHexString(md.digest()))) {
+            return false;
+        }
+
+        List<String> references = Arrays.asList(previousManifest.getReferences(destfile));
+
+        return previousDigest.equals(computeDigest(generate, templateContent, references));
+    }
+
+    /** 根据descriptor、descriptor context、velocimacro库、模板内容，以及模板所引用的属性的当前值计算指纹。 */
+    private String computeDigest(ConfigGenerate generate, ContentBuffer templateContent,
+                                 Collection<String> references) {
+        MessageDigest md = newDigest();
+
+        try {
+            updateDigest(md, generator.getDescriptorDigest(generate.getConfigDescriptor()));
+            updateDigest(md, generate.getTemplate());
+            updateDigest(md, generate.getDestfile());
+            updateDigest(md, VelocityTemplateEngine.getInstance().getMacroLibraryDigest());
+            updateContextDigest(md, generate.getConfigDescriptor());
+
+            InputStream istream = templateContent.getInputStream();
+
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+
+                while ((count = istream.read(buffer)) >= 0) {
+                    md.update(buffer, 0, count);
+                }
+            } finally {
+                istream.close();
+            }
+
+            for (String name : new TreeSet<String>(references)) {
+                Object value = resolvedProps.get(name);
+
+                updateDigest(md, name);
+                updateDigest(md, value == null ? null : String.valueOf(value));
+            }
+        } catch (IOException e) {
+            throw new ConfigException(e);
+        }
+
+        return ConfigGenerator.toHexString(md.digest());
+    }
+
+    /** 根据模板内容及其字符集计算摘要，用来查找已解析的模板，避免将整个模板读成字符串。 */
+    private String computeTemplateDigest(ContentBuffer templateContent, String charset) throws IOException {
+        MessageDigest md = newDigest();
+        InputStream istream = templateContent.getInputStream();
+
+        updateDigest(md, charset);
+
+        try {
+            byte[] buffer = new byte[8192];
+            int count;
+
+            while ((count = istream.read(buffer)) >= 0) {
+                md.update(buffer, 0, count);
+            }
+        } finally {
+            istream.close();
+        }
+
+        return ConfigGenerator.toHexString(md.digest());
+    }
+
+    /**
+     * 将descriptor context中的所有key和value加入指纹，例如<code>component</code>。普通的值取其字符串表示，
+     * 工具对象（如<code>stringUtil</code>）则取其类名。
+     */
+    private void updateContextDigest(MessageDigest md, ConfigDescriptor descriptor) throws IOException {
+        Map<?, ?> context = descriptor.getContext();
+        Map<String, Object> sortedContext = new TreeMap<String, Object>();
+
+        for (Map.Entry<?, ?> entry : context.entrySet()) {
+            sortedContext.put(String.valueOf(entry.getKey()), entry.getValue());
+        }
+
+        for (Map.Entry<String, Object> entry : sortedContext.entrySet()) {
+            Object value = entry.getValue();
+
+            updateDigest(md, entry.getKey());
+
+            if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Character) {
+                updateDigest(md, value == null ? null : String.valueOf(value));
+            } else {
+                updateDigest(md, "class:" + value.getClass().getName());
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new ConfigException(e); // 不应发生
+        }
+    }
+
+    private void updateDigest(MessageDigest md, String field) throws IOException {
+        if (field == null) {
+            md.update((byte) 1);
+        } else {
+            md.update(field.getBytes("UTF-8"));
+        }
+
+        md.update((byte) 0);
+    }
+
+    private ContentBuffer readExistingEntry(ConfigDescriptor descriptor, String name,
+                                            ExistingEntryReader reader) {
+        InputStream istream = reader.openExistingEntry(descriptor, name);
+
+        if (istream == null) {
+            return null;
+        }
+
+        try {
+            return generator.getContentBufferStore().read(istream);
+        } catch (IOException e) {
+            throw new ConfigException(e);
+        } finally {
+            try {
+                istream.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /** 取得上次生成的指纹清单，如果不存在，或者不是增量生成，则返回<code>null</code>。 */
+    private FingerprintManifest getPreviousManifest(ConfigDescriptor descriptor, ExistingEntryReader reader) {
+        if (!generator.isIncremental()) {
+            return null;
+        }
+
+        String descriptorName = descriptor.getName();
+
+        if (!previousManifests.containsKey(descriptorName)) {
+            FingerprintManifest manifest = null;
+            InputStream istream = reader.openExistingEntry(descriptor,
+                                                           generator.getDescriptorFingerprintFile(descriptor));
+
+            if (istream != null) {
+                manifest = new FingerprintManifest();
+
+                try {
+                    manifest.load(istream);
+                } catch (IOException e) {
+                    manifest = null; // 清单无法读取，视同不存在
+                } finally {
+                    try {
+                        istream.close();
+                    } catch (IOException e) {
+                    }
+                }
+            }
+
+            previousManifests.put(descriptorName, manifest);
+        }
+
+        return previousManifests.get(descriptorName);
+    }
+
+    /** 取得本次生成的指纹清单。 */
+    private FingerprintManifest getManifest(ConfigDescriptor descriptor) {
+        FingerprintManifest manifest = manifests.get(descriptor.getName());
+
+        if (manifest == null) {
+            manifest = new FingerprintManifest();
+            manifests.put(descriptor.getName(), manifest);
+        }
+
+        return manifest;
+    }
+
     private final static Pattern encodingPattern = Pattern.compile("encoding\\s*=\\s*[\\\"|']([^\\\"|']+)[\\\"|']");
 
     /** 从输入流中猜测charset。 */
@@ -294,10 +598,17 @@ public class ConfigGeneratorSession {
 
     public void generateLog(ConfigGeneratorCallback callback) {
         for (Object[] logPair : descriptorLogs.values()) {
+            StringWriter logBuffer = (StringWriter) logPair[0];
+            PrintWriter log = (PrintWriter) logPair[1];
+            ConfigDescriptor descriptor = (ConfigDescriptor) logPair[2];
+
+            // 假如所有目标文件均未改变，则日志和指纹清单也保持不变
+            if (unchangedDescriptors.contains(descriptor.getName())
+                && !regeneratedDescriptors.contains(descriptor.getName())) {
+                continue;
+            }
+
             try {
-                StringWriter logBuffer = (StringWriter) logPair[0];
-                PrintWriter log = (PrintWriter) logPair[1];
-                ConfigDescriptor descriptor = (ConfigDescriptor) logPair[2];
                 String logfile = generator.getDescriptorLogFile(descriptor);
 
                 callback.logEntry(descriptor, logfile);
@@ -335,12 +646,41 @@ public class ConfigGeneratorSession {
                 currentInputStream = null;
                 currentOutputStream = null;
             }
+
+            generateFingerprintManifest(descriptor, callback);
+        }
+    }
+
+    /** 生成指纹清单，和日志文件放在一起。 */
+    private void generateFingerprintManifest(ConfigDescriptor descriptor, ConfigGeneratorCallback callback) {
+        try {
+            callback.logEntry(descriptor, generator.getDescriptorFingerprintFile(descriptor));
+            getManifest(descriptor).store(currentOutputStream);
+            currentOutputStream.flush();
+        } catch (IOException e) {
+            throw new ConfigException(e);
+        } finally {
+            callback.closeEntry();
+
+            currentGenerate = null;
+            currentInputStream = null;
+            currentOutputStream = null;
         }
     }
 
     public void addLazyGenerateItem(String name, byte[] bytes) {
-        lazyGenerateItems.put(name,
-                              new LazyGenerateItem(name, generator.generateTemplateFilesIncludingMetaInfos.get(name), bytes));
+        addLazyGenerateItem(name, new ByteArrayInputStream(bytes));
+    }
+
+    /** 保存目标文件的内容，以便最后将其视作模板生成。内容可能被转存到临时文件中。 */
+    public void addLazyGenerateItem(String name, InputStream content) {
+        LazyGenerateItem item = new LazyGenerateItem(name, generator.generateTemplateFilesIncludingMetaInfos.get(name),
+                                                     content, generator.getContentBufferStore());
+        LazyGenerateItem previousItem = lazyGenerateItems.put(name, item);
+
+        if (previousItem != null) {
+            previousItem.dispose();
+        }
     }
 
     public boolean generateLazyItems(ConfigGeneratorCallback callback) {
@@ -388,7 +728,7 @@ public class ConfigGeneratorSession {
                             throw new IllegalStateException("InputStream/OutputStream has not been set");
                         }
 
-                        allSuccess &= generate(name, generate, currentInputStream, currentOutputStream);
+                        allSuccess &= generate(name, generate, currentInputStream, currentOutputStream, callback);
                     } finally {
                         try {
                             callback.closeEntry();
@@ -420,5 +760,10 @@ public class ConfigGeneratorSession {
 
     /** 关闭session，善后工作。 */
     public void close() {
+        for (LazyGenerateItem item : lazyGenerateItems.values()) {
+            item.dispose();
+        }
+
+        lazyGenerateItems.clear();
     }
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.config.generator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 暂存一段内容，例如模板或被延迟生成的文件，以便多次读取。
+ * <p>
+ * 内容较小时保存在内存中；当内容超过{@link ContentBufferStore}所指定的阈值时，就被转存到临时文件中，从而限制内存的使用量。
+ * 使用完毕后，必须调用{@link #dispose()}以释放内存或删除临时文件。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+public class ContentBuffer extends OutputStream {
+    private final ContentBufferStore store;
+    private       byte[]             bytes = new byte[0];
+    private       int                count;
+    private       File               file;
+    private       OutputStream       fileStream;
+    private       long               size;
+    private       boolean            disposed;
+
+    ContentBuffer(ContentBufferStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureNotDisposed();
+
+        if (file == null && size + len > store.getSpillThreshold()) {
+            spill();
+        }
+
+        if (file == null) {
+            if (count + len > bytes.length) {
+                byte[] newBytes = new byte[Math.max(bytes.length * 2, count + len)];
+
+                System.arraycopy(bytes, 0, newBytes, 0, count);
+                store.allocated(newBytes.length - bytes.length);
+                bytes = newBytes;
+            }
+
+            System.arraycopy(b, off, bytes, count, len);
+            count += len;
+        } else {
+            fileStream.write(b, off, len);
+            store.spilled(len);
+        }
+
+        size += len;
+    }
+
+    /** 将内存中的内容转存到临时文件中，临时文件将在{@link #dispose()}时被删除。 */
+    private void spill() throws IOException {
+        File tempFile = File.createTempFile("autoconfig-", ".tmp", store.getTempdir());
+
+        try {
+            fileStream = new BufferedOutputStream(new FileOutputStream(tempFile), 8192);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+
+        file = tempFile;
+        fileStream.write(bytes, 0, count);
+
+        store.released(bytes.length);
+        store.spilledFile();
+        store.spilled(count);
+
+        bytes = null;
+        count = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileStream != null) {
+            fileStream.flush();
+        }
+    }
+
+    /** 取得内容的长度。 */
+    public long size() {
+        return size;
+    }
+
+    /** 内容是否已被转存到临时文件中。 */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /** 从头读取内容，可被调用多次。 */
+    public InputStream getInputStream() throws IOException {
+        ensureNotDisposed();
+
+        if (file == null) {
+            return new ByteArrayInputStream(bytes, 0, count);
+        }
+
+        fileStream.flush();
+
+        return new BufferedInputStream(new FileInputStream(file), 8192);
+    }
+
+    /** 释放内存或删除临时文件。可以被调用多次。 */
+    public void dispose() {
+        if (disposed) {
+            return;
+        }
+
+        disposed = true;
+
+        if (file == null) {
+            store.released(bytes.length);
+            bytes = null;
+        } else {
+            try {
+                fileStream.close();
+            } catch (IOException e) {
+            }
+
+            file.delete();
+        }
+    }
+
+    private void ensureNotDisposed() throws IOException {
+        if (disposed) {
+            throw new IOException("Buffer has been disposed");
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.config.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 创建{@link ContentBuffer}，并统计所有buffers占用的内存。
+ * <p>
+ * 单个buffer的内容超过<code>spillThreshold</code>时，将被转存到<code>tempdir</code>下的临时文件中。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+public class ContentBufferStore {
+    /** 默认的转存阈值：1M。 */
+    public static final int DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+
+    private final int           spillThreshold;
+    private final File          tempdir;
+    private final AtomicLong    bufferedBytes     = new AtomicLong();
+    private final AtomicLong    peakBufferedBytes = new AtomicLong();
+    private final AtomicLong    spilledBytes      = new AtomicLong();
+    private final AtomicInteger spilledFiles      = new AtomicInteger();
+
+    public ContentBufferStore() {
+        this(DEFAULT_SPILL_THRESHOLD);
+    }
+
+    public ContentBufferStore(int spillThreshold) {
+        this(spillThreshold, null);
+    }
+
+    /** 在指定目录中创建临时文件，如果<code>tempdir</code>为<code>null</code>，则使用系统默认的临时目录。 */
+    public ContentBufferStore(int spillThreshold, File tempdir) {
+        this.spillThreshold = spillThreshold < 0 ? 0 : spillThreshold;
+        this.tempdir = tempdir;
+    }
+
+    public int getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    public File getTempdir() {
+        return tempdir;
+    }
+
+    /** 创建一个空的buffer。 */
+    public ContentBuffer createBuffer() {
+        return new ContentBuffer(this);
+    }
+
+    /** 将流中的内容读入一个新的buffer中，但不关闭流。 */
+    public ContentBuffer read(InputStream istream) throws IOException {
+        ContentBuffer buffer = createBuffer();
+        byte[] bytes = new byte[8192];
+        int count;
+
+        try {
+            while ((count = istream.read(bytes)) >= 0) {
+                buffer.write(bytes, 0, count);
+            }
+        } catch (IOException e) {
+            buffer.dispose();
+            throw e;
+        }
+
+        return buffer;
+    }
+
+    /** 取得buffers在内存中占用的最大字节数。 */
+    public long getPeakBufferedBytes() {
+        return peakBufferedBytes.get();
+    }
+
+    /** 取得被转存到临时文件中的字节数。 */
+    public long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    /** 取得临时文件的个数。 */
+    public int getSpilledFiles() {
+        return spilledFiles.get();
+    }
+
+    void allocated(long bytes) {
+        long current = bufferedBytes.addAndGet(bytes);
+        long peak;
+
+        while (current > (peak = peakBufferedBytes.get())) {
+            if (peakBufferedBytes.compareAndSet(peak, current)) {
+                break;
+            }
+        }
+    }
+
+    void released(long bytes) {
+        bufferedBytes.addAndGet(-bytes);
+    }
+
+    void spilledFile() {
+        spilledFiles.incrementAndGet();
+    }
+
+    void spilled(long bytes) {
+        spilledBytes.addAndGet(bytes);
+    }
+}
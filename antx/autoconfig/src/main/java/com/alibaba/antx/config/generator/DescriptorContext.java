@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.config.generator;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.alibaba.antx.config.descriptor.ConfigDescriptor;
+import org.apache.velocity.app.event.EventCartridge;
+import org.apache.velocity.context.AbstractContext;
+import org.apache.velocity.context.Context;
+
+/**
+ * 一个descriptor在一次生成过程中共享的velocity context信息。
+ * <p>
+ * descriptor中定义的属性表、descriptor context以及所有可见的key只在创建时计算一次。每次生成时，通过
+ * {@link #createContext(Map)}创建一个轻量的context，模板中所做的修改（如<code>#set</code>）只保存在该context自己的覆盖层中，
+ * 不会影响其它模板。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+public class DescriptorContext {
+    private final Map<String, Boolean> definedProperties;
+    private final Map<String, Object>  baseContext;
+    private final ResolvedProperties   props;
+    private final Object[]             keys;
+
+    @SuppressWarnings("unchecked")
+    public DescriptorContext(ConfigDescriptor descriptor, ResolvedProperties props) {
+        this.definedProperties = PropertiesReferenceInsertionHandler.getDefinedProperties(descriptor);
+        this.baseContext = new HashMap<String, Object>(descriptor.getContext());
+        this.baseContext.put("D", "$"); // 可以用${D}来生成$
+        this.props = props;
+
+        Set<Object> keys = new LinkedHashSet<Object>(props.getProperties().keySet());
+        keys.addAll(baseContext.keySet());
+        this.keys = keys.toArray(new Object[keys.size()]);
+    }
+
+    /**
+     * 为一次生成创建velocity context。
+     *
+     * @param references 如果不为<code>null</code>，则记录所有从props中取值的引用及其值
+     */
+    public Context createContext(Map<String, String> references) {
+        Context context = new OverlayContext(references);
+        EventCartridge eventCartridge = new EventCartridge();
+
+        eventCartridge.addEventHandler(new PropertiesReferenceInsertionHandler(definedProperties, props, references));
+        eventCartridge.attachToContext(context); // 允许使用${a.b.c}
+
+        return context;
+    }
+
+    /** 在共享的descriptor context之上，记录本次生成所做的修改。 */
+    private class OverlayContext extends AbstractContext {
+        private final Map<String, String> references;
+        private       Map<Object, Object> overlay;
+        private       Set<Object>         removed;
+
+        public OverlayContext(Map<String, String> references) {
+            this.references = references;
+        }
+
+        @Override
+        public Object internalPut(String key, Object value) {
+            if (overlay == null) {
+                overlay = new HashMap<Object, Object>();
+            }
+
+            if (removed != null) {
+                removed.remove(key);
+            }
+
+            return overlay.put(key, value);
+        }
+
+        @Override
+        public Object internalRemove(Object key) {
+            Object value = null;
+
+            if (overlay != null && overlay.containsKey(key)) {
+                value = overlay.remove(key);
+            } else if (baseContext.containsKey(key) && !isRemoved(key)) {
+                value = baseContext.get(key);
+            }
+
+            if (baseContext.containsKey(key)) {
+                if (removed == null) {
+                    removed = new HashSet<Object>();
+                }
+
+                removed.add(key);
+            }
+
+            return value;
+        }
+
+        @Override
+        public Object[] internalGetKeys() {
+            if ((overlay == null || overlay.isEmpty()) && (removed == null || removed.isEmpty())) {
+                return keys.clone();
+            }
+
+            Set<Object> keys = new LinkedHashSet<Object>(props.getProperties().keySet());
+
+            for (Object key : baseContext.keySet()) {
+                if (!isRemoved(key)) {
+                    keys.add(key);
+                }
+            }
+
+            if (overlay != null) {
+                keys.addAll(overlay.keySet());
+            }
+
+            return keys.toArray(new Object[keys.size()]);
+        }
+
+        @Override
+        public Object internalGet(String key) {
+            if (overlay != null && overlay.containsKey(key)) {
+                return overlay.get(key);
+            }
+
+            if (baseContext.containsKey(key) && !isRemoved(key)) {
+                return baseContext.get(key);
+            }
+
+            Object value = props.get(key);
+
+            // 记录模板所引用的属性，用来计算指纹
+            if (references != null) {
+                references.put(key, value == null ? null : String.valueOf(value));
+            }
+
+            return value;
+        }
+
+        @Override
+        public boolean internalContainsKey(Object key) {
+            return overlay != null && overlay.containsKey(key) || baseContext.containsKey(key) && !isRemoved(key)
+                   || props.containsKey(key);
+        }
+
+        private boolean isRemoved(Object key) {
+            return removed != null && removed.contains(key);
+        }
+    }
+}
@@ -103,11 +103,13 @@ public class DirectoryCallback implements ConfigGeneratorCallback {
 
         try {
             istream = new BufferedInputStream(new FileInputStream(templateFile), 8192);
-            ostream = new BufferedOutputStream(new FileOutputStream(destFile), 8192);
         } catch (FileNotFoundException e) {
             throw new ConfigException(e);
         }
 
+        // 直到写入或flush时才创建文件，假如目标文件未改变而被跳过，则保持原文件不变
+        ostream = new DeferredFileOutputStream(destFile);
+
         generator.getSession().setInputStream(istream);
         generator.getSession().setOutputStream(ostream);
 
@@ -145,6 +147,26 @@ public class DirectoryCallback implements ConfigGeneratorCallback {
         generator.getSession().setOutputStream(ostream);
     }
 
+    public InputStream openExistingEntry(ConfigDescriptor descriptor, String name) {
+        File destfileBase = this.destfileBase;
+
+        if (destfileBase == null) {
+            destfileBase = descriptor.getBaseFile();
+        }
+
+        File file = new File(destfileBase, name);
+
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            return new BufferedInputStream(new FileInputStream(file), 8192);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
     public void closeEntry() {
         if (istream != null) {
             try {
@@ -164,4 +186,44 @@ public class DirectoryCallback implements ConfigGeneratorCallback {
             ostream = null;
         }
     }
+
+    /** 在第一次写入或flush时才打开的文件输出流。 */
+    private static class DeferredFileOutputStream extends OutputStream {
+        private final File         file;
+        private       OutputStream out;
+
+        public DeferredFileOutputStream(File file) {
+            this.file = file;
+        }
+
+        private OutputStream getOutputStream() throws IOException {
+            if (out == null) {
+                out = new BufferedOutputStream(new FileOutputStream(file), 8192);
+            }
+
+            return out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            getOutputStream().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            getOutputStream().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            getOutputStream().flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
 }
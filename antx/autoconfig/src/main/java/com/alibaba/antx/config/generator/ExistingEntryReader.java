@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.config.generator;
+
+import java.io.InputStream;
+
+import com.alibaba.antx.config.descriptor.ConfigDescriptor;
+
+/**
+ * 读取上次生成的结果，用来判断是否需要重新生成。
+ *
+ * @author Michael Zhou
+ */
+public interface ExistingEntryReader {
+    /**
+     * 打开上次生成的目标、日志或指纹文件，用来判断是否需要重新生成。
+     *
+     * @return 如果文件不存在，或不支持增量生成，则返回<code>null</code>
+     */
+    InputStream openExistingEntry(ConfigDescriptor descriptor, String name);
+}
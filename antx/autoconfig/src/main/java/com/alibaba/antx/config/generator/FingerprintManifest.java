@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.config.generator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import com.alibaba.antx.util.StringUtil;
+
+/**
+ * 记录一个descriptor所生成的每个目标文件的指纹，和descriptor日志文件保存在一起。
+ * <p>
+ * 指纹由descriptor、模板的内容，以及模板所引用到的属性值计算而得。同时记录生成结果的摘要。再次生成时，如果指纹未变，
+ * 并且现存的目标文件仍是上次生成的结果，则不必重新生成。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+public class FingerprintManifest {
+    private static final String DIGEST_PREFIX = "digest.";
+    private static final String OUTPUT_PREFIX = "output.";
+    private static final String REFS_PREFIX   = "refs.";
+    private final Properties manifest = new Properties();
+
+    /** 从流中装入指纹清单。 */
+    public void load(InputStream istream) throws IOException {
+        manifest.load(istream);
+    }
+
+    /** 将指纹清单保存到流中。和<code>Properties.store()</code>不同，输出不含时间戳且按key排序，因此相同的内容总是生成相同的文件。 */
+    public void store(OutputStream ostream) throws IOException {
+        StringBuilder buf = new StringBuilder();
+
+        buf.append("# Generated by autoconfig, DO NOT EDIT!\n");
+
+        for (Object key : new TreeSet<Object>(manifest.keySet())) {
+            escape(buf, (String) key, true);
+            buf.append("=");
+            escape(buf, manifest.getProperty((String) key), false);
+            buf.append("\n");
+        }
+
+        ostream.write(buf.toString().getBytes("ISO-8859-1"));
+    }
+
+    /** 按<code>Properties.load()</code>所能识别的格式转义字符串。 */
+    private static void escape(StringBuilder buf, String str, boolean isKey) {
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+
+            switch (c) {
+                case '\\':
+                case '=':
+                case ':':
+                case '#':
+                case '!':
+                    buf.append('\\').append(c);
+                    break;
+
+                case ' ':
+                    if (isKey || i == 0) {
+                        buf.append('\\');
+                    }
+
+                    buf.append(c);
+                    break;
+
+                default:
+                    if (c < 0x20 || c > 0x7E) {
+                        buf.append(String.format("\\u%04X", (int) c));
+                    } else {
+                        buf.append(c);
+                    }
+            }
+        }
+    }
+
+    /** 取得目标文件的指纹，如果不存在，则返回<code>null</code>。 */
+    public String getDigest(String destfile) {
+        return manifest.getProperty(DIGEST_PREFIX + destfile);
+    }
+
+    /** 取得上次生成的目标文件内容的摘要，如果不存在，则返回<code>null</code>。 */
+    public String getOutputDigest(String destfile) {
+        return manifest.getProperty(OUTPUT_PREFIX + destfile);
+    }
+
+    /** 取得生成目标文件时，模板所引用到的属性名。 */
+    public String[] getReferences(String destfile) {
+        return StringUtil.split(manifest.getProperty(REFS_PREFIX + destfile, ""), ",");
+    }
+
+    /** 记录目标文件的指纹。 */
+    public void put(String destfile, String digest, String outputDigest, Collection<String> references) {
+        manifest.setProperty(DIGEST_PREFIX + destfile, digest);
+        manifest.setProperty(OUTPUT_PREFIX + destfile, outputDigest);
+        manifest.setProperty(REFS_PREFIX + destfile, StringUtil.join(references.toArray(), ","));
+    }
+
+    /** 从另一个清单中复制目标文件的指纹。 */
+    public void copy(FingerprintManifest other, String destfile) {
+        String digest = other.getDigest(destfile);
+        String outputDigest = other.getOutputDigest(destfile);
+
+        if (digest != null && outputDigest != null) {
+            manifest.setProperty(DIGEST_PREFIX + destfile, digest);
+            manifest.setProperty(OUTPUT_PREFIX + destfile, outputDigest);
+            manifest.setProperty(REFS_PREFIX + destfile, other.manifest.getProperty(REFS_PREFIX + destfile, ""));
+        }
+    }
+}
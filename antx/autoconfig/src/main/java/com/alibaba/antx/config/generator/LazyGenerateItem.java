@@ -18,47 +18,64 @@
 package com.alibaba.antx.config.generator;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
+import com.alibaba.antx.config.ConfigException;
 import com.alibaba.antx.config.descriptor.ConfigGenerate;
 
 public class LazyGenerateItem {
     private final String               templateName;
     private final List<ConfigGenerate> generates;
-    private final byte[]               savedTemplateContent;
+    private final ContentBuffer        savedTemplateContent;
 
     public LazyGenerateItem(String templateName, List<ConfigGenerate> generates, byte[] savedTemplateContent) {
+        this(templateName, generates, new ByteArrayInputStream(savedTemplateContent), new ContentBufferStore());
+    }
+
+    /** 压缩并保存模板内容，压缩后的内容如果超过阈值，将被转存到临时文件中。 */
+    public LazyGenerateItem(String templateName, List<ConfigGenerate> generates, InputStream templateContent,
+                            ContentBufferStore store) {
         this.templateName = templateName;
         this.generates = generates;
-        this.savedTemplateContent = compress(savedTemplateContent);
+        this.savedTemplateContent = compress(templateContent, store);
     }
 
-    private byte[] compress(byte[] bytes) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DeflaterOutputStream dos = new DeflaterOutputStream(baos);
+    private ContentBuffer compress(InputStream istream, ContentBufferStore store) {
+        ContentBuffer buffer = store.createBuffer();
+        DeflaterOutputStream dos = new DeflaterOutputStream(buffer);
 
         try {
-            dos.write(bytes);
-            dos.flush();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        } finally {
-            try {
-                dos.close();
-            } catch (IOException e) {
+            byte[] bytes = new byte[8192];
+            int count;
+
+            while ((count = istream.read(bytes)) >= 0) {
+                dos.write(bytes, 0, count);
             }
+
+            dos.close();
+        } catch (IOException e) {
+            buffer.dispose();
+            throw new ConfigException(e);
         }
 
-        return baos.toByteArray();
+        return buffer;
     }
 
     public InputStream getTemplateContentStream() {
-        return new InflaterInputStream(new ByteArrayInputStream(savedTemplateContent));
+        try {
+            return new InflaterInputStream(savedTemplateContent.getInputStream());
+        } catch (IOException e) {
+            throw new ConfigException(e);
+        }
+    }
+
+    /** 释放内存或删除临时文件。 */
+    public void dispose() {
+        savedTemplateContent.dispose();
     }
 
     public String getTemplateName() {
@@ -20,6 +20,7 @@ package com.alibaba.antx.config.generator;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -29,7 +30,7 @@ import com.alibaba.antx.config.generator.expr.Expression;
 import com.alibaba.antx.config.generator.expr.ExpressionContext;
 import com.alibaba.antx.config.generator.expr.ReferenceExpression;
 import com.alibaba.antx.util.StringUtil;
-import com.alibaba.antx.util.collection.ExtendedProperties;
+import com.alibaba.antx.util.collection.PropertiesParser;
 
 public abstract class PropertiesLoader {
     /**
@@ -51,10 +52,8 @@ public abstract class PropertiesLoader {
      * @return 属性文件的内容
      */
     public static Map loadPropertiesFile(InputStream istream, String propsCharset, String url, boolean closeOnExit) {
-        ExtendedProperties props = new ExtendedProperties();
-
         try {
-            props.load(istream, propsCharset, url);
+            return PropertiesParser.parse(istream, propsCharset, url);
         } catch (IOException e) {
             throw new ConfigException(e);
         } finally {
@@ -65,8 +64,6 @@ public abstract class PropertiesLoader {
                 }
             }
         }
-
-        return props;
     }
 
     /**
@@ -77,17 +74,15 @@ public abstract class PropertiesLoader {
      * @return 属性文件的内容
      */
     public static Map loadPropertiesFile(File propsFile, String propsCharset) {
-        ExtendedProperties props = new ExtendedProperties();
-
-        if (propsFile.exists()) {
-            try {
-                props.load(propsFile.toURI().toURL(), propsCharset);
-            } catch (IOException e) {
-                throw new ConfigException(e);
-            }
+        if (!propsFile.exists()) {
+            return Collections.EMPTY_MAP;
         }
 
-        return props;
+        try {
+            return PropertiesParser.parse(propsFile.toURI().toURL(), propsCharset);
+        } catch (IOException e) {
+            throw new ConfigException(e);
+        }
     }
 
     /**
@@ -38,11 +38,39 @@ public class PropertiesReferenceInsertionHandler implements ReferenceInsertionEv
 
     private Context              context;
     private Map<String, Boolean> definedProperties;
-    private Map<String, String>  props;
+    private ResolvedProperties   props;
+    private Map<String, String>  references;
 
     public PropertiesReferenceInsertionHandler(ConfigDescriptor configDescriptor, Map props) {
+        this(configDescriptor, new ResolvedProperties(props, null), null);
+    }
+
+    /**
+     * 创建handler。
+     *
+     * @param references 如果不为<code>null</code>，则记录所有从props中取值的引用及其值
+     */
+    public PropertiesReferenceInsertionHandler(ConfigDescriptor configDescriptor, ResolvedProperties props,
+                                               Map<String, String> references) {
+        this(getDefinedProperties(configDescriptor), props, references);
+    }
+
+    /**
+     * 创建handler。
+     *
+     * @param definedProperties 由{@link #getDefinedProperties(ConfigDescriptor)}取得的属性表，可被多个handler共享
+     * @param references        如果不为<code>null</code>，则记录所有从props中取值的引用及其值
+     */
+    public PropertiesReferenceInsertionHandler(Map<String, Boolean> definedProperties, ResolvedProperties props,
+                                               Map<String, String> references) {
         this.props = props;
-        this.definedProperties = new HashMap<String, Boolean>();
+        this.references = references;
+        this.definedProperties = definedProperties;
+    }
+
+    /** 取得descriptor中定义的所有属性名及其是否必须。 */
+    public static Map<String, Boolean> getDefinedProperties(ConfigDescriptor configDescriptor) {
+        Map<String, Boolean> definedProperties = new HashMap<String, Boolean>();
 
         for (ConfigGroup group : configDescriptor.getGroups()) {
             for (ConfigProperty prop : group.getProperties()) {
@@ -50,6 +78,8 @@ public class PropertiesReferenceInsertionHandler implements ReferenceInsertionEv
                 definedProperties.put(StringUtil.getValidIdentifier(prop.getName()), prop.isRequired());
             }
         }
+
+        return definedProperties;
     }
 
     public Object referenceInsert(String reference, Object value) {
@@ -61,7 +91,11 @@ public class PropertiesReferenceInsertionHandler implements ReferenceInsertionEv
         String normalizedRef = normalizeReference(reference);
 
         // 从props中取值，也就是从antx.properties中取值。
-        value = PropertiesLoader.evaluate(normalizedRef, props);
+        value = props.get(normalizedRef);
+
+        if (references != null) {
+            references.put(normalizedRef, value == null ? null : String.valueOf(value));
+        }
 
         // 假如${placeholder被定义，必定是合法值（因为已经验证过了）。
         // 对于null值返回空白。
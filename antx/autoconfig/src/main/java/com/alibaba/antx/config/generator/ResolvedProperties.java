@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.config.generator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.alibaba.antx.config.ConfigLogger;
+import com.alibaba.antx.config.generator.expr.Expression;
+import com.alibaba.antx.config.generator.expr.ExpressionContext;
+import com.alibaba.antx.util.StringUtil;
+
+/**
+ * 属性值表，在一次生成过程中计算并缓存所有被取用的属性值。
+ * <p>
+ * 属性值可以是引用其它属性的表达式，例如<code>${a}/${b}</code>，属性之间的引用关系构成一张依赖图。每个属性第一次被取用时，
+ * 沿着依赖图深度优先地计算，被依赖的属性总是先于依赖它的属性被计算并缓存（即按拓扑顺序计算）。此后的取值只是一次map查找。
+ * </p>
+ * <p>
+ * 如果属性之间存在循环引用，则报告完整的引用路径，例如：<code>a -&gt; b -&gt; a</code>。和<code>PropertiesLoader.evaluate()</code>
+ * 一样，循环中被重复引用的属性取值为<code>null</code>。由于循环中的属性值取决于从哪个属性开始计算，所以这些属性不被缓存。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+public class ResolvedProperties {
+    private final Map                 props;
+    private final ConfigLogger        logger;
+    private final Map<String, Object> resolved       = new HashMap<String, Object>();
+    private final Map<String, String> identifiers    = new HashMap<String, String>();
+    private final Set<String>         pathDependent  = new HashSet<String>();
+    private final Set<String>         reportedCycles = new HashSet<String>();
+    private final List<String>        evaluatingKeys = new ArrayList<String>();
+    private final List<String>        evaluatingIds  = new ArrayList<String>();
+    private final ExpressionContext   context        = new ExpressionContext() {
+        public Object get(String key) {
+            return getReference(key);
+        }
+
+        public void put(String key, Object value) {
+            props.put(key, value);
+        }
+    };
+
+    /**
+     * 创建属性值表。
+     *
+     * @param props  属性表，其值可以是<code>Expression</code>
+     * @param logger 用来报告循环引用，可以为<code>null</code>
+     */
+    public ResolvedProperties(Map props, ConfigLogger logger) {
+        this.props = props;
+        this.logger = logger;
+    }
+
+    /** 原始的属性表。 */
+    public Map getProperties() {
+        return props;
+    }
+
+    /** 属性是否存在。 */
+    public boolean containsKey(Object key) {
+        return props.containsKey(key);
+    }
+
+    /** 取得计算后的属性值。 */
+    public Object get(String key) {
+        if (StringUtil.isBlank(key)) {
+            return null;
+        }
+
+        return resolve(key);
+    }
+
+    private Object resolve(String key) {
+        if (resolved.containsKey(key)) {
+            return resolved.get(key);
+        }
+
+        Object value = props.get(key);
+
+        if (value instanceof Expression) {
+            int depth = evaluatingKeys.size();
+
+            evaluatingKeys.add(key);
+            evaluatingIds.add(getIdentifier(key));
+
+            try {
+                value = ((Expression) value).evaluate(context);
+            } finally {
+                evaluatingKeys.remove(depth);
+                evaluatingIds.remove(depth);
+            }
+        }
+
+        if (!pathDependent.contains(key)) {
+            resolved.put(key, value);
+        }
+
+        return value;
+    }
+
+    /** 表达式引用了另一个属性。 */
+    private Object getReference(String key) {
+        int index = evaluatingIds.indexOf(getIdentifier(key));
+
+        if (index < 0) {
+            return resolve(key);
+        }
+
+        // 循环引用：从evaluatingKeys[index]开始的属性都在循环中
+        List<String> cycle = evaluatingKeys.subList(index, evaluatingKeys.size());
+
+        pathDependent.addAll(cycle);
+
+        if (logger != null) {
+            String path = StringUtil.join(cycle.toArray(), " -> ") + " -> " + key;
+
+            if (reportedCycles.add(path)) {
+                logger.warn("Circular property reference: " + path);
+            }
+        }
+
+        return null;
+    }
+
+    private String getIdentifier(String key) {
+        String id = identifiers.get(key);
+
+        if (id == null) {
+            id = StringUtil.getValidIdentifier(key);
+            identifiers.put(key, id);
+        }
+
+        return id;
+    }
+}
@@ -17,20 +17,30 @@
 
 package com.alibaba.antx.config.generator;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Formatter;
 import java.util.Set;
 import java.util.TreeSet;
 
 import com.alibaba.antx.config.ConfigConstant;
 import com.alibaba.antx.config.ConfigException;
-import org.apache.velocity.app.VelocityEngine;
+import com.alibaba.toolkit.util.collection.ConcurrentSoftHashMap;
+import org.apache.velocity.VelocityContext;
 import org.apache.velocity.context.Context;
+import org.apache.velocity.context.InternalContextAdapterImpl;
+import org.apache.velocity.exception.ParseErrorException;
 import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeInstance;
 import org.apache.velocity.runtime.RuntimeServices;
 import org.apache.velocity.runtime.log.LogChute;
+import org.apache.velocity.runtime.parser.ParseException;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
 import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,9 +53,15 @@ import org.slf4j.LoggerFactory;
 public class VelocityTemplateEngine {
     private static Logger log = LoggerFactory.getLogger(VelocityTemplateEngine.class);
     private static VelocityTemplateEngine instance;
-    private VelocityEngine engine = new VelocityEngine();
+    private RuntimeInstance engine = new RuntimeInstance();
 
-    public static VelocityTemplateEngine getInstance() {
+    /** 已解析的模板，以模板内容的摘要为key，在所有session和entry之间共享。 */
+    private final ConcurrentSoftHashMap templateCache = new ConcurrentSoftHashMap();
+
+    /** velocimacro库的摘要，只计算一次。 */
+    private volatile String macroLibraryDigest;
+
+    public static synchronized VelocityTemplateEngine getInstance() {
         if (instance == null) {
             instance = new VelocityTemplateEngine();
         }
@@ -82,21 +98,27 @@ public class VelocityTemplateEngine {
     /**
      * 渲染模板.
      *
-     * @param context 上下文信息
-     * @param reader  模板源
-     * @param writer  输出流
+     * @param context        上下文信息
+     * @param reader         模板源
+     * @param writer         输出流
+     * @param templateDigest 模板内容的摘要，用来查找已解析的模板；如果为<code>null</code>，则不缓存
      * @param url
      * @return 被渲染后的字符数组
      * @throws Exception 渲染出错
      */
-    public boolean render(Context context, Reader reader, Writer writer, String templateName, String configName,
-                          URL baseURL) throws Exception {
+    public boolean render(Context context, Reader reader, Writer writer, String templateName, String templateDigest,
+                          String configName, URL baseURL) throws Exception {
         Set<String> unknwonRefs = new TreeSet<String>();
         context.put(ConfigConstant.UNKNWON_REFS_KEY, unknwonRefs);
 
+        InternalContextAdapterImpl ica = new InternalContextAdapterImpl(context);
+
+        ica.pushCurrentTemplateName(templateName);
+
         try {
-            engine.evaluate(context, writer, templateName, reader);
+            getTemplate(reader, templateName, templateDigest).render(ica, writer);
         } finally {
+            ica.popCurrentTemplateName();
             context.remove(ConfigConstant.UNKNWON_REFS_KEY);
         }
 
@@ -124,6 +146,123 @@ public class VelocityTemplateEngine {
         return true;
     }
 
+    /**
+     * 取得已解析的模板。同名且内容相同的模板只被解析一次，即使它们来自不同的包或被生成多个目标文件。
+     * <p>
+     * 模板内容的摘要由调用者提供，因此模板直接从<code>reader</code>中解析，而不必先全部读入内存。
+     * </p>
+     * <p>
+     * 解析后的语法树只被初始化一次，此后渲染时不再修改它，故可被多个线程共享。语法树中记录了模板名，
+     * 所以模板名也是key的一部分，以便出错时报告正确的模板。
+     * </p>
+     */
+    private SimpleNode getTemplate(Reader reader, String templateName, String templateDigest) throws Exception {
+        String key = templateDigest == null ? null : templateName + "#" + templateDigest;
+        SimpleNode node = key == null ? null : (SimpleNode) templateCache.get(key);
+
+        if (node != null) {
+            return node;
+        }
+
+        try {
+            node = engine.parse(reader, templateName);
+        } catch (ParseException e) {
+            throw new ParseErrorException(e);
+        }
+
+        InternalContextAdapterImpl ica = new InternalContextAdapterImpl(new VelocityContext());
+
+        ica.pushCurrentTemplateName(templateName);
+
+        try {
+            node.init(ica, engine);
+        } finally {
+            ica.popCurrentTemplateName();
+        }
+
+        if (key == null) {
+            return node;
+        }
+
+        // 如果另一个线程已经解析了相同的模板，则使用它的结果
+        SimpleNode existingNode = (SimpleNode) templateCache.putIfAbsent(key, node);
+
+        return existingNode != null ? existingNode : node;
+    }
+
+    /** 取得velocimacro库的摘要，宏的改变将影响所有模板的生成结果。 */
+    public String getMacroLibraryDigest() {
+        String digest = macroLibraryDigest;
+
+        if (digest == null) {
+            InputStream istream = VelocityTemplateEngine.class.getClassLoader().getResourceAsStream(
+                    ConfigConstant.VELOCITY_MACRO_FILE);
+
+            if (istream == null) {
+                digest = "";
+            } else {
+                try {
+                    StringBuilder buf = new StringBuilder();
+                    byte[] bytes = new byte[8192];
+                    int count;
+
+                    while ((count = istream.read(bytes)) >= 0) {
+                        buf.append(new String(bytes, 0, count, "ISO-8859-1"));
+                    }
+
+                    digest = digest(buf.toString());
+                } catch (IOException e) {
+                    throw new ConfigException(e);
+                } finally {
+                    try {
+                        istream.close();
+                    } catch (IOException e) {
+                    }
+                }
+            }
+
+            macroLibraryDigest = digest;
+        }
+
+        return digest;
+    }
+
+    private String digest(String text) {
+        MessageDigest md;
+
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new ConfigException(e); // 不应发生
+        }
+
+        byte[] bytes;
+
+        try {
+            bytes = md.digest(text.getBytes("UTF-8"));
+        } catch (IOException e) {
+            throw new ConfigException(e); // 不应发生
+        }
+
+        StringBuilder buf = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes) {
+            buf.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return buf.toString();
+    }
+
+    /** 取得模板缓存命中的次数。 */
+    public int getTemplateCacheHits() {
+        return (int) templateCache.getHitCount();
+    }
+
+    /** 取得模板缓存未命中（即实际解析模板）的次数。 */
+    public int getTemplateCacheMisses() {
+        return (int) templateCache.getMissCount();
+    }
+
     /** Velocity Logger */
     private class LogSystem implements LogChute {
         public void init(RuntimeServices runtimeServices) {
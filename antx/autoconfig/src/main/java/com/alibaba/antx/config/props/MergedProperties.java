@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.config.props;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * system和shared properties合并后的快照，在其上可以叠加不同版本的user properties。
+ * <p>
+ * 每个文件中的值在装载时已被解析成表达式，并且已包含标识符形式的别名（见<code>PropertiesLoader.mergeProperties()</code>），
+ * 因此合并时只需按顺序复制，不必再次解析。快照本身不会改变，修改user properties后，只需在快照的副本上重新叠加user一层，
+ * 得到的属性表仍是一个普通的<code>HashMap</code>，取值只需一次hash查找。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+class MergedProperties {
+    private final Map<Object, Object> props;
+    private final Set<Object>         keys;
+
+    /**
+     * 按顺序合并各层properties，后面的值覆盖前面的值。
+     *
+     * @param layers system properties和展开后的shared properties文件
+     */
+    @SuppressWarnings("unchecked")
+    public MergedProperties(List<PropertiesFile> layers) {
+        Map<Object, Object> props = new HashMap<Object, Object>();
+        Set<Object> keys = new TreeSet<Object>();
+
+        for (PropertiesFile layer : layers) {
+            props.putAll(layer.getProperties());
+            keys.addAll(layer.getKeys());
+        }
+
+        this.props = Collections.unmodifiableMap(props);
+        this.keys = Collections.unmodifiableSet(keys);
+    }
+
+    /** 在快照上叠加user properties，返回新的、可修改的属性表。 */
+    @SuppressWarnings("unchecked")
+    public Map overlayProperties(PropertiesFile userPropertiesFile) {
+        Map merged = new HashMap(props);
+
+        merged.putAll(userPropertiesFile.getProperties());
+
+        return merged;
+    }
+
+    /** 在快照上叠加user properties，返回新的、可修改的key的集合。 */
+    @SuppressWarnings("unchecked")
+    public Set overlayKeys(PropertiesFile userPropertiesFile) {
+        Set merged = new TreeSet(keys);
+
+        merged.addAll(userPropertiesFile.getKeys());
+
+        return merged;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.config.props;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.alibaba.antx.config.ConfigException;
+import com.alibaba.antx.config.resource.ResourceManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 在一个有界的线程池中并发地装载一组properties资源。
+ * <p>
+ * 资源只是被装载，而不被合并，合并仍由调用者按原有的顺序进行。如果某个资源装载失败，则抛出和串行装载时相同的异常；
+ * 如果排在前面的资源也失败了，则以前面的为准。不允许并发访问的session中的资源，将按顺序逐个装载。
+ * </p>
+ * <p>
+ * 无论并发还是串行，设置了时间上限时，资源总是在后台线程中装载，以便调用者在超时后报错返回。
+ * 超时只是报错，并不能中止装载：阻塞中的socket读取无法被中断，超时的装载将留在后台daemon线程中，其结果不再被使用。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+class PropertiesPrefetcher {
+    private static final Logger        log           = LoggerFactory.getLogger(PropertiesPrefetcher.class);
+    private static final long          POLL_INTERVAL = 100;
+    private static final ThreadFactory threadFactory = new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "autoconfig-props-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+    private final ResourceManager manager;
+    private final int             threads;
+    private final long            timeout;
+
+    /**
+     * 创建prefetcher。
+     *
+     * @param threads 最多同时装载多少个资源
+     * @param timeout 每个资源的装载时间上限（毫秒），超时则报错，<code>0</code>表示不限
+     */
+    public PropertiesPrefetcher(ResourceManager manager, int threads, long timeout) {
+        this.manager = manager;
+        this.threads = threads;
+        this.timeout = timeout;
+    }
+
+    /** 装载所有尚未装载的资源。 */
+    public void prefetch(List<? extends PropertiesResource> resources) {
+        List<LoadTask> tasks = new ArrayList<LoadTask>(resources.size());
+        Map<Object, List<LoadTask>> groups = new LinkedHashMap<Object, List<LoadTask>>();
+
+        for (PropertiesResource resource : resources) {
+            if (resource.isLoaded()) {
+                continue;
+            }
+
+            LoadTask task = new LoadTask(resource);
+            URI uri = resource.getURI();
+            Object groupKey = task;
+
+            // 不可并发访问的资源按主机分组，组内串行装载
+            if (uri != null && !manager.isThreadSafe(uri)) {
+                groupKey = uri.getScheme() + "://" + uri.getAuthority();
+            }
+
+            List<LoadTask> group = groups.get(groupKey);
+
+            if (group == null) {
+                group = new ArrayList<LoadTask>();
+                groups.put(groupKey, group);
+            }
+
+            group.add(task);
+            tasks.add(task);
+        }
+
+        boolean serial = threads <= 1 || groups.size() <= 1;
+
+        // 不限时间的串行装载不必使用线程
+        if (serial && timeout <= 0) {
+            for (LoadTask task : tasks) {
+                task.run();
+                task.checkError();
+            }
+
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(serial ? 1 : Math.min(threads, groups.size()),
+                                                                threadFactory);
+
+        try {
+            for (final List<LoadTask> group : groups.values()) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        for (LoadTask task : group) {
+                            task.run();
+                        }
+                    }
+                });
+            }
+
+            for (LoadTask task : tasks) {
+                task.await();
+                task.checkError();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** 装载一个资源。 */
+    private class LoadTask implements Runnable {
+        private final    PropertiesResource resource;
+        private final    CountDownLatch     done = new CountDownLatch(1);
+        private volatile long               startTime;
+        private volatile Throwable          error;
+
+        public LoadTask(PropertiesResource resource) {
+            this.resource = resource;
+        }
+
+        public void run() {
+            startTime = System.currentTimeMillis();
+
+            try {
+                resource.load();
+            } catch (Throwable e) {
+                error = e;
+            } finally {
+                log.debug("Loaded {} in {}ms", resource.getURI(), System.currentTimeMillis() - startTime);
+                done.countDown();
+            }
+        }
+
+        /** 等待装载结束，如果装载开始后超过了时间上限，则报错。 */
+        public void await() {
+            try {
+                while (!done.await(POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    long start = startTime;
+
+                    if (timeout > 0 && start > 0 && System.currentTimeMillis() - start > timeout) {
+                        throw new ConfigException("Timed out after " + timeout + "ms while loading "
+                                                  + resource.getURI());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConfigException(e);
+            }
+        }
+
+        public void checkError() {
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if (error instanceof Error) {
+                throw (Error) error;
+            } else if (error != null) {
+                throw new ConfigException(error);
+            }
+        }
+    }
+}
@@ -82,6 +82,10 @@ public abstract class PropertiesResource {
         this.allowNonExistence = allowNonExistence;
     }
 
+    public boolean isLoaded() {
+        return loaded;
+    }
+
     public final void reload() {
         loaded = false;
         load();
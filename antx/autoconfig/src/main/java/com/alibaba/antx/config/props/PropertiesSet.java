@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.PrintWriter;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -29,10 +30,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 import com.alibaba.antx.config.ConfigException;
-import com.alibaba.antx.config.generator.PropertiesLoader;
 import com.alibaba.antx.config.generator.expr.Expression;
 import com.alibaba.antx.config.resource.ResourceManager;
 import com.alibaba.antx.config.resource.ResourceURI;
@@ -61,8 +60,11 @@ public class PropertiesSet {
     private       PropertiesFile       userPropertiesFile;
     private       Map                  namedPropertiesFiles; // Map: name => List of shared properties file names
     private       String               sharedName;
+    private       MergedProperties     sharedProps;
     private       Map                  mergedProps;
     private       Set                  mergedKeys;
+    private       int                  prefetchThreads = 8;
+    private       long                 loadTimeout     = 60000;
 
     public PropertiesSet() {
         this(null, null);
@@ -114,6 +116,7 @@ public class PropertiesSet {
         }
 
         this.sharedPropertiesFiles = files;
+        this.sharedProps = null;
     }
 
     public String getSharedPropertiesFilesName() {
@@ -124,6 +127,18 @@ public class PropertiesSet {
         this.sharedName = StringUtil.isEmpty(sharedName) ? null : sharedName;
     }
 
+    /** 设置最多同时装载多少个shared properties资源，<code>1</code>表示逐个装载。 */
+    public void setPrefetchThreads(int prefetchThreads) {
+        this.prefetchThreads = prefetchThreads < 1 ? 1 : prefetchThreads;
+    }
+
+    /**
+     * 设置每个shared properties资源的装载时间上限（毫秒），<code>0</code>表示不限。超时将报错，但不能中止阻塞中的装载。
+     */
+    public void setLoadTimeout(long loadTimeout) {
+        this.loadTimeout = loadTimeout < 0 ? 0 : loadTimeout;
+    }
+
     public Map getMergedProperties() {
         init();
         return mergedProps;
@@ -173,8 +188,8 @@ public class PropertiesSet {
         // antx.properties.name2.4
         Map props = new HashMap();
 
-        PropertiesLoader.mergeProperties(props, systemProps.getProperties());
-        PropertiesLoader.mergeProperties(props, userPropertiesFile.getProperties());
+        props.putAll(systemProps.getProperties());
+        props.putAll(userPropertiesFile.getProperties());
 
         namedPropertiesFiles = getNamedSharedPropertiesFiles(props);
 
@@ -330,38 +345,64 @@ public class PropertiesSet {
     }
 
     private void loadUserProperties(boolean reload) {
-        mergedProps = new HashMap();
-        mergedKeys = new TreeSet();
+        // system和shared properties只合并一次，此后只需重新叠加user properties
+        if (sharedProps == null) {
+            // shared properties：先并发地装载所有资源，再按原有的顺序合并，以保持覆盖的次序
+            prefetchSharedProperties();
 
-        // system properties
-        mergedKeys.addAll(getSystemProperties().getKeys());
-        PropertiesLoader.mergeProperties(mergedProps, getSystemProperties().getProperties());
+            List<PropertiesFile> expandedFiles = new LinkedList<PropertiesFile>();
 
-        // shared properties
-        List expandedFiles = new LinkedList();
+            for (int i = 0; i < getSharedPropertiesFiles().length; i++) {
+                expandResource(getSharedPropertiesFiles()[i], expandedFiles);
+            }
 
-        for (int i = 0; i < getSharedPropertiesFiles().length; i++) {
-            loadResource(getSharedPropertiesFiles()[i], mergedProps, mergedKeys, expandedFiles);
-        }
+            sharedPropertiesFilesExpanded = expandedFiles.toArray(new PropertiesFile[expandedFiles.size()]);
 
-        sharedPropertiesFilesExpanded = (PropertiesFile[]) expandedFiles.toArray(new PropertiesFile[expandedFiles
-                .size()]);
+            expandedFiles.add(0, getSystemProperties());
+            sharedProps = new MergedProperties(expandedFiles);
+        }
 
         // user properties
         if (reload) {
             getUserPropertiesFile().reload();
         }
 
-        mergedKeys.addAll(getUserPropertiesFile().getKeys());
-        PropertiesLoader.mergeProperties(mergedProps, getUserPropertiesFile().getProperties());
+        mergedProps = sharedProps.overlayProperties(getUserPropertiesFile());
+        mergedKeys = sharedProps.overlayKeys(getUserPropertiesFile());
 
         checkOverlap(reload);
     }
 
-    /** 检查shared properties中的被覆盖的值。 */
+    /** 并发地装载所有shared properties资源，目录中的文件将在目录被列出之后装载。 */
+    private void prefetchSharedProperties() {
+        PropertiesPrefetcher prefetcher = new PropertiesPrefetcher(manager, prefetchThreads, loadTimeout);
+        List<PropertiesResource> files = new ArrayList<PropertiesResource>();
+
+        prefetcher.prefetch(Arrays.asList(getSharedPropertiesFiles()));
+
+        for (PropertiesResource resource : getSharedPropertiesFiles()) {
+            if (resource instanceof PropertiesFileSet) {
+                files.addAll(((PropertiesFileSet) resource).getPropertiesFiles());
+            }
+        }
+
+        prefetcher.prefetch(files);
+
+        String statistics = manager.getStatistics();
+
+        if (statistics != null) {
+            log.debug(statistics);
+        }
+    }
+
+    /** 检查shared properties中的被覆盖的值。重新装载时，只报告被user properties覆盖的值。 */
     private void checkOverlap(boolean reload) {
         for (Iterator i = getMergedKeys().iterator(); i.hasNext(); ) {
             String key = (String) i.next();
+
+            if (reload && !userPropertiesFile.getProperties().containsKey(key)) {
+                continue;
+            }
             PatternMatcher matcher = new Perl5Matcher();
 
             // 跳过antx.properties.*，因为有特殊意义
@@ -454,21 +495,16 @@ public class PropertiesSet {
         return names;
     }
 
-    private void loadResource(PropertiesResource resource, Map mergedProperties, Set mergedKeys, List expandedFiles) {
+    private void expandResource(PropertiesResource resource, List<PropertiesFile> expandedFiles) {
         if (resource instanceof PropertiesFile) {
-            PropertiesFile file = (PropertiesFile) resource;
-
-            expandedFiles.add(file);
-            mergedKeys.addAll(file.getKeys());
-
-            PropertiesLoader.mergeProperties(mergedProperties, file.getProperties());
+            expandedFiles.add((PropertiesFile) resource);
         } else if (resource instanceof PropertiesFileSet) {
             PropertiesFileSet files = (PropertiesFileSet) resource;
 
             for (Iterator i = files.getPropertiesFiles().iterator(); i.hasNext(); ) {
                 PropertiesResource pr = (PropertiesResource) i.next();
 
-                loadResource(pr, mergedProperties, mergedKeys, expandedFiles);
+                expandResource(pr, expandedFiles);
             }
         } else {
             throw new IllegalArgumentException("unknown resource type: " + resource.getClass().getName());
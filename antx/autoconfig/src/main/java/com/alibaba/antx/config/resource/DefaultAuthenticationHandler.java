@@ -44,7 +44,8 @@ public class DefaultAuthenticationHandler implements AuthenticationHandler {
         this.passwordFile = new File(System.getProperty("user.home"), "passwd.antxconfig");
     }
 
-    public UsernamePassword authenticate(String message, URI uri, String username, boolean visited) {
+    /** 资源可能被并发地装载，但同一时刻只能在控制台上提示一次。 */
+    public synchronized UsernamePassword authenticate(String message, URI uri, String username, boolean visited) {
         // 如果这个URI的密码从未被询问过，则试着从password文件中取得密码
         if (!visited) {
             UsernamePassword userPass = loadPassword(uri);
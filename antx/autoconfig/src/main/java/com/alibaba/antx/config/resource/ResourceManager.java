@@ -64,6 +64,11 @@ public class ResourceManager {
         return session.getResource(new ResourceURI(uri, session));
     }
 
+    /** 是否允许多个线程同时访问指定URI所在的session。 */
+    public boolean isThreadSafe(URI uri) {
+        return getSession(uri.getScheme()).isThreadSafe();
+    }
+
     private Session getSession(String type) {
         ResourceDriver driver = (ResourceDriver) drivers.get(type);
 
@@ -85,6 +90,27 @@ public class ResourceManager {
         return session;
     }
 
+    /** 取得所有已打开的session的统计信息，如果没有，则返回<code>null</code>。 */
+    public String getStatistics() {
+        StringBuilder buf = new StringBuilder();
+
+        synchronized (sessions) {
+            for (Iterator i = sessions.values().iterator(); i.hasNext(); ) {
+                String statistics = ((Session) i.next()).getStatistics();
+
+                if (statistics != null) {
+                    if (buf.length() > 0) {
+                        buf.append("\n");
+                    }
+
+                    buf.append(statistics);
+                }
+            }
+        }
+
+        return buf.length() == 0 ? null : buf.toString();
+    }
+
     public void close() {
         synchronized (sessions) {
             for (Iterator i = sessions.values().iterator(); i.hasNext(); ) {
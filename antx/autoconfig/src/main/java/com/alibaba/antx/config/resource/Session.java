@@ -36,6 +36,16 @@ public abstract class Session {
 
     public abstract boolean acceptOption(String optionName);
 
+    /** 是否允许多个线程同时通过此session访问资源。 */
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    /** 取得统计信息，如果没有，则返回<code>null</code>。 */
+    public String getStatistics() {
+        return null;
+    }
+
     public void close() {
     }
 }
@@ -77,11 +77,42 @@ public class HttpResource extends Resource {
         GetMethod httpget = new GetMethod(getURI().toString());
         httpget.setDoAuthentication(true);
         InputStream stream = null;
+        HttpResourceCache cache = ((HttpSession) getSession()).getCache();
+        HttpResourceCache.Entry cached = cache == null ? null : cache.get(getURI());
+
+        // 如果有缓存，则请服务器确认缓存是否仍然有效
+        if (cached != null) {
+            if (cached.getETag() != null) {
+                httpget.setRequestHeader("If-None-Match", cached.getETag());
+            }
+
+            if (cached.getLastModified() != null) {
+                httpget.setRequestHeader("If-Modified-Since", cached.getLastModified());
+            }
+        }
 
         try {
             ResourceContext.get().setCurrentURI(getURI().getURI());
 
-            ((HttpSession) getSession()).getClient().executeMethod(httpget);
+            try {
+                ((HttpSession) getSession()).getClient().executeMethod(httpget);
+            } catch (IOException e) {
+                // 服务器无法访问，使用上次成功取得的内容
+                if (cached != null) {
+                    cache.recordOffline(getURI(), e);
+                    setContent(cached);
+                    return;
+                }
+
+                throw e;
+            }
+
+            if (httpget.getStatusCode() == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+                ResourceContext.get().getVisitedURIs().remove(new ResourceKey(new ResourceURI(getURI().getURI())));
+                cache.recordHit(getURI());
+                setContent(cached);
+                return;
+            }
 
             if (httpget.getStatusCode() != 200) {
                 throw new ResourceNotFoundException(HttpStatus.getStatusText(httpget.getStatusCode()));
@@ -95,6 +126,16 @@ public class HttpResource extends Resource {
 
             Header contentTypeHeader = httpget.getResponseHeader("Content-Type");
             contentType = contentTypeHeader == null ? null : contentTypeHeader.getValue();
+
+            // 需要认证的资源不保存在磁盘上
+            if (cache != null && isAuthenticated(httpget)) {
+                cache.remove(getURI());
+            } else if (cache != null) {
+                cache.recordMiss(getURI());
+                cache.put(getURI(), new HttpResourceCache.Entry(content, getHeaderValue(httpget, "ETag"),
+                                                                getHeaderValue(httpget, "Last-Modified"), charset,
+                                                                contentType));
+            }
         } catch (RuntimeException e) {
             throw e;
         } catch (Exception e) {
@@ -113,6 +154,21 @@ public class HttpResource extends Resource {
         }
     }
 
+    private void setContent(HttpResourceCache.Entry cached) {
+        content = cached.getContent();
+        charset = cached.getCharset();
+        contentType = cached.getContentType();
+    }
+
+    private static boolean isAuthenticated(GetMethod httpget) {
+        return httpget.getHostAuthState().isAuthAttempted() || httpget.getRequestHeader("Authorization") != null;
+    }
+
+    private static String getHeaderValue(GetMethod httpget, String name) {
+        Header header = httpget.getResponseHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
     @Override
     public InputStream getInputStream() {
         return new ByteArrayInputStream(getContent());
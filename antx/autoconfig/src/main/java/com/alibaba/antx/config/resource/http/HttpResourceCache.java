@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.config.resource.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.alibaba.antx.config.ConfigException;
+import com.alibaba.antx.config.resource.ResourceURI;
+import com.alibaba.antx.util.StreamUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 保存在磁盘上的http资源缓存。
+ * <p>
+ * 每个资源按其URI保存内容，以及服务器返回的<code>ETag</code>、<code>Last-Modified</code>。再次取得资源时，通过
+ * <code>If-None-Match</code>、<code>If-Modified-Since</code>向服务器确认缓存是否仍然有效；如果服务器无法访问，则使用上次成功取得的内容。
+ * </p>
+ * <p>
+ * 需要认证的资源不会被缓存。缓存目录只对当前用户可读写，超过<code>maxAge</code>未被确认的缓存项将被删除。
+ * 设置系统属性<code>-Dautoconfig.http.cache=false</code>可禁用缓存。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+public class HttpResourceCache {
+    /** 系统属性：设置为<code>false</code>则不缓存http资源。 */
+    public static final String  ENABLED_PROPERTY  = "autoconfig.http.cache";
+
+    /** 系统属性：缓存项的最长保存天数。 */
+    public static final String  MAX_AGE_PROPERTY  = "autoconfig.http.cache.maxAgeDays";
+
+    /** 默认的缓存项最长保存时间：30天。 */
+    public static final long    DEFAULT_MAX_AGE   = 30L * 24 * 60 * 60 * 1000;
+
+    /** 残留的临时文件及不完整的缓存项的保存时间：1小时，以免删除其它进程正在写入的文件。 */
+    private static final long   STALE_FILE_AGE    = 60L * 60 * 1000;
+    private static final Logger log               = LoggerFactory.getLogger(HttpResourceCache.class);
+    private final File          cacheDir;
+    private final long          maxAge;
+    private final AtomicBoolean evicted           = new AtomicBoolean();
+    private final AtomicInteger hits              = new AtomicInteger();
+    private final AtomicInteger misses            = new AtomicInteger();
+    private final AtomicInteger offline           = new AtomicInteger();
+
+    /** 创建默认的缓存，位于<code>~/.autoconfig/http-cache</code>。 */
+    public HttpResourceCache() {
+        this(new File(System.getProperty("user.home"), ".autoconfig" + File.separator + "http-cache"),
+             getDefaultMaxAge());
+    }
+
+    public HttpResourceCache(File cacheDir) {
+        this(cacheDir, DEFAULT_MAX_AGE);
+    }
+
+    public HttpResourceCache(File cacheDir, long maxAge) {
+        this.cacheDir = cacheDir;
+        this.maxAge = maxAge;
+    }
+
+    /** 创建默认的缓存，如果缓存被系统属性禁用，则返回<code>null</code>。 */
+    public static HttpResourceCache createDefault() {
+        if ("false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY))) {
+            return null;
+        }
+
+        return new HttpResourceCache();
+    }
+
+    private static long getDefaultMaxAge() {
+        String days = System.getProperty(MAX_AGE_PROPERTY);
+
+        if (days != null) {
+            try {
+                return Long.parseLong(days.trim()) * 24 * 60 * 60 * 1000;
+            } catch (NumberFormatException e) {
+                log.warn("Invalid " + MAX_AGE_PROPERTY + ": " + days);
+            }
+        }
+
+        return DEFAULT_MAX_AGE;
+    }
+
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * 取得缓存的资源。
+     *
+     * @return 缓存项，如果不存在或无法读取，则返回<code>null</code>
+     */
+    public Entry get(ResourceURI uri) {
+        String key = getKey(uri);
+        File metaFile = new File(cacheDir, key + ".properties");
+        File contentFile = new File(cacheDir, key + ".content");
+
+        if (!metaFile.isFile() || !contentFile.isFile()) {
+            return null;
+        }
+
+        if (isExpired(metaFile, System.currentTimeMillis())) {
+            remove(uri);
+            return null;
+        }
+
+        try {
+            Properties meta = new Properties();
+            InputStream istream = new FileInputStream(metaFile);
+
+            try {
+                meta.load(istream);
+            } finally {
+                istream.close();
+            }
+
+            // 防止hash冲突
+            if (!uri.getURI().toString().equals(meta.getProperty("uri"))) {
+                return null;
+            }
+
+            byte[] content = StreamUtil.readBytes(new FileInputStream(contentFile), true).toByteArray();
+
+            return new Entry(content, meta.getProperty("etag"), meta.getProperty("lastModified"),
+                             meta.getProperty("charset"), meta.getProperty("contentType"));
+        } catch (IOException e) {
+            log.debug("Could not read cached copy of " + uri.getURI(), e);
+            return null;
+        }
+    }
+
+    /** 保存资源。写入失败不影响资源的使用。 */
+    public void put(ResourceURI uri, Entry entry) {
+        evictExpired();
+
+        String key = getKey(uri);
+        Properties meta = new Properties();
+
+        meta.setProperty("uri", uri.getURI().toString());
+        setProperty(meta, "etag", entry.etag);
+        setProperty(meta, "lastModified", entry.lastModified);
+        setProperty(meta, "charset", entry.charset);
+        setProperty(meta, "contentType", entry.contentType);
+
+        try {
+            createCacheDir();
+
+            // 先写内容再写meta，meta存在即表示内容完整
+            File metaFile = new File(cacheDir, key + ".properties");
+            File tmpMetaFile = File.createTempFile(key, ".tmp", cacheDir);
+            File tmpContentFile = File.createTempFile(key, ".tmp", cacheDir);
+            OutputStream ostream = new FileOutputStream(tmpContentFile);
+
+            try {
+                ostream.write(entry.content);
+            } finally {
+                ostream.close();
+            }
+
+            ostream = new FileOutputStream(tmpMetaFile);
+
+            try {
+                meta.store(ostream, null);
+            } finally {
+                ostream.close();
+            }
+
+            metaFile.delete();
+            rename(tmpContentFile, new File(cacheDir, key + ".content"));
+            rename(tmpMetaFile, metaFile);
+        } catch (IOException e) {
+            log.debug("Could not cache " + uri.getURI(), e);
+        }
+    }
+
+    /** 删除缓存的资源，例如资源需要认证时。 */
+    public void remove(ResourceURI uri) {
+        String key = getKey(uri);
+
+        new File(cacheDir, key + ".properties").delete();
+        new File(cacheDir, key + ".content").delete();
+    }
+
+    /** 服务器确认缓存仍然有效时，更新缓存项的时间，使其不会过期。 */
+    private void touch(ResourceURI uri) {
+        String key = getKey(uri);
+        long now = System.currentTimeMillis();
+
+        new File(cacheDir, key + ".properties").setLastModified(now);
+        new File(cacheDir, key + ".content").setLastModified(now);
+    }
+
+    private boolean isExpired(File file, long now) {
+        return maxAge >= 0 && file.lastModified() + maxAge < now;
+    }
+
+    /**
+     * 删除过期的缓存项及残留的临时文件，每个cache实例只做一次。
+     * <p>
+     * 缓存项的时间以<code>.properties</code>文件为准，内容和meta文件被一起删除。没有meta文件的内容，以及临时文件，
+     * 超过一小时即被删除。
+     * </p>
+     */
+    private void evictExpired() {
+        if (!evicted.compareAndSet(false, true)) {
+            return;
+        }
+
+        File[] files = cacheDir.listFiles();
+
+        if (files == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+
+        for (File file : files) {
+            String name = file.getName();
+
+            if (!file.isFile()) {
+                continue;
+            }
+
+            if (name.endsWith(".properties")) {
+                if (isExpired(file, now)) {
+                    String key = name.substring(0, name.length() - ".properties".length());
+
+                    file.delete();
+                    new File(cacheDir, key + ".content").delete();
+                }
+            } else if (name.endsWith(".content")) {
+                String key = name.substring(0, name.length() - ".content".length());
+
+                if (!new File(cacheDir, key + ".properties").exists() && file.lastModified() + STALE_FILE_AGE < now) {
+                    file.delete();
+                }
+            } else if (name.endsWith(".tmp") && file.lastModified() + STALE_FILE_AGE < now) {
+                file.delete();
+            }
+        }
+    }
+
+    /** 创建缓存目录，并且只允许当前用户访问。 */
+    private void createCacheDir() throws IOException {
+        if (!cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+            throw new IOException("Could not create directory " + cacheDir);
+        }
+
+        cacheDir.setReadable(false, false);
+        cacheDir.setWritable(false, false);
+        cacheDir.setExecutable(false, false);
+        cacheDir.setReadable(true, true);
+        cacheDir.setWritable(true, true);
+        cacheDir.setExecutable(true, true);
+    }
+
+    private void setProperty(Properties meta, String name, String value) {
+        if (value != null) {
+            meta.setProperty(name, value);
+        }
+    }
+
+    private void rename(File from, File to) throws IOException {
+        to.delete();
+
+        if (!from.renameTo(to)) {
+            from.delete();
+            throw new IOException("Could not rename " + from + " to " + to);
+        }
+    }
+
+    private String getKey(ResourceURI uri) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] digest = md.digest(uri.getURI().toString().getBytes("UTF-8"));
+            StringBuilder buf = new StringBuilder(digest.length * 2);
+
+            for (byte b : digest) {
+                buf.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+
+            return buf.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new ConfigException(e);
+        } catch (IOException e) {
+            throw new ConfigException(e);
+        }
+    }
+
+    /** 服务器确认缓存仍然有效。 */
+    void recordHit(ResourceURI uri) {
+        hits.incrementAndGet();
+        touch(uri);
+        log.debug("Cache hit (not modified): {}", uri.getURI());
+    }
+
+    /** 从服务器取得了新内容。 */
+    void recordMiss(ResourceURI uri) {
+        misses.incrementAndGet();
+        log.debug("Cache miss: {}", uri.getURI());
+    }
+
+    /** 服务器无法访问，使用了缓存的内容。 */
+    void recordOffline(ResourceURI uri, Exception e) {
+        offline.incrementAndGet();
+        log.warn("Could not reach server, using cached copy of " + uri.getURI() + ": " + e.getMessage());
+    }
+
+    /** 取得统计信息，如果从未访问过任何资源，则返回<code>null</code>。 */
+    public String getStatistics() {
+        int h = hits.get();
+        int m = misses.get();
+        int o = offline.get();
+
+        if (h + m + o == 0) {
+            return null;
+        }
+
+        return "HTTP cache: " + h + " hits, " + m + " misses, " + o + " served offline";
+    }
+
+    /** 缓存项。 */
+    public static class Entry {
+        private String etag;
+        private String lastModified;
+        private String charset;
+        private String contentType;
+        private byte[] content;
+
+        public Entry(byte[] content, String etag, String lastModified, String charset, String contentType) {
+            this.content = content;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.charset = charset;
+            this.contentType = contentType;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public String getCharset() {
+            return charset;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+    }
+}
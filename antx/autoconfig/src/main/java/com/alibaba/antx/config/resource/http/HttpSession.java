@@ -29,18 +29,25 @@ import com.alibaba.antx.config.resource.util.ResourceContext;
 import com.alibaba.antx.config.resource.util.ResourceKey;
 import org.apache.commons.httpclient.Credentials;
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
 import org.apache.commons.httpclient.auth.AuthScheme;
 import org.apache.commons.httpclient.auth.CredentialsNotAvailableException;
 import org.apache.commons.httpclient.auth.CredentialsProvider;
 
 public class HttpSession extends Session {
-    private final HttpClient client;
+    private static final int               MAX_CONNECTIONS_PER_HOST = 8;
+    private final        HttpClient        client;
+    private              HttpResourceCache cache                    = HttpResourceCache.createDefault();
 
     public HttpSession(ResourceDriver driver) {
         super(driver);
 
-        client = new HttpClient();
+        // 允许多个线程同时装载资源
+        MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+
+        connectionManager.getParams().setDefaultMaxConnectionsPerHost(MAX_CONNECTIONS_PER_HOST);
+        client = new HttpClient(connectionManager);
 
         client.getParams().setAuthenticationPreemptive(true);
         client.getParams().setParameter(CredentialsProvider.PROVIDER, new CredentialsProvider() {
@@ -71,6 +78,20 @@ public class HttpSession extends Session {
         return client;
     }
 
+    /** 取得资源缓存，如果为<code>null</code>，则不缓存。 */
+    public HttpResourceCache getCache() {
+        return cache;
+    }
+
+    public void setCache(HttpResourceCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public String getStatistics() {
+        return cache == null ? null : cache.getStatistics();
+    }
+
     @Override
     public boolean acceptOption(String optionName) {
         if ("charset".equals(optionName)) {
@@ -84,4 +105,9 @@ public class HttpSession extends Session {
     public Resource getResource(final ResourceURI uri) {
         return new HttpResource(this, uri);
     }
+
+    @Override
+    public void close() {
+        ((MultiThreadedHttpConnectionManager) client.getHttpConnectionManager()).shutdown();
+    }
 }
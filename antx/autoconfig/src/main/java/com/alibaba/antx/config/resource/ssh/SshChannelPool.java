@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.config.resource.ssh;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.alibaba.antx.config.ConfigException;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpException;
+
+/**
+ * 同一台主机上的sftp channel池。
+ * <p>
+ * 所有的channel复用同一个已认证的ssh连接，每个channel同时只能被一个线程使用。
+ * 池中还缓存了目录列表，在{@link #LISTING_TTL}时间内，同一目录只被列一次。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+class SshChannelPool {
+    /** 目录列表的缓存时间：30秒。 */
+    static final long        LISTING_TTL  = 30 * 1000;
+    private final Session    session;
+    private final String     charset;
+    private final int        maxChannels;
+    private final LinkedList idleChannels = new LinkedList();
+    private final Map        listings     = Collections.synchronizedMap(new HashMap());
+    private       int        openChannels;
+    private       boolean    closed;
+
+    public SshChannelPool(Session session, String charset, int maxChannels) {
+        this.session = session;
+        this.charset = charset;
+        this.maxChannels = maxChannels;
+    }
+
+    /** 取得一个空闲的channel，如果channel数已达上限，则等待其它线程归还。 */
+    public ChannelSftp borrow() {
+        synchronized (this) {
+            while (true) {
+                if (closed) {
+                    throw new ConfigException("SSH session has been closed: " + session.getHost());
+                }
+
+                if (!idleChannels.isEmpty()) {
+                    ChannelSftp channel = (ChannelSftp) idleChannels.removeFirst();
+
+                    if (channel.isConnected()) {
+                        return channel;
+                    }
+
+                    openChannels--;
+                    continue;
+                }
+
+                if (openChannels < maxChannels) {
+                    openChannels++;
+                    break;
+                }
+
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ConfigException(e);
+                }
+            }
+        }
+
+        // 在锁外打开channel，以免阻塞其它线程取用空闲的channel
+        try {
+            return openChannel();
+        } catch (RuntimeException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    /** 归还channel。 */
+    public void release(ChannelSftp channel) {
+        synchronized (this) {
+            if (!closed && channel.isConnected()) {
+                idleChannels.addFirst(channel);
+                notifyAll();
+                return;
+            }
+
+            openChannels--;
+            notifyAll();
+        }
+
+        channel.disconnect();
+    }
+
+    /** 列出目录，结果被缓存{@link #LISTING_TTL}毫秒。 */
+    public List list(String path) {
+        Listing listing = (Listing) listings.get(path);
+        long now = System.currentTimeMillis();
+
+        if (listing == null || now - listing.time > LISTING_TTL) {
+            ChannelSftp channel = borrow();
+
+            try {
+                listing = new Listing(Collections.unmodifiableList(new ArrayList(channel.ls(path))), now);
+            } catch (SftpException e) {
+                throw new ConfigException(e);
+            } finally {
+                release(channel);
+            }
+
+            listings.put(path, listing);
+        }
+
+        return listing.entries;
+    }
+
+    /** 关闭所有channel和ssh连接。 */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+
+            for (Iterator i = idleChannels.iterator(); i.hasNext(); ) {
+                ChannelSftp channel = (ChannelSftp) i.next();
+
+                i.remove();
+                channel.quit();
+            }
+
+            listings.clear();
+            notifyAll();
+        }
+
+        session.disconnect();
+    }
+
+    private ChannelSftp openChannel() {
+        try {
+            ChannelSftp channel = (ChannelSftp) session.openChannel("sftp");
+
+            channel.connect();
+
+            if (charset != null) {
+                channel.setFilenameEncoding(charset);
+            }
+
+            return channel;
+        } catch (JSchException e) {
+            throw new ConfigException(e);
+        } catch (SftpException e) {
+            throw new ConfigException(e);
+        }
+    }
+
+    private synchronized void discard() {
+        openChannels--;
+        notifyAll();
+    }
+
+    /** 缓存的目录列表。 */
+    private static class Listing {
+        private final List entries;
+        private final long time;
+
+        public Listing(List entries, long time) {
+            this.entries = entries;
+            this.time = time;
+        }
+    }
+}
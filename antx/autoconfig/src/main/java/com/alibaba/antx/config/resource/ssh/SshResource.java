@@ -17,6 +17,8 @@
 
 package com.alibaba.antx.config.resource.ssh;
 
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -36,50 +38,152 @@ import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
 
 public class SshResource extends Resource {
-    private final ChannelSftp channel;
-    private final SftpATTRS   attrs;
+    private final SshChannelPool pool;
+    private final SftpATTRS      attrs;
 
-    public SshResource(Session session, ChannelSftp channel, ResourceURI uri, SftpATTRS attrs) {
+    public SshResource(Session session, SshChannelPool pool, ResourceURI uri, SftpATTRS attrs) {
         super(session, uri);
 
-        this.channel = channel;
+        this.pool = pool;
         this.attrs = attrs;
     }
 
     @Override
     public Resource getRelatedResource(String suburi) {
-        return new SshResource(getSession(), channel, getURI().getSubURI(suburi), null);
+        return new SshResource(getSession(), pool, getURI().getSubURI(suburi), null);
     }
 
+    /** 已知文件大小时，预先分配大小相同的数组，避免多次复制。 */
     @Override
     public byte[] getContent() {
         assertFile();
 
+        ChannelSftp channel = pool.borrow();
+
         try {
-            return StreamUtil.readBytes(getInputStream(), true).toByteArray();
+            InputStream istream = channel.get(getURI().getPath());
+
+            try {
+                long size = attrs == null ? -1 : attrs.getSize();
+
+                if (size < 0 || size > Integer.MAX_VALUE) {
+                    return StreamUtil.readBytes(istream, false).toByteArray();
+                }
+
+                return readFully(istream, (int) size);
+            } finally {
+                istream.close();
+            }
+        } catch (SftpException e) {
+            throw new ConfigException(e);
         } catch (IOException e) {
             throw new ConfigException(e);
+        } finally {
+            pool.release(channel);
         }
     }
 
+    /**
+     * 读取直到流结束。文件大小可能来自缓存的目录列表，或在stat之后被改变，因此<code>size</code>只用来确定初始数组的大小，
+     * 数组满了之后仍然继续读，并在必要时扩大数组。
+     */
+    private byte[] readFully(InputStream istream, int size) throws IOException {
+        byte[] content = new byte[size];
+        int count = 0;
+
+        while (true) {
+            if (count == content.length) {
+                // 数组已满，如果恰好到达流的末尾，则不必复制
+                int b = istream.read();
+
+                if (b < 0) {
+                    return content;
+                }
+
+                byte[] newContent = new byte[Math.max(content.length * 2, content.length + 8192)];
+
+                System.arraycopy(content, 0, newContent, 0, count);
+                content = newContent;
+                content[count++] = (byte) b;
+            }
+
+            int read = istream.read(content, count, content.length - count);
+
+            if (read < 0) {
+                break;
+            }
+
+            count += read;
+        }
+
+        byte[] result = new byte[count];
+
+        System.arraycopy(content, 0, result, 0, count);
+
+        return result;
+    }
+
+    /** 返回的流在关闭时归还channel。 */
     @Override
     public InputStream getInputStream() {
         assertFile();
 
+        final ChannelSftp channel = pool.borrow();
+
         try {
-            return channel.get(getURI().getPath());
+            return new FilterInputStream(channel.get(getURI().getPath())) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    if (!closed) {
+                        closed = true;
+
+                        try {
+                            super.close();
+                        } finally {
+                            pool.release(channel);
+                        }
+                    }
+                }
+            };
         } catch (SftpException e) {
+            pool.release(channel);
             throw new ConfigException(e);
         }
     }
 
+    /** 返回的流在关闭时归还channel。 */
     @Override
     public OutputStream getOutputStream() {
         assertFile();
 
+        final ChannelSftp channel = pool.borrow();
+
         try {
-            return channel.put(getURI().getPath());
+            return new FilterOutputStream(channel.put(getURI().getPath())) {
+                private boolean closed;
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    if (!closed) {
+                        closed = true;
+
+                        try {
+                            super.close();
+                        } finally {
+                            pool.release(channel);
+                        }
+                    }
+                }
+            };
         } catch (SftpException e) {
+            pool.release(channel);
             throw new ConfigException(e);
         }
     }
@@ -107,14 +211,7 @@ public class SshResource extends Resource {
     public List list() {
         assertDirectory();
 
-        List entries;
-
-        try {
-            entries = channel.ls(getURI().getPath());
-        } catch (SftpException e) {
-            throw new ConfigException(e);
-        }
-
+        List entries = pool.list(getURI().getPath());
         List result = new ArrayList(entries.size());
 
         for (Iterator i = entries.iterator(); i.hasNext(); ) {
@@ -125,7 +222,7 @@ public class SshResource extends Resource {
                 continue;
             }
 
-            result.add(new SshResource(getSession(), channel, getURI().getSubURI(name, entry.getAttrs().isDir()), entry
+            result.add(new SshResource(getSession(), pool, getURI().getSubURI(name, entry.getAttrs().isDir()), entry
                     .getAttrs()));
         }
 
@@ -34,19 +34,20 @@ import com.alibaba.antx.config.resource.util.ResourceContext;
 import com.alibaba.antx.config.resource.util.ResourceKey;
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.JSch;
-import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
 import com.jcraft.jsch.UserInfo;
 
 public class SshSession extends Session {
-    private final JSch jsch;
-    private final Map  channels;
+    /** 每台主机上最多同时打开的sftp channel数。 */
+    private static final int  MAX_CHANNELS_PER_HOST = 4;
+    private final        JSch jsch;
+    private final        Map  pools;
 
     public SshSession(SshResourceDriver driver) {
         super(driver);
         this.jsch = new JSch();
-        this.channels = Collections.synchronizedMap(new HashMap());
+        this.pools = Collections.synchronizedMap(new HashMap());
     }
 
     @Override
@@ -61,16 +62,19 @@ public class SshSession extends Session {
     @Override
     public Resource getResource(ResourceURI uri) {
         try {
-            ChannelSftp channel = getOrCreateChannel(uri);
+            SshChannelPool pool = getOrCreatePool(uri);
+            ChannelSftp channel = pool.borrow();
             SftpATTRS stat;
 
             try {
                 stat = channel.stat(uri.getPath());
             } catch (SftpException e) {
                 throw new ResourceNotFoundException(e);
+            } finally {
+                pool.release(channel);
             }
 
-            return new SshResource(this, channel, uri, stat);
+            return new SshResource(this, pool, uri, stat);
         } catch (RuntimeException e) {
             throw e;
         } catch (Exception e) {
@@ -78,14 +82,14 @@ public class SshSession extends Session {
         }
     }
 
-    protected ChannelSftp getOrCreateChannel(ResourceURI uri) {
+    protected SshChannelPool getOrCreatePool(ResourceURI uri) {
         final ResourceKey key = new ResourceKey(uri);
-        ChannelSftp channel;
+        SshChannelPool pool;
 
-        synchronized (channels) {
-            channel = (ChannelSftp) channels.get(key);
+        synchronized (pools) {
+            pool = (SshChannelPool) pools.get(key);
 
-            if (channel == null) {
+            if (pool == null) {
                 try {
                     ResourceContext.get().setCurrentURI(uri.getURI());
 
@@ -131,16 +135,8 @@ public class SshSession extends Session {
 
                     session.connect();
 
-                    channel = (ChannelSftp) session.openChannel("sftp");
-                    channel.connect();
-
-                    String charset = uri.getOption("charset");
-
-                    if (charset != null) {
-                        channel.setFilenameEncoding(charset);
-                    }
-
-                    channels.put(key, channel);
+                    pool = new SshChannelPool(session, uri.getOption("charset"), MAX_CHANNELS_PER_HOST);
+                    pools.put(key, pool);
 
                     // 成功就清除，以避免重复提示输入密码
                     ResourceContext.get().getVisitedURIs().remove(new ResourceKey(new ResourceURI(uri.getURI())));
@@ -154,24 +150,19 @@ public class SshSession extends Session {
             }
         }
 
-        return channel;
+        return pool;
     }
 
     @Override
     public void close() {
-        synchronized (channels) {
-            for (Iterator i = channels.values().iterator(); i.hasNext(); ) {
-                ChannelSftp channel = (ChannelSftp) i.next();
+        synchronized (pools) {
+            for (Iterator i = pools.values().iterator(); i.hasNext(); ) {
+                SshChannelPool pool = (SshChannelPool) i.next();
 
                 i.remove();
 
-                if (channel != null) {
-                    channel.quit();
-
-                    try {
-                        channel.getSession().disconnect();
-                    } catch (JSchException e) {
-                    }
+                if (pool != null) {
+                    pool.close();
                 }
             }
         }
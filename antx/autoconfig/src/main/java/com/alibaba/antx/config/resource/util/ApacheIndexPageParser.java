@@ -17,8 +17,7 @@
 
 package com.alibaba.antx.config.resource.util;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -37,8 +36,59 @@ public class ApacheIndexPageParser extends TextBasedPageParser {
     }
 
     public List parse(Resource resource) {
-        Document doc = getHtmlDocument(resource);
+        HtmlTagScanner scanner = getHtmlScanner(resource);
 
+        if (scanner != null) {
+            try {
+                try {
+                    String title = null;
+                    boolean following = false;
+                    List items = new ArrayList();
+
+                    for (int event = scanner.next(); event != HtmlTagScanner.END_DOCUMENT; event = scanner.next()) {
+                        if (event == HtmlTagScanner.TEXT) {
+                            if (title == null && "title".equals(scanner.getCurrentElement())) {
+                                title = scanner.getText();
+
+                                if (!title.startsWith("Index of")) {
+                                    return null;
+                                }
+                            }
+                        } else if (event == HtmlTagScanner.START_TAG) {
+                            if (following && "a".equals(scanner.getName())) {
+                                addLink(items, scanner.getAttribute("href"), resource);
+                            } else if (!following && isIcon(scanner)) {
+                                following = true;
+                            }
+                        }
+                    }
+
+                    // 找不到title或页面不完整，可能是不规范的html，改用tidy解析
+                    if (title != null && isComplete(scanner, resource)) {
+                        return items;
+                    }
+                } finally {
+                    scanner.close();
+                }
+            } catch (IOException e) {
+            }
+        }
+
+        return parse(getHtmlDocument(resource), resource);
+    }
+
+    /** 相当于<code>//pre/img[starts-with(@alt,'[') and ends-with(@alt,']')]</code>。 */
+    private boolean isIcon(HtmlTagScanner scanner) {
+        if ("img".equals(scanner.getName()) && "pre".equals(scanner.getAncestor(1))) {
+            String alt = scanner.getAttribute("alt");
+
+            return alt != null && alt.startsWith("[") && alt.endsWith("]");
+        }
+
+        return false;
+    }
+
+    private List parse(Document doc, Resource resource) {
         if (doc != null) {
             Node title = doc.selectSingleNode("//head/title");
 
@@ -49,18 +99,8 @@ public class ApacheIndexPageParser extends TextBasedPageParser {
 
                 for (Iterator i = nodes.iterator(); i.hasNext(); ) {
                     Node node = (Node) i.next();
-                    String name = node.getText();
-
-                    try {
-                        name = URLDecoder.decode(name, getCharset(resource));
-                    } catch (UnsupportedEncodingException e) {
-                    }
 
-                    Item item = getItem(name);
-
-                    if (item != null) {
-                        items.add(item);
-                    }
+                    addLink(items, node.getText(), resource);
                 }
 
                 return items;
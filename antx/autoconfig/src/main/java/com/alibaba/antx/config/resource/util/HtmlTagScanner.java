@@ -0,0 +1,499 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.config.resource.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 直接在字符流上扫描html标签的简易扫描器，用来从目录列表页面中提取链接。
+ * <p>
+ * 和JTidy不同，它不建立DOM，也不修正错误的html，只识别标签、属性和文本，并维护一个简单的元素栈。
+ * 字节由调用者按页面的字符集解码，因此属性值和文本中的非ASCII字符可被正确识别。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+class HtmlTagScanner {
+    public static final int END_DOCUMENT = 0;
+    public static final int START_TAG    = 1;
+    public static final int END_TAG      = 2;
+    public static final int TEXT         = 3;
+
+    private static final Set<String> VOID_ELEMENTS     = new HashSet<String>(Arrays.asList("area", "base", "br", "col",
+            "embed", "hr", "img", "input", "link", "meta", "param", "source", "wbr"));
+    private static final Set<String> RAW_TEXT_ELEMENTS = new HashSet<String>(Arrays.asList("script", "style"));
+
+    private final Reader              reader;
+    private final char[]              buffer       = new char[8192];
+    private final StringBuilder       text         = new StringBuilder();
+    private final StringBuilder       token        = new StringBuilder();
+    private final Map<String, String> attributes   = new HashMap<String, String>();
+    private final List<String>        openElements = new ArrayList<String>();
+    private       int                 pos;
+    private       int                 limit;
+    private       int                 pendingTagChar = -1;
+    private       String              name;
+    private       int                 tagDepth;
+    private       String              rawTextElement;
+    private       boolean             truncated;
+
+    public HtmlTagScanner(Reader reader) {
+        this.reader = reader;
+    }
+
+    /** 读取下一个事件：<code>START_TAG</code>、<code>END_TAG</code>、<code>TEXT</code>或<code>END_DOCUMENT</code>。 */
+    public int next() throws IOException {
+        text.setLength(0);
+
+        if (rawTextElement != null) {
+            name = rawTextElement;
+            rawTextElement = null;
+            skipRawText(name);
+            popElement(name);
+            return END_TAG;
+        }
+
+        int c;
+
+        if (pendingTagChar >= 0) {
+            c = pendingTagChar;
+            pendingTagChar = -1;
+
+            int event = readTag(c);
+
+            if (event != TEXT) {
+                return event;
+            }
+        }
+
+        while ((c = read()) >= 0) {
+            if (c != '<') {
+                text.append((char) c);
+                continue;
+            }
+
+            c = read();
+
+            if (!isTagStart(c)) {
+                text.append('<');
+
+                if (c >= 0) {
+                    text.append((char) c);
+                }
+
+                continue;
+            }
+
+            // 先返回标签之前的文本
+            if (text.length() > 0) {
+                pendingTagChar = c;
+                return TEXT;
+            }
+
+            int event = readTag(c);
+
+            if (event != TEXT) {
+                return event;
+            }
+        }
+
+        return text.length() > 0 ? TEXT : END_DOCUMENT;
+    }
+
+    /** 当前标签的名称，小写。 */
+    public String getName() {
+        return name;
+    }
+
+    /** 当前开始标签的属性值，属性名为小写。 */
+    public String getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    /** 当前文本，已经解码了字符实体。 */
+    public String getText() {
+        return decodeEntities(text);
+    }
+
+    /** 当前文本所在的元素。 */
+    public String getCurrentElement() {
+        return openElements.isEmpty() ? null : openElements.get(openElements.size() - 1);
+    }
+
+    /** 当前开始标签的第<code>level</code>层祖先元素，<code>1</code>代表父元素。 */
+    public String getAncestor(int level) {
+        int index = tagDepth - level;
+        return index >= 0 && index < openElements.size() ? openElements.get(index) : null;
+    }
+
+    /** 文档是否在标签或注释中间结束。 */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /** 读取<code>&lt;</code>之后的标签，如果是注释等被忽略的内容，则返回<code>TEXT</code>。 */
+    private int readTag(int c) throws IOException {
+        if (c == '!') {
+            if ((c = read()) == '-' && (c = read()) == '-') {
+                skipComment();
+            } else if (c != '>') {
+                skipTo('>');
+            }
+
+            return TEXT;
+        }
+
+        if (c == '?') {
+            skipTo('>');
+            return TEXT;
+        }
+
+        if (c == '/') {
+            name = readName(read());
+            skipTo('>');
+            popElement(name);
+            return END_TAG;
+        }
+
+        name = readName(c);
+
+        boolean selfClosing = readAttributes();
+
+        if ("li".equals(name)) {
+            closeOpenListItem();
+        }
+
+        tagDepth = openElements.size();
+
+        if (!selfClosing && !VOID_ELEMENTS.contains(name)) {
+            openElements.add(name);
+
+            if (RAW_TEXT_ELEMENTS.contains(name)) {
+                rawTextElement = name;
+            }
+        }
+
+        return START_TAG;
+    }
+
+    private String readName(int c) throws IOException {
+        token.setLength(0);
+
+        while (c >= 0 && (Character.isLetterOrDigit(c) || c == '-' || c == ':' || c == '_')) {
+            token.append(Character.toLowerCase((char) c));
+            c = read();
+        }
+
+        unread(c);
+
+        return token.toString();
+    }
+
+    /** 读取属性直到标签结束，如果是<code>/&gt;</code>结尾，则返回<code>true</code>。 */
+    private boolean readAttributes() throws IOException {
+        attributes.clear();
+
+        int c = read();
+
+        while (true) {
+            while (isWhitespace(c)) {
+                c = read();
+            }
+
+            if (c < 0) {
+                truncated = true;
+                return false;
+            }
+
+            if (c == '>') {
+                return false;
+            }
+
+            if (c == '/') {
+                if ((c = read()) == '>') {
+                    return true;
+                }
+
+                continue;
+            }
+
+            token.setLength(0);
+
+            while (c >= 0 && !isWhitespace(c) && c != '=' && c != '>' && c != '/') {
+                token.append(Character.toLowerCase((char) c));
+                c = read();
+            }
+
+            String attrName = token.toString();
+            String value = "";
+
+            while (isWhitespace(c)) {
+                c = read();
+            }
+
+            if (c == '=') {
+                c = read();
+
+                while (isWhitespace(c)) {
+                    c = read();
+                }
+
+                token.setLength(0);
+
+                if (c == '"' || c == '\'') {
+                    int quote = c;
+
+                    while ((c = read()) >= 0 && c != quote) {
+                        token.append((char) c);
+                    }
+
+                    if (c < 0) {
+                        truncated = true;
+                    }
+
+                    c = read();
+                } else {
+                    while (c >= 0 && !isWhitespace(c) && c != '>') {
+                        token.append((char) c);
+                        c = read();
+                    }
+                }
+
+                value = decodeEntities(token);
+            }
+
+            if (!attributes.containsKey(attrName)) {
+                attributes.put(attrName, value);
+            }
+        }
+    }
+
+    /** 新的<code>&lt;li&gt;</code>隐含结束同一列表中未结束的<code>&lt;li&gt;</code>。 */
+    private void closeOpenListItem() {
+        for (int i = openElements.size() - 1; i >= 0; i--) {
+            String element = openElements.get(i);
+
+            if ("ul".equals(element) || "ol".equals(element)) {
+                return;
+            }
+
+            if ("li".equals(element)) {
+                truncateElements(i);
+                return;
+            }
+        }
+    }
+
+    /** 弹出直到指定的元素，如果元素未打开，则忽略。 */
+    private void popElement(String name) {
+        int index = openElements.lastIndexOf(name);
+
+        if (index >= 0) {
+            truncateElements(index);
+        }
+    }
+
+    private void truncateElements(int size) {
+        for (int i = openElements.size() - 1; i >= size; i--) {
+            openElements.remove(i);
+        }
+    }
+
+    private void skipComment() throws IOException {
+        int dashes = 0;
+        int c;
+
+        while ((c = read()) >= 0) {
+            if (c == '>' && dashes >= 2) {
+                return;
+            }
+
+            dashes = c == '-' ? dashes + 1 : 0;
+        }
+
+        truncated = true;
+    }
+
+    private void skipTo(int end) throws IOException {
+        int c;
+
+        while ((c = read()) >= 0) {
+            if (c == end) {
+                return;
+            }
+        }
+
+        truncated = true;
+    }
+
+    /** 跳过script、style中的内容，直到对应的结束标签。 */
+    private void skipRawText(String element) throws IOException {
+        int c;
+
+        while ((c = read()) >= 0) {
+            if (c != '<') {
+                continue;
+            }
+
+            if ((c = read()) != '/') {
+                unread(c);
+                continue;
+            }
+
+            int i = 0;
+
+            while (i < element.length() && (c = read()) >= 0 && Character.toLowerCase((char) c) == element.charAt(i)) {
+                i++;
+            }
+
+            if (i == element.length()) {
+                skipTo('>');
+                return;
+            }
+
+            unread(c);
+        }
+
+        truncated = true;
+    }
+
+    private int read() throws IOException {
+        if (pos >= limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            pos = 0;
+
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+
+        return buffer[pos++];
+    }
+
+    private void unread(int c) {
+        if (c >= 0) {
+            pos--;
+        }
+    }
+
+    private static boolean isTagStart(int c) {
+        return c == '/' || c == '!' || c == '?' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    /** 解码常用的字符实体。 */
+    private static String decodeEntities(CharSequence chars) {
+        int length = chars.length();
+        int amp = -1;
+
+        for (int i = 0; i < length; i++) {
+            if (chars.charAt(i) == '&') {
+                amp = i;
+                break;
+            }
+        }
+
+        if (amp < 0) {
+            return chars.toString();
+        }
+
+        StringBuilder buf = new StringBuilder(length);
+
+        buf.append(chars, 0, amp);
+
+        for (int i = amp; i < length; i++) {
+            char c = chars.charAt(i);
+            int semicolon;
+
+            if (c != '&' || (semicolon = indexOf(chars, ';', i + 1, Math.min(length, i + 10))) < 0) {
+                buf.append(c);
+                continue;
+            }
+
+            String entity = chars.subSequence(i + 1, semicolon).toString();
+            int decoded = decodeEntity(entity);
+
+            if (decoded < 0) {
+                buf.append(c);
+            } else {
+                buf.append((char) decoded);
+                i = semicolon;
+            }
+        }
+
+        return buf.toString();
+    }
+
+    private static int decodeEntity(String entity) {
+        if ("amp".equals(entity)) {
+            return '&';
+        } else if ("lt".equals(entity)) {
+            return '<';
+        } else if ("gt".equals(entity)) {
+            return '>';
+        } else if ("quot".equals(entity)) {
+            return '"';
+        } else if ("apos".equals(entity)) {
+            return '\'';
+        } else if ("nbsp".equals(entity)) {
+            return '\u00a0';
+        } else if (entity.startsWith("#")) {
+            try {
+                int code;
+
+                if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                    code = Integer.parseInt(entity.substring(2), 16);
+                } else {
+                    code = Integer.parseInt(entity.substring(1));
+                }
+
+                return code >= 0 && code <= 0xFFFF ? code : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int indexOf(CharSequence chars, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (chars.charAt(i) == c) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
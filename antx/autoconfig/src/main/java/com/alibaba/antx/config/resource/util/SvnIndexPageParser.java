@@ -17,8 +17,7 @@
 
 package com.alibaba.antx.config.resource.util;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -36,6 +35,42 @@ public class SvnIndexPageParser extends TextBasedPageParser {
         doc = getXmlDocument(resource);
 
         if (doc == null) {
+            HtmlTagScanner scanner = getHtmlScanner(resource);
+
+            if (scanner != null) {
+                try {
+                    try {
+                        String title = null;
+                        List items = new ArrayList();
+
+                        for (int event = scanner.next(); event != HtmlTagScanner.END_DOCUMENT; event = scanner.next()) {
+                            if (event == HtmlTagScanner.TEXT) {
+                                if (title == null && "title".equals(scanner.getCurrentElement())) {
+                                    title = scanner.getText();
+
+                                    if (title.indexOf("Revision") <= 0) {
+                                        return null;
+                                    }
+                                }
+                            } else if (event == HtmlTagScanner.START_TAG && "a".equals(scanner.getName())) {
+                                // 相当于//ul/li/a/@href
+                                if ("li".equals(scanner.getAncestor(1)) && "ul".equals(scanner.getAncestor(2))) {
+                                    addLink(items, scanner.getAttribute("href"), resource);
+                                }
+                            }
+                        }
+
+                        // 找不到title或页面不完整，可能是不规范的html，改用tidy解析
+                        if (title != null && isComplete(scanner, resource)) {
+                            return items;
+                        }
+                    } finally {
+                        scanner.close();
+                    }
+                } catch (IOException e) {
+                }
+            }
+
             doc = getHtmlDocument(resource);
             xml = false;
         }
@@ -61,18 +96,8 @@ public class SvnIndexPageParser extends TextBasedPageParser {
 
                 for (Iterator i = nodes.iterator(); i.hasNext(); ) {
                     Node node = (Node) i.next();
-                    String name = node.getText();
 
-                    try {
-                        name = URLDecoder.decode(name, getCharset(resource));
-                    } catch (UnsupportedEncodingException e) {
-                    }
-
-                    Item item = getItem(name);
-
-                    if (item != null) {
-                        items.add(item);
-                    }
+                    addLink(items, node.getText(), resource);
                 }
             }
         }
@@ -17,16 +17,23 @@
 
 package com.alibaba.antx.config.resource.util;
 
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.List;
 
 import com.alibaba.antx.config.resource.Resource;
 import com.alibaba.antx.util.ByteArrayOutputStream;
 import org.dom4j.Document;
 import org.dom4j.io.DOMReader;
 import org.dom4j.io.SAXReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.w3c.tidy.Tidy;
 
 public abstract class TextBasedPageParser implements IndexPageParser {
+    private static final Logger log = LoggerFactory.getLogger(TextBasedPageParser.class);
     private String overridingCharset;
 
     public TextBasedPageParser() {
@@ -54,6 +61,35 @@ public abstract class TextBasedPageParser implements IndexPageParser {
         return null;
     }
 
+    /**
+     * 取得html文档的流式扫描器，用来快速提取链接。页面按{@link #getCharset(Resource)}解码。
+     * <p>
+     * 如果扫描器无法识别页面，可以再用{@link #getHtmlDocument(Resource)}完整地解析。
+     * </p>
+     */
+    protected HtmlTagScanner getHtmlScanner(Resource resource) {
+        String contentType = resource.getContentType();
+
+        if (contentType != null && contentType.startsWith("text/html")) {
+            try {
+                return new HtmlTagScanner(new InputStreamReader(resource.getInputStream(), getCharset(resource)));
+            } catch (Exception e) {
+            }
+        }
+
+        return null;
+    }
+
+    /** 检查扫描器是否读完了整个页面。如果页面在标签或注释中间结束，则链接可能不全，此时给出警告。 */
+    protected boolean isComplete(HtmlTagScanner scanner, Resource resource) {
+        if (scanner.isTruncated()) {
+            log.warn("Index page is truncated, the listing may be incomplete: " + resource.getURI().getURI());
+            return false;
+        }
+
+        return true;
+    }
+
     /** 取得html文档。 */
     protected Document getHtmlDocument(Resource resource) {
         String contentType = resource.getContentType();
@@ -85,6 +121,24 @@ public abstract class TextBasedPageParser implements IndexPageParser {
         }
     }
 
+    /** 解码链接，并加入item。 */
+    protected void addLink(List items, String href, Resource resource) {
+        if (href == null) {
+            return;
+        }
+
+        try {
+            href = URLDecoder.decode(href, getCharset(resource));
+        } catch (UnsupportedEncodingException e) {
+        }
+
+        Item item = getItem(href);
+
+        if (item != null) {
+            items.add(item);
+        }
+    }
+
     /** 根据名字取得item。 */
     protected Item getItem(String name) {
         if (name == null) {
@@ -121,13 +121,33 @@ public class ConfigWizard {
      * @return 如果满足要求，则返回true
      */
     public boolean validate() {
+        String[][] values = new String[groups.length][];
+
+        // 先计算所有的值，并让validators提前开始耗时的检查（例如域名解析），使之在后台并发进行
+        for (int i = 0; i < groups.length; i++) {
+            setStep(i);
+
+            values[i] = new String[props.length];
+
+            for (int j = 0; j < props.length; j++) {
+                ConfigProperty prop = props[j];
+
+                values[i][j] = evaluatePropertyValue(prop, false);
+
+                for (ConfigValidator validator : prop.getValidators()) {
+                    validator.prepare(values[i][j]);
+                }
+            }
+        }
+
+        // 再按顺序验证，第一个错误及其位置和串行验证时相同
         for (int i = 0; i < groups.length; i++) {
             setStep(i);
 
             for (int j = 0; j < props.length; j++) {
                 ConfigProperty prop = props[j];
 
-                String value = evaluatePropertyValue(prop, false);
+                String value = values[i][j];
 
                 for (Object element : prop.getValidators()) {
                     ConfigValidator validator = (ConfigValidator) element;
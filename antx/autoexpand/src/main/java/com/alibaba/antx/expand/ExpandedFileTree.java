@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.expand;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 记录已展开的文件和目录，按相对于展开目录的路径组织成树。
+ * <p>
+ * 路径只做字符串上的规格化，不需要访问文件系统。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+class ExpandedFileTree {
+    private final File         basedir;
+    private final List<String> basedirSegments;
+    private final Node         root = new Node();
+
+    public ExpandedFileTree(File basedir) {
+        this.basedir = basedir.getAbsoluteFile();
+        this.basedirSegments = getSegments(this.basedir.getPath());
+    }
+
+    /** 记录一个已展开的文件或目录，不在展开目录中的文件被忽略。 */
+    public synchronized void add(File file) {
+        List<String> segments = getSegments(file.getAbsolutePath());
+        int start = basedirSegments.size();
+
+        if (segments.size() < start || !segments.subList(0, start).equals(basedirSegments)) {
+            return;
+        }
+
+        Node node = root;
+
+        for (String segment : segments.subList(start, segments.size())) {
+            node = node.getOrCreateChild(segment);
+        }
+
+        node.expanded = true;
+    }
+
+    /** 取得文件对应的结点，如果文件未被展开，也不是已展开文件的父目录，则返回<code>null</code>。 */
+    public Node getNode(File file) {
+        List<String> segments = getSegments(file.getAbsolutePath());
+        int start = basedirSegments.size();
+
+        if (segments.size() < start || !segments.subList(0, start).equals(basedirSegments)) {
+            return null;
+        }
+
+        Node node = root;
+
+        for (int i = start; i < segments.size() && node != null; i++) {
+            node = node.getChild(segments.get(i));
+        }
+
+        return node;
+    }
+
+    /** 取得所有已展开的文件和目录的canonical路径。 */
+    public Set<String> getCanonicalPaths() throws IOException {
+        Set<String> paths = new HashSet<String>();
+
+        addCanonicalPaths(paths, basedir, root);
+
+        return paths;
+    }
+
+    private void addCanonicalPaths(Set<String> paths, File file, Node node) throws IOException {
+        if (node.expanded) {
+            paths.add(file.getCanonicalPath());
+        }
+
+        if (node.children != null) {
+            for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+                addCanonicalPaths(paths, new File(file, entry.getKey()), entry.getValue());
+            }
+        }
+    }
+
+    /** 将路径分解成段，并除去<code>.</code>和<code>..</code>。 */
+    private static List<String> getSegments(String path) {
+        List<String> segments = new ArrayList<String>();
+        int length = path.length();
+        int start = 0;
+
+        for (int i = 0; i <= length; i++) {
+            if (i < length && path.charAt(i) != '/' && path.charAt(i) != File.separatorChar) {
+                continue;
+            }
+
+            String segment = path.substring(start, i);
+
+            start = i + 1;
+
+            if (segment.length() == 0 || ".".equals(segment)) {
+                continue;
+            }
+
+            if ("..".equals(segment)) {
+                if (!segments.isEmpty()) {
+                    segments.remove(segments.size() - 1);
+                }
+
+                continue;
+            }
+
+            segments.add(segment);
+        }
+
+        return segments;
+    }
+
+    /** 代表一个路径段。 */
+    static class Node {
+        private Map<String, Node> children;
+        private Set<String>       lowerCaseNames;
+        private boolean           expanded;
+
+        /** 是否被展开过。未被展开的结点仅仅是已展开文件的父目录。 */
+        public boolean isExpanded() {
+            return expanded;
+        }
+
+        public Node getChild(String name) {
+            return children == null ? null : children.get(name);
+        }
+
+        /** 是否存在名称相同，但大小写不同的子结点。不是线程安全的，每个结点只应由一个线程查询。 */
+        public boolean hasChildIgnoreCase(String name) {
+            if (children == null || children.containsKey(name)) {
+                return false;
+            }
+
+            if (lowerCaseNames == null) {
+                lowerCaseNames = new HashSet<String>();
+
+                for (String childName : children.keySet()) {
+                    lowerCaseNames.add(childName.toLowerCase(Locale.ENGLISH));
+                }
+            }
+
+            return lowerCaseNames.contains(name.toLowerCase(Locale.ENGLISH));
+        }
+
+        private Node getOrCreateChild(String name) {
+            if (children == null) {
+                children = new HashMap<String, Node>();
+            }
+
+            Node child = children.get(name);
+
+            if (child == null) {
+                child = new Node();
+                children.put(name, child);
+            }
+
+            return child;
+        }
+    }
+}
@@ -27,10 +27,24 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import com.alibaba.antx.util.FileObject;
@@ -51,9 +65,15 @@ public class Expander {
     private boolean expandEjbjar       = false;
     private boolean overwrite          = false;
     private boolean keepRedundantFiles = false;
-    private File srcfile;
-    private File destdir;
-    private Set  expandedFiles;
+    private boolean listRedundantFiles = false;
+    private int     threads            = Runtime.getRuntime().availableProcessors();
+    private File             srcfile;
+    private File             destdir;
+    private ExpandedFileTree expandedFiles;
+    private AtomicInteger filesWritten;
+    private AtomicInteger filesSkipped;
+    private AtomicInteger filesDeleted;
+    private AtomicLong    bytesWritten;
 
     public Expander(ExpanderLogger log) {
         this.log = log;
@@ -79,6 +99,14 @@ public class Expander {
         return keepRedundantFiles;
     }
 
+    public boolean isListRedundantFiles() {
+        return listRedundantFiles;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
     public File getSourceFile() {
         return srcfile;
     }
@@ -129,6 +157,24 @@ public class Expander {
         this.keepRedundantFiles = keepRedundantFiles;
     }
 
+    /**
+     * 设置是否只列出多余的文件。
+     *
+     * @param listRedundantFiles 如果目标目录中有多余的文件，是否只列出而不删除
+     */
+    public void setListRedundantFiles(boolean listRedundantFiles) {
+        this.listRedundantFiles = listRedundantFiles;
+    }
+
+    /**
+     * 设置并行展开的线程数。
+     *
+     * @param threads 线程数，如果小于等于1，则在当前线程中逐个展开
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     private void init() {
         // srcfile
         if (srcfile == null) {
@@ -174,17 +220,38 @@ public class Expander {
 
         log.info("Expanding: " + srcfile + "\n       To: " + destdir.getAbsolutePath());
 
-        // 清除文件列表
-        expandedFiles = new HashSet();
+        // 清除文件列表和统计
+        expandedFiles = new ExpandedFileTree(destdir);
+        filesWritten = new AtomicInteger();
+        filesSkipped = new AtomicInteger();
+        filesDeleted = new AtomicInteger();
+        bytesWritten = new AtomicLong();
+
+        long startTime = System.currentTimeMillis();
 
         // 开始展开
         InputStream istream = null;
 
         try {
-            istream = new BufferedInputStream(new FileInputStream(srcfile), 8192);
-            getExpanderHandler(srcfile.toURI().toURL()).expand(istream, destdir);
+            ExpanderHandler handler = getExpanderHandler(srcfile.toURI().toURL());
+            ZipFile zip = null;
+
+            try {
+                zip = new ZipFile(srcfile);
+            } catch (ZipException e) {
+                log.debug("  " + e.getMessage() + " - expanding as a stream");
+            }
+
+            if (zip != null) {
+                handler.expand(zip, destdir);
+            } else {
+                istream = new BufferedInputStream(new FileInputStream(srcfile), 8192);
+                handler.expand(istream, destdir);
+            }
+
             removeRedundantFiles(destdir);
 
+            logStatistics(System.currentTimeMillis() - startTime);
             log.info("done.");
         } catch (IOException e) {
             throw new ExpanderException(e);
@@ -200,15 +267,30 @@ public class Expander {
         }
     }
 
+    private void logStatistics(long duration) {
+        long kbytes = bytesWritten.get() / 1024;
+        StringBuilder buf = new StringBuilder();
+
+        buf.append("Written: ").append(filesWritten.get()).append(" files (").append(kbytes).append(" KB)");
+        buf.append(", skipped: ").append(filesSkipped.get());
+        buf.append(listRedundantFiles ? ", redundant: " : ", deleted: ").append(filesDeleted.get());
+
+        if (duration > 0) {
+            buf.append(", ").append(kbytes * 1000 / duration).append(" KB/s");
+        }
+
+        log.info(buf.toString());
+    }
+
     /**
      * 删除多余的文件。
+     * <p>
+     * 先并行地扫描目录，按展开时记录的相对路径判断文件是否多余，不必取得每个文件的canonical路径，然后按深度优先的顺序删除。
+     * 如果目录中有符号链接，或者文件名和zip中的项只有大小写的区别，则退回到逐个比较canonical路径的方式，以确保结果相同。
+     * </p>
      *
-     * @param todir     展开到此目录
-     * @param zipStream 压缩流
-     * @param zipEntry  zip结点
-     * @param url       递归展开的url前缀
-     * @param output    XML输出
-     * @throws IOException 读写文件失败，或Zip格式错误
+     * @param fileOrDir 要检查的文件或目录
+     * @throws IOException 读写文件失败
      */
     protected void removeRedundantFiles(File fileOrDir) throws IOException {
         if (isKeepRedundantFiles()) {
@@ -219,27 +301,116 @@ public class Expander {
             return;
         }
 
-        // 如果是文件，并且在expandedFiles中不存在该文件，则删除之
-        if (!fileOrDir.isDirectory()) {
-            if (!expandedFiles.contains(fileOrDir.getCanonicalPath())) {
-                log.info("- " + getPathRelativeToDestdir(fileOrDir) + " - "
-                         + (fileOrDir.delete() ? "deleted" : "can't delete"));
+        File parent = fileOrDir.getParentFile();
+        ExecutorService executor = createExecutor();
+        RedundantFileScanner scanner = new RedundantFileScanner(executor);
+        List<RedundantFile> redundantFiles;
+
+        try {
+            redundantFiles = scanner.scan(fileOrDir, expandedFiles.getNode(fileOrDir),
+                                          parent == null ? "" : parent.getCanonicalPath());
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
             }
+        }
 
+        if (scanner.isAliased()) {
+            removeRedundantFiles(fileOrDir, expandedFiles.getCanonicalPaths());
             return;
         }
 
+        for (RedundantFile redundantFile : redundantFiles) {
+            if (redundantFile.directory) {
+                removeRedundantDirectory(redundantFile.file, redundantFile.empty);
+            } else {
+                removeRedundantFile(redundantFile.file);
+            }
+        }
+    }
+
+    /**
+     * 逐个比较canonical路径，深度优先地删除多余的文件。
+     *
+     * @return 如果文件已被删除，则返回<code>true</code>
+     */
+    private boolean removeRedundantFiles(File fileOrDir, Set<String> canonicalPaths) throws IOException {
+        if (!fileOrDir.exists()) {
+            return false;
+        }
+
+        boolean expanded = canonicalPaths.contains(fileOrDir.getCanonicalPath());
+
+        // 如果是文件，并且在expandedFiles中不存在该文件，则删除之
+        if (!fileOrDir.isDirectory()) {
+            return !expanded && removeRedundantFile(fileOrDir);
+        }
+
         // 深度优先地删除目录中的文件和子目录
         File[] files = fileOrDir.listFiles();
+        boolean empty = true;
 
-        for (File file : files) {
-            removeRedundantFiles(file);
+        if (files != null) {
+            for (File file : files) {
+                empty &= removeRedundantFiles(file, canonicalPaths);
+            }
         }
 
         // 如果目录为空，并且在expandedFiles中不存在该目录，则删除目录本身
-        if (!expandedFiles.contains(fileOrDir.getCanonicalPath()) && fileOrDir.delete()) {
-            log.info("- " + getPathRelativeToDestdir(fileOrDir) + " - success");
+        return !expanded && removeRedundantDirectory(fileOrDir, empty);
+    }
+
+    private boolean removeRedundantFile(File file) {
+        if (listRedundantFiles) {
+            filesDeleted.incrementAndGet();
+            log.info("- " + getPathRelativeToDestdir(file) + " - redundant");
+            return true;
+        }
+
+        boolean deleted = file.delete();
+
+        if (deleted) {
+            filesDeleted.incrementAndGet();
         }
+
+        log.info("- " + getPathRelativeToDestdir(file) + " - " + (deleted ? "deleted" : "can't delete"));
+
+        return deleted;
+    }
+
+    /** 删除空目录，如果只列出多余的文件，则列出删除文件后将变为空的目录。 */
+    private boolean removeRedundantDirectory(File dir, boolean empty) {
+        if (listRedundantFiles) {
+            if (empty) {
+                log.info("- " + getPathRelativeToDestdir(dir) + " - redundant");
+            }
+
+            return empty;
+        }
+
+        if (dir.delete()) {
+            log.info("- " + getPathRelativeToDestdir(dir) + " - success");
+            return true;
+        }
+
+        return false;
+    }
+
+    /** 创建线程池，如果线程数小于等于1，则返回<code>null</code>。 */
+    private ExecutorService createExecutor() {
+        if (threads <= 1) {
+            return null;
+        }
+
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "autoexpand-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
 
     private ExpanderHandler getExpanderHandler(URL url) {
@@ -260,6 +431,36 @@ public class Expander {
 
     /** 处理不同类型的jar包的接口。 */
     private abstract class ExpanderHandler {
+        /**
+         * 展开ear文件到指定目录。
+         * <p>
+         * 通过zip文件的目录随机访问各项，并在线程池中并行展开。
+         * </p>
+         *
+         * @param zip   zip文件，展开后被关闭
+         * @param todir 展开目录
+         * @throws IOException 读写文件失败，或Zip格式错误
+         */
+        protected void expand(ZipFile zip, File todir) throws IOException {
+            ExecutorService executor = createExecutor();
+            Extraction extraction = new Extraction(executor);
+            Archive archive = new Archive(zip, null);
+
+            try {
+                extractAll(archive, todir, null, extraction);
+            } finally {
+                archive.release();
+
+                try {
+                    extraction.await();
+                } finally {
+                    if (executor != null) {
+                        executor.shutdown();
+                    }
+                }
+            }
+        }
+
         /**
          * 展开ear文件到指定目录
          *
@@ -288,6 +489,106 @@ public class Expander {
             }
         }
 
+        /** 展开zip文件中的所有项，目录被立即创建，文件则交给线程池展开。 */
+        private void extractAll(final Archive archive, final File todir, final String url, final Extraction extraction)
+                throws IOException {
+            for (Enumeration e = archive.getZipFile().entries(); e.hasMoreElements(); ) {
+                final ZipEntry zipEntry = (ZipEntry) e.nextElement();
+
+                if (zipEntry.isDirectory()) {
+                    extractFile(todir, null, zipEntry, url);
+                    continue;
+                }
+
+                extraction.submit(new ExtractTask() {
+                    public void run() throws IOException {
+                        extractEntry(archive, todir, zipEntry, url, extraction);
+                    }
+                }, archive);
+            }
+        }
+
+        /** 从随机访问的zip文件中展开一个文件。 */
+        private void extractEntry(Archive archive, File todir, ZipEntry zipEntry, String url, Extraction extraction)
+                throws IOException {
+            String entryName = zipEntry.getName();
+            File targetFile = FileUtil.getFile(todir, entryName);
+            boolean expandFile = url == null && needToExpand(entryName);
+
+            if (!expandFile && isUpToDate(targetFile, zipEntry)) {
+                return;
+            }
+
+            targetFile.getParentFile().mkdirs();
+
+            InputStream istream = archive.getZipFile().getInputStream(zipEntry);
+
+            try {
+                if (expandFile) {
+                    createArchiveDirectory(targetFile);
+                    extractArchive(istream, targetFile, entryName, extraction);
+                } else {
+                    writeFile(targetFile, istream);
+                }
+            } finally {
+                try {
+                    istream.close();
+                } catch (IOException e) {
+                }
+            }
+
+            targetFile.setLastModified(zipEntry.getTime());
+        }
+
+        /** 将嵌套的war或rar复制到临时文件中，以便随机访问并并行展开其中的项。 */
+        private void extractArchive(InputStream istream, File todir, String url, Extraction extraction)
+                throws IOException {
+            File tempFile = File.createTempFile("autoexpand-", ".zip");
+            ZipFile zip;
+
+            try {
+                OutputStream ostream = new FileOutputStream(tempFile);
+
+                try {
+                    copy(istream, ostream);
+                } finally {
+                    ostream.close();
+                }
+
+                zip = new ZipFile(tempFile);
+            } catch (ZipException e) {
+                // zip文件的目录不完整，改用流的方式展开
+                log.debug("  " + e.getMessage() + " - expanding as a stream");
+
+                InputStream tempStream = new BufferedInputStream(new FileInputStream(tempFile), 8192);
+
+                try {
+                    ZipInputStream zis = new ZipInputStream(tempStream);
+                    ZipEntry subEntry = null;
+
+                    while ((subEntry = zis.getNextEntry()) != null) {
+                        extractFile(todir, zis, subEntry, url);
+                    }
+                } finally {
+                    tempStream.close();
+                    tempFile.delete();
+                }
+
+                return;
+            } catch (IOException e) {
+                tempFile.delete();
+                throw e;
+            }
+
+            Archive archive = new Archive(zip, tempFile);
+
+            try {
+                extractAll(archive, todir, url, extraction);
+            } finally {
+                archive.release();
+            }
+        }
+
         /**
          * 展开一个文件。
          *
@@ -300,7 +601,6 @@ public class Expander {
         protected void extractFile(File todir, InputStream zipStream, ZipEntry zipEntry, String url)
                 throws IOException {
             String entryName = zipEntry.getName();
-            Date entryDate = new Date(zipEntry.getTime());
             boolean isDirectory = zipEntry.isDirectory();
             File targetFile = FileUtil.getFile(todir, entryName);
             boolean expandFile = false;
@@ -310,14 +610,12 @@ public class Expander {
                 expandFile = needToExpand(zipEntry.getName());
             }
 
-            if (!expandFile && !overwrite && targetFile.exists() && targetFile.lastModified() >= entryDate.getTime()) {
-                log.debug(". " + getPathRelativeToDestdir(targetFile) + " - up-to-date");
-                expandedFiles.add(targetFile.getCanonicalPath());
+            if (!expandFile && isUpToDate(targetFile, zipEntry)) {
                 return;
             }
 
             if (isDirectory) {
-                expandedFiles.add(targetFile.getCanonicalPath());
+                expandedFiles.add(targetFile);
                 targetFile.mkdirs();
             } else {
                 File dir = targetFile.getParentFile();
@@ -326,17 +624,7 @@ public class Expander {
 
                 // 如果是war或rar文件，则展开到同名的目录中
                 if (expandFile) {
-                    log.info("X " + getPathRelativeToDestdir(targetFile));
-
-                    if (targetFile.exists() && !targetFile.isDirectory()) {
-                        targetFile.delete();
-                    }
-
-                    targetFile.mkdirs();
-
-                    if (!targetFile.exists() || !targetFile.isDirectory()) {
-                        throw new ExpanderException("could not create directory: " + targetFile);
-                    }
+                    createArchiveDirectory(targetFile);
 
                     ZipInputStream zis = new ZipInputStream(zipStream);
                     ZipEntry subEntry = null;
@@ -345,40 +633,127 @@ public class Expander {
                         extractFile(targetFile, zis, subEntry, entryName);
                     }
                 } else {
-                    log.debug("+ " + getPathRelativeToDestdir(targetFile));
+                    writeFile(targetFile, zipStream);
+                }
+            }
 
-                    if (targetFile.exists() && targetFile.isDirectory()) {
-                        FileUtil.deleteDirectory(targetFile);
-                    }
+            targetFile.setLastModified(zipEntry.getTime());
+        }
 
-                    if (targetFile.exists() && !targetFile.isFile()) {
-                        throw new ExpanderException("could not create file: " + targetFile + ", it's a directory");
-                    }
+        /**
+         * 判断目标文件是否不需要更新：目标文件比zip项新，或者目标文件的大小和CRC-32与zip项相同。
+         * <p>
+         * 后者使得重新打包但内容未变的文件不会被重写。
+         * </p>
+         */
+        private boolean isUpToDate(File targetFile, ZipEntry zipEntry) throws IOException {
+            long time = zipEntry.getTime();
+            String status;
+
+            if (!overwrite && targetFile.exists() && targetFile.lastModified() >= time) {
+                status = "up-to-date";
+            } else if (!zipEntry.isDirectory() && isSameContent(targetFile, zipEntry)) {
+                status = "unchanged";
+                targetFile.setLastModified(time);
+            } else {
+                return false;
+            }
 
-                    byte[] buffer = new byte[8192];
-                    int length = 0;
-                    OutputStream ostream = null;
+            log.debug(". " + getPathRelativeToDestdir(targetFile) + " - " + status);
+            expandedFiles.add(targetFile);
 
-                    try {
-                        expandedFiles.add(targetFile.getCanonicalPath());
+            if (!zipEntry.isDirectory()) {
+                filesSkipped.incrementAndGet();
+            }
 
-                        ostream = new BufferedOutputStream(new FileOutputStream(targetFile), 8192);
+            return true;
+        }
 
-                        while ((length = zipStream.read(buffer)) >= 0) {
-                            ostream.write(buffer, 0, length);
-                        }
-                    } finally {
-                        if (ostream != null) {
-                            try {
-                                ostream.close();
-                            } catch (IOException e) {
-                            }
-                        }
+        private boolean isSameContent(File targetFile, ZipEntry zipEntry) throws IOException {
+            long size = zipEntry.getSize();
+            long crc = zipEntry.getCrc();
+
+            // 以流的方式读取时，某些项的大小和CRC-32是未知的
+            if (size < 0 || crc < 0 || !targetFile.isFile() || targetFile.length() != size) {
+                return false;
+            }
+
+            CRC32 targetCrc = new CRC32();
+            InputStream istream = new FileInputStream(targetFile);
+
+            try {
+                byte[] buffer = new byte[8192];
+                int length = 0;
+
+                while ((length = istream.read(buffer)) >= 0) {
+                    targetCrc.update(buffer, 0, length);
+                }
+            } finally {
+                try {
+                    istream.close();
+                } catch (IOException e) {
+                }
+            }
+
+            return targetCrc.getValue() == crc;
+        }
+
+        /** 创建和war或rar同名的目录。 */
+        private void createArchiveDirectory(File targetFile) {
+            log.info("X " + getPathRelativeToDestdir(targetFile));
+
+            if (targetFile.exists() && !targetFile.isDirectory()) {
+                targetFile.delete();
+            }
+
+            targetFile.mkdirs();
+
+            if (!targetFile.exists() || !targetFile.isDirectory()) {
+                throw new ExpanderException("could not create directory: " + targetFile);
+            }
+        }
+
+        private void writeFile(File targetFile, InputStream istream) throws IOException {
+            log.debug("+ " + getPathRelativeToDestdir(targetFile));
+
+            if (targetFile.exists() && targetFile.isDirectory()) {
+                FileUtil.deleteDirectory(targetFile);
+            }
+
+            if (targetFile.exists() && !targetFile.isFile()) {
+                throw new ExpanderException("could not create file: " + targetFile + ", it's a directory");
+            }
+
+            OutputStream ostream = null;
+
+            try {
+                expandedFiles.add(targetFile);
+
+                ostream = new BufferedOutputStream(new FileOutputStream(targetFile), 8192);
+
+                bytesWritten.addAndGet(copy(istream, ostream));
+                filesWritten.incrementAndGet();
+            } finally {
+                if (ostream != null) {
+                    try {
+                        ostream.close();
+                    } catch (IOException e) {
                     }
                 }
             }
+        }
+
+        private long copy(InputStream istream, OutputStream ostream) throws IOException {
+            byte[] buffer = new byte[8192];
+            int length = 0;
+            long count = 0;
 
-            targetFile.setLastModified(entryDate.getTime());
+            while ((length = istream.read(buffer)) >= 0) {
+                ostream.write(buffer, 0, length);
+                count += length;
+            }
+
+            return count;
         }
 
         /** 判断是否需要进一步展开。 */
@@ -395,6 +770,308 @@ public class Expander {
         }
     }
 
+    /** 一个多余的文件或目录。 */
+    private static class RedundantFile {
+        private final File    file;
+        private final boolean directory;
+        private final boolean empty;
+
+        public RedundantFile(File file, boolean directory, boolean empty) {
+            this.file = file;
+            this.directory = directory;
+            this.empty = empty;
+        }
+    }
+
+    /**
+     * 查找目标目录中多余的文件。
+     * <p>
+     * 每个子目录在线程池中被扫描，父目录在等待子目录时，会亲自扫描那些尚未被线程池取走的子目录，因此不会因线程池耗尽而死锁。
+     * </p>
+     */
+    private static class RedundantFileScanner {
+        private final    ExecutorService executor;
+        private volatile boolean         aliased;
+
+        public RedundantFileScanner(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        /** 是否遇到了符号链接或大小写不同的文件名，此时扫描的结果不可靠。 */
+        public boolean isAliased() {
+            return aliased;
+        }
+
+        /**
+         * 扫描文件或目录，按深度优先的顺序返回多余的文件和目录，目录排在其内容之后。
+         *
+         * @param file            要扫描的文件或目录
+         * @param node            文件对应的结点，如果为<code>null</code>，则表示文件未被展开
+         * @param canonicalParent 父目录的canonical路径
+         */
+        public List<RedundantFile> scan(File file, ExpandedFileTree.Node node, String canonicalParent)
+                throws IOException {
+            if (file.isDirectory()) {
+                return scanDirectory(file, node, canonicalParent);
+            }
+
+            List<RedundantFile> redundantFiles = new ArrayList<RedundantFile>();
+
+            if (node == null || !node.isExpanded()) {
+                checkAlias(file, canonicalParent);
+                redundantFiles.add(new RedundantFile(file, false, true));
+            }
+
+            return redundantFiles;
+        }
+
+        private List<RedundantFile> scanDirectory(File dir, ExpandedFileTree.Node node, String canonicalParent)
+                throws IOException {
+            String canonicalDir = dir.getCanonicalPath();
+
+            if (!canonicalDir.equals(new File(canonicalParent, dir.getName()).getPath())) {
+                aliased = true;
+            }
+
+            String[] names = dir.list();
+
+            if (names == null) {
+                names = new String[0];
+            }
+
+            File[] children = new File[names.length];
+            ExpandedFileTree.Node[] childNodes = new ExpandedFileTree.Node[names.length];
+
+            @SuppressWarnings("unchecked")
+            FutureTask<List<RedundantFile>>[] tasks = new FutureTask[names.length];
+
+            for (int i = 0; i < names.length; i++) {
+                children[i] = new File(dir, names[i]);
+                childNodes[i] = node == null ? null : node.getChild(names[i]);
+
+                // 在大小写不敏感的文件系统中，文件名可能和zip中的项只有大小写的区别
+                if (childNodes[i] == null && node != null && node.hasChildIgnoreCase(names[i])) {
+                    aliased = true;
+                }
+
+                if (children[i].isDirectory()) {
+                    final File child = children[i];
+                    final ExpandedFileTree.Node childNode = childNodes[i];
+                    final String canonicalChildParent = canonicalDir;
+
+                    tasks[i] = new FutureTask<List<RedundantFile>>(new Callable<List<RedundantFile>>() {
+                        public List<RedundantFile> call() throws IOException {
+                            return scanDirectory(child, childNode, canonicalChildParent);
+                        }
+                    });
+
+                    if (executor != null) {
+                        executor.execute(tasks[i]);
+                    }
+                }
+            }
+
+            List<RedundantFile> redundantFiles = new ArrayList<RedundantFile>();
+            int remaining = names.length;
+
+            for (int i = 0; i < names.length; i++) {
+                if (tasks[i] == null) {
+                    if (childNodes[i] == null || !childNodes[i].isExpanded()) {
+                        checkAlias(children[i], canonicalDir);
+                        redundantFiles.add(new RedundantFile(children[i], false, true));
+                        remaining--;
+                    }
+
+                    continue;
+                }
+
+                // 如果该任务仍未开始，则在当前线程中执行，否则什么也不做。
+                tasks[i].run();
+
+                List<RedundantFile> childRedundantFiles = get(tasks[i]);
+
+                if (!childRedundantFiles.isEmpty()) {
+                    RedundantFile last = childRedundantFiles.get(childRedundantFiles.size() - 1);
+
+                    if (last.file == children[i] && last.empty) {
+                        remaining--;
+                    }
+
+                    redundantFiles.addAll(childRedundantFiles);
+                }
+            }
+
+            if (node == null || !node.isExpanded()) {
+                redundantFiles.add(new RedundantFile(dir, true, remaining == 0));
+            }
+
+            return redundantFiles;
+        }
+
+        /** 多余的文件可能是某个已展开的文件的符号链接。 */
+        private void checkAlias(File file, String canonicalParent) throws IOException {
+            if (!aliased && !file.getCanonicalPath().equals(new File(canonicalParent, file.getName()).getPath())) {
+                aliased = true;
+            }
+        }
+
+        private List<RedundantFile> get(FutureTask<List<RedundantFile>> task) throws IOException {
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ExpanderException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else {
+                    throw new ExpanderException(cause);
+                }
+            }
+        }
+    }
+
+    /** 展开一个zip项的任务。 */
+    private interface ExtractTask {
+        void run() throws IOException;
+    }
+
+    /** 随机访问的zip文件，当所有的项都展开以后被关闭，临时文件也被删除。 */
+    private static class Archive {
+        private final ZipFile zip;
+        private final File    tempFile;
+        private       int     references = 1;
+
+        public Archive(ZipFile zip, File tempFile) {
+            this.zip = zip;
+            this.tempFile = tempFile;
+        }
+
+        public ZipFile getZipFile() {
+            return zip;
+        }
+
+        public synchronized void retain() {
+            references++;
+        }
+
+        public void release() {
+            synchronized (this) {
+                if (--references > 0) {
+                    return;
+                }
+            }
+
+            try {
+                zip.close();
+            } catch (IOException e) {
+            }
+
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * 跟踪并行展开的任务。
+     * <p>
+     * 任务本身不等待其它任务，嵌套的war或rar中的项也被提交到同一个线程池，因此不会因线程池耗尽而死锁。
+     * 如果没有线程池，则任务在当前线程中立即执行。
+     * </p>
+     */
+    private static class Extraction {
+        private final ExecutorService executor;
+        private       int             pending;
+        private       Throwable       failure;
+
+        public Extraction(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        public void submit(final ExtractTask task, final Archive archive) throws IOException {
+            if (executor == null) {
+                task.run();
+                return;
+            }
+
+            synchronized (this) {
+                if (failure != null) {
+                    return;
+                }
+
+                pending++;
+            }
+
+            archive.retain();
+
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            if (!isFailed()) {
+                                task.run();
+                            }
+                        } catch (Throwable e) {
+                            fail(e);
+                        } finally {
+                            archive.release();
+                            done();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                archive.release();
+                done();
+                throw e;
+            }
+        }
+
+        /** 等待所有任务结束，并抛出第一个错误。 */
+        public synchronized void await() throws IOException {
+            while (pending > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ExpanderException(e);
+                }
+            }
+
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw new ExpanderException(failure);
+            }
+        }
+
+        private synchronized boolean isFailed() {
+            return failure != null;
+        }
+
+        private synchronized void fail(Throwable e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+
+        private synchronized void done() {
+            if (--pending == 0) {
+                notifyAll();
+            }
+        }
+    }
+
     private class WarExpanderHandler extends ExpanderHandler {
     }
 
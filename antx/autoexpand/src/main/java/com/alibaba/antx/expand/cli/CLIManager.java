@@ -40,6 +40,8 @@ public class CLIManager {
     public static final String OPT_EXPAND_EJB_JAR       = "e";
     public static final String OPT_OVERWRITE            = "o";
     public static final String OPT_KEEP_REDUNDANT_FILES = "k";
+    public static final String OPT_LIST_REDUNDANT_FILES = "l";
+    public static final String OPT_THREADS              = "t";
     private Options options;
 
     public CLIManager() {
@@ -67,6 +69,12 @@ public class CLIManager {
 
         options.addOption(builder.withLongOpt("keep-redundant-files").hasOptionalArg()
                                  .withDescription("如果目标目录中有多余的文件，是否保持而不删除，默认为no").create(OPT_KEEP_REDUNDANT_FILES));
+
+        options.addOption(builder.withLongOpt("list-redundant-files").hasOptionalArg()
+                                 .withDescription("如果目标目录中有多余的文件，是否只列出而不删除，默认为no").create(OPT_LIST_REDUNDANT_FILES));
+
+        options.addOption(builder.withLongOpt("threads").hasArg().withDescription("并行展开的线程数，默认为CPU数")
+                                 .create(OPT_THREADS));
     }
 
     public CommandLine parse(String[] args) {
@@ -124,6 +124,14 @@ public class Main {
             runtimeImpl.getExpander().setKeepRedundantFiles(getBooleanValue(CLIManager.OPT_KEEP_REDUNDANT_FILES));
         }
 
+        if (cli.hasOption(CLIManager.OPT_LIST_REDUNDANT_FILES)) {
+            runtimeImpl.getExpander().setListRedundantFiles(getBooleanValue(CLIManager.OPT_LIST_REDUNDANT_FILES));
+        }
+
+        if (cli.hasOption(CLIManager.OPT_THREADS)) {
+            runtimeImpl.getExpander().setThreads(getIntValue(CLIManager.OPT_THREADS));
+        }
+
         args = cli.getArgs();
 
         if (args.length >= 1) {
@@ -144,6 +152,16 @@ public class Main {
         return 0;
     }
 
+    private static int getIntValue(String key) {
+        String value = cli.getOptionValue(key);
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ExpanderException("invalid value of -" + key + ": " + value + ", should be a number");
+        }
+    }
+
     private static boolean getBooleanValue(String key) {
         String value = cli.getOptionValue(key);
 
@@ -219,14 +219,14 @@ public class FileUtil {
             public boolean followUp() {
                 String name = getScanner().getPath();
 
-                return SelectorUtil.matchPathPrefix(name, patterns.getIncludes(), patterns.getExcludes());
+                return patterns.matchPathPrefix(name);
             }
 
             @Override
             public void file() throws ScannerException {
                 String name = getScanner().getPath();
 
-                if (SelectorUtil.matchPath(name, patterns.getIncludes(), patterns.getExcludes())) {
+                if (patterns.matchPath(name)) {
                     files.add(name);
                 }
             }
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 将一组ant风格的路径pattern编译成按路径段组织的树，用来匹配大量的路径。
+ * <p>
+ * 匹配结果和逐个调用{@link SelectorUtil#matchPath(String, String, boolean)}相同，但每个pattern只被分解一次，
+ * 每个路径也只被分解一次，且不含通配符的路径段通过hash表查找。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+public class PathPatternMatcher {
+    private static final char FILE_SEP_CHAR = '/';
+    private final boolean caseSensitive;
+    private final Node    relativeRoot = new Node(null);
+    private final Node    absoluteRoot = new Node(null);
+    private final boolean empty;
+
+    public PathPatternMatcher(String[] patterns) {
+        this(patterns, true);
+    }
+
+    public PathPatternMatcher(String[] patterns, boolean caseSensitive) {
+        this.caseSensitive = caseSensitive;
+        this.empty = patterns == null || patterns.length == 0;
+
+        if (patterns != null) {
+            for (String pattern : patterns) {
+                addPattern(pattern);
+            }
+        }
+    }
+
+    private void addPattern(String pattern) {
+        Node node = pattern.startsWith("/") ? absoluteRoot : relativeRoot;
+
+        for (String segment : tokenize(pattern)) {
+            node = node.getChild(segment, caseSensitive);
+        }
+
+        node.terminal = true;
+    }
+
+    /** 是否没有任何pattern。 */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * 查看路径是否匹配任意一个pattern，相当于<code>SelectorUtil.matchPath(pattern, path)</code>。
+     *
+     * @param path 要匹配的路径
+     * @return 如果匹配任意一个pattern，则返回<code>true</code>
+     */
+    public boolean matchPath(String path) {
+        List<Node> states = new ArrayList<Node>();
+        List<Node> nextStates = new ArrayList<Node>();
+
+        addState(states, path.startsWith("/") ? absoluteRoot : relativeRoot);
+
+        int len = path.length();
+        int start = 0;
+
+        for (int pos = 0; pos <= len && !states.isEmpty(); pos++) {
+            if (pos < len && path.charAt(pos) != FILE_SEP_CHAR) {
+                continue;
+            }
+
+            if (pos != start) {
+                String segment = path.substring(start, pos);
+
+                nextStates.clear();
+
+                for (Node state : states) {
+                    state.step(segment, caseSensitive, nextStates);
+                }
+
+                List<Node> tmp = states;
+
+                states = nextStates;
+                nextStates = tmp;
+            }
+
+            start = pos + 1;
+        }
+
+        for (Node state : states) {
+            if (state.terminal) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * 查看路径下的文件是否可能匹配某个pattern，用来决定是否需要跟进目录。
+     * <p>
+     * 对于同一个pattern，相当于
+     * <code>SelectorUtil.matchPatternStart(pattern, path) &amp;&amp; isDeeper(pattern, path)</code>
+     * ，即：路径匹配pattern中第一个<code>**</code>之前的部分，并且pattern比路径更深。
+     * </p>
+     *
+     * @param path 要匹配的路径
+     * @return 如果路径下的文件可能匹配pattern，则返回<code>true</code>
+     */
+    public boolean matchPathPrefix(String path) {
+        List<Node> states = new ArrayList<Node>();
+        List<Node> nextStates = new ArrayList<Node>();
+
+        states.add(path.startsWith("/") ? absoluteRoot : relativeRoot);
+
+        int len = path.length();
+        int start = 0;
+
+        for (int pos = 0; pos <= len; pos++) {
+            if (pos < len && path.charAt(pos) != FILE_SEP_CHAR) {
+                continue;
+            }
+
+            if (pos != start) {
+                String segment = path.substring(start, pos);
+
+                nextStates.clear();
+
+                for (Node state : states) {
+                    // pattern在此处为**，之后的部分均可能匹配
+                    if (state.doubleStar != null) {
+                        return true;
+                    }
+
+                    state.stepPrefix(segment, caseSensitive, nextStates);
+                }
+
+                if (nextStates.isEmpty()) {
+                    return false;
+                }
+
+                List<Node> tmp = states;
+
+                states = nextStates;
+                nextStates = tmp;
+            }
+
+            start = pos + 1;
+        }
+
+        // 路径已用完，只要pattern还有更深的部分即可
+        for (Node state : states) {
+            if (state.hasChildren()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /** 加入状态，以及经由<code>**</code>不消耗路径段即可到达的状态。 */
+    private static void addState(List<Node> states, Node node) {
+        if (states.contains(node)) {
+            return;
+        }
+
+        states.add(node);
+
+        if (node.doubleStar != null) {
+            addState(states, node.doubleStar);
+        }
+    }
+
+    private static List<String> tokenize(String path) {
+        List<String> segments = new ArrayList<String>();
+        int len = path.length();
+        int start = 0;
+
+        for (int pos = 0; pos <= len; pos++) {
+            if (pos == len || path.charAt(pos) == FILE_SEP_CHAR) {
+                if (pos != start) {
+                    segments.add(path.substring(start, pos));
+                }
+
+                start = pos + 1;
+            }
+        }
+
+        return segments;
+    }
+
+    private static boolean hasWildcards(String segment) {
+        return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0;
+    }
+
+    /** 代表pattern树中的一个节点，即一个路径段。 */
+    private static class Node {
+        private final String            segment;
+        private       Map<String, Node> literals;
+        private       List<Node>        wildcards;
+        private       Node              doubleStar;
+        private       boolean           terminal;
+
+        public Node(String segment) {
+            this.segment = segment;
+        }
+
+        public boolean isDoubleStar() {
+            return "**".equals(segment);
+        }
+
+        public boolean hasChildren() {
+            return literals != null || wildcards != null || doubleStar != null;
+        }
+
+        public Node getChild(String segment, boolean caseSensitive) {
+            Node child;
+
+            if ("**".equals(segment)) {
+                if (doubleStar == null) {
+                    doubleStar = new Node(segment);
+                }
+
+                child = doubleStar;
+            } else if (caseSensitive && !hasWildcards(segment)) {
+                if (literals == null) {
+                    literals = new HashMap<String, Node>();
+                }
+
+                child = literals.get(segment);
+
+                if (child == null) {
+                    child = new Node(segment);
+                    literals.put(segment, child);
+                }
+            } else {
+                if (wildcards == null) {
+                    wildcards = new ArrayList<Node>();
+                }
+
+                child = null;
+
+                for (Node wildcard : wildcards) {
+                    if (wildcard.segment.equals(segment)) {
+                        child = wildcard;
+                        break;
+                    }
+                }
+
+                if (child == null) {
+                    child = new Node(segment);
+                    wildcards.add(child);
+                }
+            }
+
+            return child;
+        }
+
+        /** 消耗一个路径段，到达下一组状态。 */
+        public void step(String segment, boolean caseSensitive, List<Node> nextStates) {
+            // **可以匹配任意多个路径段
+            if (isDoubleStar()) {
+                addState(nextStates, this);
+            }
+
+            if (literals != null) {
+                Node child = literals.get(segment);
+
+                if (child != null) {
+                    addState(nextStates, child);
+                }
+            }
+
+            if (wildcards != null) {
+                for (Node wildcard : wildcards) {
+                    if (SelectorUtil.match(wildcard.segment, segment, caseSensitive)) {
+                        addState(nextStates, wildcard);
+                    }
+                }
+            }
+        }
+
+        /** 消耗一个路径段，但不越过<code>**</code>。 */
+        public void stepPrefix(String segment, boolean caseSensitive, List<Node> nextStates) {
+            if (literals != null) {
+                Node child = literals.get(segment);
+
+                if (child != null && !nextStates.contains(child)) {
+                    nextStates.add(child);
+                }
+            }
+
+            if (wildcards != null) {
+                for (Node wildcard : wildcards) {
+                    if (SelectorUtil.match(wildcard.segment, segment, caseSensitive) && !nextStates.contains(wildcard)) {
+                        nextStates.add(wildcard);
+                    }
+                }
+            }
+        }
+    }
+}
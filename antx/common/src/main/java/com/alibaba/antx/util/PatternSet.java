@@ -17,7 +17,10 @@
 
 package com.alibaba.antx.util;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -29,8 +32,13 @@ import com.alibaba.toolkit.util.collection.ArrayHashSet;
  * @author Michael Zhou
  */
 public class PatternSet {
-    private String[] includes;
-    private String[] excludes;
+    private String[]           includes;
+    private String[]           excludes;
+    private PathPatternMatcher includeMatcher;
+    private PathPatternMatcher excludeMatcher;
+    private PathPatternMatcher excludeDirMatcher;
+    private Set<String>        excludeNames;
+    private boolean            excludeAllDirs;
 
     public PatternSet() {
         this(new String[0], new String[0]);
@@ -47,6 +55,7 @@ public class PatternSet {
     public PatternSet(String[] includes, String[] excludes) {
         this.includes = normalizePatterns(includes);
         this.excludes = normalizePatterns(excludes);
+        compile();
     }
 
     public PatternSet(PatternSet patterns, PatternSet defaultPatterns) {
@@ -60,6 +69,27 @@ public class PatternSet {
 
         this.includes = patterns.includes;
         this.excludes = patterns.excludes;
+        compile();
+    }
+
+    /** 将includes、excludes编译成matcher，以便匹配大量的路径。 */
+    private void compile() {
+        List<String> excludeDirs = new ArrayList<String>();
+
+        excludeAllDirs = false;
+
+        for (String exclude : excludes) {
+            if (exclude.equals("**")) {
+                excludeAllDirs = true;
+            } else if (exclude.endsWith("**")) {
+                excludeDirs.add(exclude.substring(0, exclude.length() - 2));
+            }
+        }
+
+        includeMatcher = new PathPatternMatcher(includes);
+        excludeMatcher = new PathPatternMatcher(excludes);
+        excludeDirMatcher = new PathPatternMatcher(excludeDirs.toArray(new String[excludeDirs.size()]));
+        excludeNames = new HashSet<String>(Arrays.asList(excludes));
     }
 
     /** 将所有pattern规格化成：无/前缀/后缀，以/分隔。 */
@@ -115,6 +145,7 @@ public class PatternSet {
         }
 
         excludes = (String[]) excludeSet.toArray(new String[excludeSet.size()]);
+        compile();
 
         return this;
     }
@@ -134,6 +165,44 @@ public class PatternSet {
         return excludes;
     }
 
+    /**
+     * 查看指定名称是否符合patterns，相当于<code>SelectorUtil.matchPath(name, includes, excludes)</code>。
+     *
+     * @param name 要匹配的名称
+     * @return 如果符合patterns，则返回<code>true</code>
+     */
+    public boolean matchPath(String name) {
+        return (includeMatcher.isEmpty() || includeMatcher.matchPath(name)) && !excludeMatcher.matchPath(name);
+    }
+
+    /**
+     * 查看指定名称是否符合patterns的前缀，相当于<code>SelectorUtil.matchPathPrefix(name, includes, excludes)</code>。
+     *
+     * @param name 要匹配的名称
+     * @return 如果符合patterns，则返回<code>true</code>
+     */
+    public boolean matchPathPrefix(String name) {
+        boolean match = includeMatcher.isEmpty();
+
+        if (!match) {
+            match = includeMatcher.matchPathPrefix(name) && !excludeNames.contains(name + File.separator + "**");
+        }
+
+        if (match) {
+            if (excludeAllDirs) {
+                return false;
+            }
+
+            if (!name.endsWith("/")) {
+                name = name + "/";
+            }
+
+            match = !excludeDirMatcher.matchPath(name);
+        }
+
+        return match;
+    }
+
     /** 是否为空。 */
     public boolean isEmpty() {
         return includes.length == 0 && excludes.length == 0;
@@ -0,0 +1,463 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * 直接读取zip文件的central directory，从而可以随机访问其中的任一entry，并可将entry的压缩数据原样复制到另一个zip文件中，而无需解压和重新压缩。
+ * <p>
+ * 不支持ZIP64格式和分卷的zip文件，遇到这类文件时，构造函数将抛出<code>ZipException</code>，调用者应当改用<code>ZipInputStream</code>。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+public class RawZipFile {
+    static final int LOCSIG = 0x04034b50;
+    static final int EXTSIG = 0x08074b50;
+    static final int CENSIG = 0x02014b50;
+    static final int ENDSIG = 0x06054b50;
+    static final int LOCHDR = 30;
+    static final int CENHDR = 46;
+    static final int ENDHDR = 22;
+
+    private static final int ZIP64_LOCSIG  = 0x07064b50;
+    private static final int MAX_COMMENT   = 0xFFFF;
+    private static final int FLAG_DATADESC = 0x08;
+
+    private final File             file;
+    private final RandomAccessFile raf;
+    private final List<Entry>      entries;
+
+    public RawZipFile(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+
+        boolean success = false;
+
+        try {
+            this.entries = Collections.unmodifiableList(readCentralDirectory());
+            success = true;
+        } finally {
+            if (!success) {
+                close();
+            }
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** 按central directory中的顺序，取得所有entries。 */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /** 取得指定entry解压后的内容。 */
+    public InputStream getInputStream(Entry entry) throws IOException {
+        InputStream raw = new BoundedInputStream(getDataOffset(entry), entry.compressedSize);
+
+        switch (entry.method) {
+            case ZipEntry.STORED:
+                return raw;
+
+            case ZipEntry.DEFLATED:
+                return new InflaterInputStream(raw, new Inflater(true), 8192) {
+                    private boolean eof;
+
+                    @Override
+                    protected void fill() throws IOException {
+                        if (eof) {
+                            throw new EOFException("Unexpected end of ZLIB input stream");
+                        }
+
+                        len = in.read(buf, 0, buf.length);
+
+                        // nowrap模式的inflater需要在数据的末尾多读一个字节。
+                        if (len == -1) {
+                            buf[0] = 0;
+                            len = 1;
+                            eof = true;
+                        }
+
+                        inf.setInput(buf, 0, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            inf.end();
+                        }
+                    }
+                };
+
+            default:
+                throw new ZipException("Unsupported compression method " + entry.method + ": " + entry.name);
+        }
+    }
+
+    /**
+     * 将entry的local header、压缩数据和data descriptor原样写到输出流中。
+     *
+     * @return 写入的字节数
+     */
+    long copyRawEntry(Entry entry, OutputStream out) throws IOException {
+        long start = entry.localHeaderOffset;
+        long end = getDataOffset(entry) + entry.compressedSize;
+
+        if ((entry.flags & FLAG_DATADESC) != 0) {
+            // data descriptor可能有signature，也可能没有。
+            synchronized (raf) {
+                raf.seek(end);
+                end += readInt(raf) == EXTSIG ? 16 : 12;
+            }
+        }
+
+        InputStream in = new BoundedInputStream(start, end - start);
+        long length = end - start;
+
+        try {
+            StreamUtil.io(in, out, true, false);
+        } finally {
+            in.close();
+        }
+
+        return length;
+    }
+
+    private long getDataOffset(Entry entry) throws IOException {
+        if (entry.dataOffset < 0) {
+            synchronized (raf) {
+                raf.seek(entry.localHeaderOffset);
+
+                if (readInt(raf) != LOCSIG) {
+                    throw new ZipException("Invalid local header: " + entry.name);
+                }
+
+                raf.seek(entry.localHeaderOffset + 26);
+
+                int nameLength = readShort(raf);
+                int extraLength = readShort(raf);
+
+                entry.dataOffset = entry.localHeaderOffset + LOCHDR + nameLength + extraLength;
+            }
+        }
+
+        return entry.dataOffset;
+    }
+
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        long length = raf.length();
+        long endOffset = findEndOfCentralDirectory(length);
+
+        raf.seek(endOffset + 4);
+
+        int diskNumber = readShort(raf);
+        int cenDiskNumber = readShort(raf);
+        int diskEntries = readShort(raf);
+        int totalEntries = readShort(raf);
+        long cenSize = readInt(raf) & 0xFFFFFFFFL;
+        long cenOffset = readInt(raf) & 0xFFFFFFFFL;
+
+        if (diskNumber != 0 || cenDiskNumber != 0 || diskEntries != totalEntries) {
+            throw new ZipException("Multi-volume zip files are not supported: " + file);
+        }
+
+        if (endOffset >= 20) {
+            raf.seek(endOffset - 20);
+
+            if (readInt(raf) == ZIP64_LOCSIG) {
+                throw new ZipException("ZIP64 files are not supported: " + file);
+            }
+        }
+
+        if (cenOffset + cenSize > endOffset) {
+            throw new ZipException("Invalid central directory: " + file);
+        }
+
+        byte[] cen = new byte[(int) cenSize];
+
+        raf.seek(cenOffset);
+        raf.readFully(cen);
+
+        List<Entry> entries = new ArrayList<Entry>(totalEntries);
+        int pos = 0;
+
+        while (pos < cen.length) {
+            if (pos + CENHDR > cen.length || getInt(cen, pos) != CENSIG) {
+                throw new ZipException("Invalid central directory header: " + file);
+            }
+
+            int nameLength = getShort(cen, pos + 28);
+            int extraLength = getShort(cen, pos + 30);
+            int commentLength = getShort(cen, pos + 32);
+            int headerLength = CENHDR + nameLength + extraLength + commentLength;
+
+            if (pos + headerLength > cen.length) {
+                throw new ZipException("Invalid central directory header: " + file);
+            }
+
+            Entry entry = new Entry();
+
+            entry.header = new byte[headerLength];
+            System.arraycopy(cen, pos, entry.header, 0, headerLength);
+
+            entry.flags = getShort(cen, pos + 8);
+            entry.method = getShort(cen, pos + 10);
+            entry.dosTime = getInt(cen, pos + 12) & 0xFFFFFFFFL;
+            entry.crc = getInt(cen, pos + 16) & 0xFFFFFFFFL;
+            entry.compressedSize = getInt(cen, pos + 20) & 0xFFFFFFFFL;
+            entry.size = getInt(cen, pos + 24) & 0xFFFFFFFFL;
+            entry.localHeaderOffset = getInt(cen, pos + 42) & 0xFFFFFFFFL;
+            entry.name = decodeName(cen, pos + CENHDR, nameLength);
+
+            if (extraLength > 0) {
+                entry.extra = new byte[extraLength];
+                System.arraycopy(cen, pos + CENHDR + nameLength, entry.extra, 0, extraLength);
+            }
+
+            entries.add(entry);
+            pos += headerLength;
+        }
+
+        if (entries.size() != totalEntries) {
+            throw new ZipException("Mismatched number of entries in central directory: " + file);
+        }
+
+        return entries;
+    }
+
+    /**
+     * 一次读入文件末尾最多<code>ENDHDR + MAX_COMMENT</code>个字节，在内存中从后向前查找end of central directory。
+     * 只有当comment恰好延伸到文件末尾时，才认为找到了end header，以免将comment中的数据误认为签名。
+     */
+    private long findEndOfCentralDirectory(long length) throws IOException {
+        int tailLength = (int) Math.min(length, ENDHDR + MAX_COMMENT);
+        long tailOffset = length - tailLength;
+        byte[] tail = new byte[tailLength];
+
+        raf.seek(tailOffset);
+        raf.readFully(tail);
+
+        for (int pos = tailLength - ENDHDR; pos >= 0; pos--) {
+            if (getInt(tail, pos) == ENDSIG && pos + ENDHDR + getShort(tail, pos + 20) == tailLength) {
+                return tailOffset + pos;
+            }
+        }
+
+        throw new ZipException("Could not find end of central directory: " + file);
+    }
+
+    private static String decodeName(byte[] bytes, int offset, int length) {
+        try {
+            // 和java.util.zip一样，不论是否设置了UTF-8标志，均按UTF-8解码。
+            return new String(bytes, offset, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); // 不应发生
+        }
+    }
+
+    static int getShort(byte[] b, int off) {
+        return b[off] & 0xFF | (b[off + 1] & 0xFF) << 8;
+    }
+
+    static int getInt(byte[] b, int off) {
+        return getShort(b, off) | getShort(b, off + 2) << 16;
+    }
+
+    private static int readShort(RandomAccessFile raf) throws IOException {
+        int b0 = raf.read();
+        int b1 = raf.read();
+
+        if ((b0 | b1) < 0) {
+            throw new EOFException();
+        }
+
+        return b0 | b1 << 8;
+    }
+
+    private static int readInt(RandomAccessFile raf) throws IOException {
+        return readShort(raf) | readShort(raf) << 16;
+    }
+
+    @Override
+    public String toString() {
+        return "RawZipFile[" + file + "]";
+    }
+
+    /** 代表zip文件中的一个entry，其数据来自central directory。 */
+    public final class Entry {
+        private byte[] header;
+        private byte[] extra;
+        private String name;
+        private int    flags;
+        private int    method;
+        private long   dosTime;
+        private long   crc;
+        private long   compressedSize;
+        private long   size;
+        private long   localHeaderOffset;
+        private long   dataOffset = -1;
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        /** 取得entry所在的zip文件。 */
+        public RawZipFile getZipFile() {
+            return RawZipFile.this;
+        }
+
+        /** 取得central directory中的原始记录，包括文件名、extra和注释。 */
+        byte[] getCentralHeader() {
+            return header;
+        }
+
+        /** 转换成<code>ZipEntry</code>，以便和<code>java.util.zip</code>的代码共用。 */
+        public ZipEntry toZipEntry() {
+            ZipEntry entry = new ZipEntry(name);
+
+            entry.setMethod(method);
+            entry.setTime(dosToJavaTime(dosTime));
+            entry.setCrc(crc);
+            entry.setSize(size);
+            entry.setCompressedSize(compressedSize);
+
+            if (extra != null) {
+                entry.setExtra(extra);
+            }
+
+            return entry;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    static long dosToJavaTime(long dtime) {
+        java.util.Date d = new java.util.Date((int) ((dtime >> 25 & 0x7f) + 80), (int) ((dtime >> 21 & 0x0f) - 1),
+                                              (int) (dtime >> 16 & 0x1f), (int) (dtime >> 11 & 0x1f),
+                                              (int) (dtime >> 5 & 0x3f), (int) (dtime << 1 & 0x3e));
+        return d.getTime();
+    }
+
+    @SuppressWarnings("deprecation")
+    static long javaToDosTime(long time) {
+        java.util.Date d = new java.util.Date(time);
+        int year = d.getYear() + 1900;
+
+        if (year < 1980) {
+            return 1 << 21 | 1 << 16;
+        }
+
+        return year - 1980 << 25 | d.getMonth() + 1 << 21 | d.getDate() << 16 | d.getHours() << 11
+               | d.getMinutes() << 5 | d.getSeconds() >> 1;
+    }
+
+    /** 读取zip文件中指定范围的数据。 */
+    private class BoundedInputStream extends InputStream {
+        private long position;
+        private long remaining;
+
+        private BoundedInputStream(long position, long length) {
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            if (len > remaining) {
+                len = (int) remaining;
+            }
+
+            int count;
+
+            synchronized (raf) {
+                raf.seek(position);
+                count = raf.read(b, off, len);
+            }
+
+            if (count > 0) {
+                position += count;
+                remaining -= count;
+            } else if (count < 0) {
+                throw new EOFException("Unexpected end of zip file: " + file);
+            }
+
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static com.alibaba.antx.util.RawZipFile.*;
+
+/**
+ * 可以将另一个zip文件中的entry原样复制过来的<code>ZipOutputStream</code>。
+ * <p>
+ * 通过{@link #putRawEntry(RawZipFile.Entry)}复制的entry，其压缩数据不经过解压和重新压缩，直接复制；通过
+ * {@link #putNextEntry(ZipEntry)}写入的entry则和<code>ZipOutputStream</code>一样被压缩。因此，当一个大的zip文件中只有少数文件被改变时，
+ * 生成新文件的代价只和被改变的文件的大小有关。
+ * </p>
+ * <p>
+ * 和<code>RawZipFile</code>一样，不支持ZIP64格式。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+public class RawZipOutputStream extends ZipOutputStream {
+    private static final int FLAG_DATADESC = 0x08;
+    private static final int FLAG_UTF8     = 0x800;
+
+    private final List<byte[]> centralHeaders = new ArrayList<byte[]>();
+    private final Set<String>  names          = new HashSet<String>();
+    private final CRC32        crc            = new CRC32();
+    private long    written;
+    private boolean finished;
+    private boolean closed;
+
+    // 当前entry
+    private ZipEntry current;
+    private byte[]   currentName;
+    private int      currentFlags;
+    private long     currentTime;
+    private long     currentOffset;
+    private long     currentSize;
+    private long     currentCompressedSize;
+
+    public RawZipOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    /** 将另一个zip文件中的entry原样复制到当前文件中。 */
+    public void putRawEntry(RawZipFile.Entry entry) throws IOException {
+        ensureOpen();
+        closeEntry();
+        checkDuplicated(entry.getName());
+
+        long offset = written;
+
+        written += entry.getZipFile().copyRawEntry(entry, out);
+
+        byte[] header = entry.getCentralHeader().clone();
+
+        putInt(header, 42, offset);
+        centralHeaders.add(header);
+    }
+
+    @Override
+    public void putNextEntry(ZipEntry entry) throws IOException {
+        ensureOpen();
+        closeEntry();
+        checkDuplicated(entry.getName());
+
+        int method = entry.getMethod() == -1 ? DEFLATED : entry.getMethod();
+
+        current = new ZipEntry(entry);
+        current.setMethod(method);
+        currentName = encode(entry.getName());
+        currentFlags = isAscii(entry.getName()) ? 0 : FLAG_UTF8;
+        currentTime = javaToDosTime(entry.getTime() == -1 ? System.currentTimeMillis() : entry.getTime());
+        currentOffset = written;
+        currentSize = 0;
+        currentCompressedSize = 0;
+        crc.reset();
+
+        byte[] extra = entry.getExtra();
+        byte[] header = new byte[LOCHDR];
+
+        if (method == STORED) {
+            if (entry.getSize() == -1 || entry.getCrc() == -1) {
+                throw new ZipException("STORED entry missing size or crc: " + entry.getName());
+            }
+
+            current.setCompressedSize(entry.getSize());
+            putLocalHeader(header, 10, entry.getCrc(), entry.getSize(), entry.getSize(), extra);
+        } else {
+            currentFlags |= FLAG_DATADESC;
+            putLocalHeader(header, 20, 0, 0, 0, extra);
+        }
+
+        writeBytes(header);
+        writeBytes(currentName);
+
+        if (extra != null) {
+            writeBytes(extra);
+        }
+    }
+
+    private void putLocalHeader(byte[] header, int version, long crc, long compressedSize, long size, byte[] extra) {
+        putInt(header, 0, LOCSIG);
+        putShort(header, 4, version);
+        putShort(header, 6, currentFlags);
+        putShort(header, 8, current.getMethod());
+        putInt(header, 10, currentTime);
+        putInt(header, 14, crc);
+        putInt(header, 18, compressedSize);
+        putInt(header, 22, size);
+        putShort(header, 26, currentName.length);
+        putShort(header, 28, extra == null ? 0 : extra.length);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+
+        if (current == null) {
+            throw new ZipException("no current ZIP entry");
+        }
+
+        if (len == 0) {
+            return;
+        }
+
+        crc.update(b, off, len);
+        currentSize += len;
+
+        if (current.getMethod() == STORED) {
+            out.write(b, off, len);
+            written += len;
+            currentCompressedSize += len;
+        } else {
+            def.setInput(b, off, len);
+
+            while (!def.needsInput()) {
+                deflateBuffer();
+            }
+        }
+    }
+
+    private void deflateBuffer() throws IOException {
+        int count = def.deflate(buf, 0, buf.length);
+
+        if (count > 0) {
+            out.write(buf, 0, count);
+            written += count;
+            currentCompressedSize += count;
+        }
+    }
+
+    @Override
+    public void closeEntry() throws IOException {
+        ensureOpen();
+
+        if (current == null) {
+            return;
+        }
+
+        long entryCrc = crc.getValue();
+
+        if (current.getMethod() == STORED) {
+            if (currentSize != current.getSize() || entryCrc != current.getCrc()) {
+                throw new ZipException("invalid entry size or crc: " + current.getName());
+            }
+        } else {
+            def.finish();
+
+            while (!def.finished()) {
+                deflateBuffer();
+            }
+
+            def.reset();
+
+            byte[] descriptor = new byte[16];
+
+            putInt(descriptor, 0, EXTSIG);
+            putInt(descriptor, 4, entryCrc);
+            putInt(descriptor, 8, currentCompressedSize);
+            putInt(descriptor, 12, currentSize);
+            writeBytes(descriptor);
+        }
+
+        byte[] extra = current.getExtra();
+        byte[] comment = current.getComment() == null ? new byte[0] : encode(current.getComment());
+        int extraLength = extra == null ? 0 : extra.length;
+        byte[] header = new byte[CENHDR + currentName.length + extraLength + comment.length];
+
+        putInt(header, 0, CENSIG);
+        putShort(header, 4, 20);
+        putShort(header, 6, current.getMethod() == STORED ? 10 : 20);
+        putShort(header, 8, currentFlags);
+        putShort(header, 10, current.getMethod());
+        putInt(header, 12, currentTime);
+        putInt(header, 16, entryCrc);
+        putInt(header, 20, currentCompressedSize);
+        putInt(header, 24, currentSize);
+        putShort(header, 28, currentName.length);
+        putShort(header, 30, extraLength);
+        putShort(header, 32, comment.length);
+        putInt(header, 42, currentOffset);
+
+        System.arraycopy(currentName, 0, header, CENHDR, currentName.length);
+
+        if (extra != null) {
+            System.arraycopy(extra, 0, header, CENHDR + currentName.length, extraLength);
+        }
+
+        System.arraycopy(comment, 0, header, CENHDR + currentName.length + extraLength, comment.length);
+
+        centralHeaders.add(header);
+        current = null;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        ensureOpen();
+
+        if (finished) {
+            return;
+        }
+
+        closeEntry();
+
+        long cenOffset = written;
+
+        for (byte[] header : centralHeaders) {
+            writeBytes(header);
+        }
+
+        long cenSize = written - cenOffset;
+
+        if (centralHeaders.size() > 0xFFFF || written > 0xFFFFFFFFL) {
+            throw new ZipException("ZIP64 is required but not supported");
+        }
+
+        byte[] end = new byte[ENDHDR];
+
+        putInt(end, 0, ENDSIG);
+        putShort(end, 8, centralHeaders.size());
+        putShort(end, 10, centralHeaders.size());
+        putInt(end, 12, cenSize);
+        putInt(end, 16, cenOffset);
+        writeBytes(end);
+
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        try {
+            finish();
+        } finally {
+            closed = true;
+            def.end();
+            out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void checkDuplicated(String name) throws ZipException {
+        if (finished) {
+            throw new ZipException("ZIP file has been finished");
+        }
+
+        if (!names.add(name)) {
+            throw new ZipException("duplicate entry: " + name);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        out.write(bytes, 0, bytes.length);
+        written += bytes.length;
+    }
+
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static byte[] encode(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); // 不应发生
+        }
+    }
+
+    private static void putShort(byte[] b, int off, int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >> 8);
+    }
+
+    private static void putInt(byte[] b, int off, long value) {
+        putShort(b, off, (int) value);
+        putShort(b, off + 2, (int) (value >> 16));
+    }
+}
@@ -65,6 +65,12 @@ public class ZipScanner {
      */
     protected List dirsExcluded;
 
+    /** The compiled include patterns, built at the start of each scan. */
+    protected PathPatternMatcher includeMatcher;
+
+    /** The compiled exclude patterns, built at the start of each scan. */
+    protected PathPatternMatcher excludeMatcher;
+
     /** Whether or not the file system should be treated as a case sensitive one. */
     protected boolean isCaseSensitive = true;
 
@@ -323,6 +329,9 @@ public class ZipScanner {
             excludes = new String[0];
         }
 
+        includeMatcher = new PathPatternMatcher(includes, isCaseSensitive);
+        excludeMatcher = new PathPatternMatcher(excludes, isCaseSensitive);
+
         filesIncluded = new ArrayList();
         filesNotIncluded = new ArrayList();
         filesExcluded = new ArrayList();
@@ -435,13 +444,7 @@ public class ZipScanner {
      *         include pattern, or <code>false</code> otherwise.
      */
     protected boolean isIncluded(String name) {
-        for (String include : includes) {
-            if (matchPath(include, name, isCaseSensitive)) {
-                return true;
-            }
-        }
-
-        return false;
+        return includeMatcher.matchPath(name);
     }
 
     /**
@@ -452,13 +455,7 @@ public class ZipScanner {
      *         exclude pattern, or <code>false</code> otherwise.
      */
     protected boolean isExcluded(String name) {
-        for (String exclude : excludes) {
-            if (matchPath(exclude, name, isCaseSensitive)) {
-                return true;
-            }
-        }
-
-        return false;
+        return excludeMatcher.matchPath(name);
     }
 
     /**
@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.antx.util.collection;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.alibaba.antx.util.StringUtil;
+import com.alibaba.antx.util.i18n.LocaleInfo;
+
+/**
+ * 读取properties文件，格式和{@link ExtendedProperties}相同。
+ * <p>
+ * 整个文件被读入线程内复用的缓冲区，一次性解码成字符数组，然后直接在数组上分析，只有含转义符的key和value才需要转换。
+ * 结果是一个非同步的只读<code>Map</code>。
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+public class PropertiesParser {
+    private static final int                  MAX_POOLED_SIZE = 1024 * 1024;
+    private static final ThreadLocal<Buffers> buffers         = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+    private final char[]              chars;
+    private final int                 length;
+    private final String              url;
+    private final Map<String, String> props = new HashMap<String, String>();
+    private       int                 pos;
+    private       int                 lineStart;
+    private       int                 lineEnd;
+    private       int                 lineNumber;
+
+    private PropertiesParser(char[] chars, int length, String url) {
+        this.chars = chars;
+        this.length = length;
+        this.url = StringUtil.isEmpty(url) ? "<unknown source>" : url;
+    }
+
+    /**
+     * 从指定的properties文件中，以指定的编码字符集读取属性和值。
+     *
+     * @param resource properties文件
+     * @param charset  编码字符集，如果为<code>null</code>，则使用默认的编码字符集
+     * @return 只读的属性表
+     * @throws IOException 读文件失败
+     */
+    public static Map<String, String> parse(URL resource, String charset) throws IOException {
+        InputStream istream = resource.openStream();
+
+        try {
+            return parse(istream, charset, resource.toExternalForm());
+        } finally {
+            try {
+                istream.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /**
+     * 从指定的输入流中，以指定的编码字符集读取属性和值。输入流不会被关闭。
+     *
+     * @param istream 输入流
+     * @param charset 编码字符集，如果为<code>null</code>，则使用默认的编码字符集
+     * @param url     用于错误信息的文件名
+     * @return 只读的属性表
+     * @throws IOException 读文件失败
+     */
+    public static Map<String, String> parse(InputStream istream, String charset, String url) throws IOException {
+        Buffers buf = buffers.get();
+
+        try {
+            int byteCount = buf.read(istream);
+            int charCount = buf.decode(byteCount, getDecoder(charset));
+
+            PropertiesParser parser = new PropertiesParser(buf.chars, charCount, url);
+
+            parser.parse();
+
+            return Collections.unmodifiableMap(parser.props);
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static CharsetDecoder getDecoder(String charset) throws UnsupportedEncodingException {
+        if (charset == null) {
+            charset = LocaleInfo.getDefault().getCharset();
+        }
+
+        try {
+            // 和InputStreamReader相同，替换非法的字符
+            return Charset.forName(charset).newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        } catch (IllegalArgumentException e) {
+            throw new UnsupportedEncodingException(charset);
+        }
+    }
+
+    private void parse() {
+        while (nextLine()) {
+            int start = lineStart;
+            int end = lineEnd;
+
+            // 去掉行首尾的空白
+            while (start < end && chars[start] <= ' ') {
+                start++;
+            }
+
+            while (end > start && chars[end - 1] <= ' ') {
+                end--;
+            }
+
+            if (start == end || chars[start] == '#' || chars[start] == '!') {
+                continue;
+            }
+
+            int firstLineNumber = lineNumber;
+            char[] line = chars;
+
+            // 如果该行以“\”结尾，则看作是和下一行相连的
+            if (isContinueLine(line, start, end)) {
+                StringBuilder buffer = new StringBuilder(end - start + 80).append(chars, start, end - start);
+
+                do {
+                    buffer.setLength(buffer.length() - 1);
+
+                    // 去掉新行上的空白
+                    if (nextLine()) {
+                        int nextStart = lineStart;
+
+                        while (nextStart < lineEnd && isWhitespace(chars[nextStart])) {
+                            nextStart++;
+                        }
+
+                        buffer.append(chars, nextStart, lineEnd - nextStart);
+                    }
+
+                    line = new char[buffer.length()];
+                    buffer.getChars(0, line.length, line, 0);
+                    start = 0;
+                    end = line.length;
+                } while (isContinueLine(line, start, end));
+            }
+
+            parseLine(line, start, end, firstLineNumber);
+        }
+    }
+
+    /** 读取下一行，行的范围是<code>lineStart</code>至<code>lineEnd</code>。 */
+    private boolean nextLine() {
+        if (pos >= length) {
+            return false;
+        }
+
+        lineStart = pos;
+
+        while (pos < length && chars[pos] != '\n' && chars[pos] != '\r') {
+            pos++;
+        }
+
+        lineEnd = pos;
+
+        if (pos < length) {
+            if (chars[pos] == '\r' && pos + 1 < length && chars[pos + 1] == '\n') {
+                pos += 2;
+            } else {
+                pos++;
+            }
+        }
+
+        lineNumber++;
+
+        return true;
+    }
+
+    private void parseLine(char[] line, int start, int end, int lineNumber) {
+        // 找到key的开始处
+        int keyStart = start;
+
+        while (keyStart < end && isWhitespace(line[keyStart])) {
+            keyStart++;
+        }
+
+        // 忽略空行
+        if (keyStart == end) {
+            return;
+        }
+
+        // 查找key和value的分界符
+        int separatorIndex;
+
+        for (separatorIndex = keyStart; separatorIndex < end; separatorIndex++) {
+            char currentChar = line[separatorIndex];
+
+            if (currentChar == '\\') {
+                separatorIndex++;
+            } else if (currentChar == '=' || isWhitespace(currentChar)) {
+                break;
+            }
+        }
+
+        separatorIndex = Math.min(separatorIndex, end);
+
+        // 跳过key后面的空白、一个“=”、以及“=”后面的空白
+        int valueIndex = separatorIndex;
+
+        while (valueIndex < end && isWhitespace(line[valueIndex])) {
+            valueIndex++;
+        }
+
+        if (valueIndex < end && line[valueIndex] == '=') {
+            valueIndex++;
+        }
+
+        while (valueIndex < end && isWhitespace(line[valueIndex])) {
+            valueIndex++;
+        }
+
+        String key = convert(line, keyStart, separatorIndex, lineNumber);
+        String value = separatorIndex < end ? convert(line, valueIndex, end, lineNumber) : "";
+
+        props.put(key, value);
+    }
+
+    /** 判断该行是否和下一行是连续的行，即是否以奇数个“\”结尾。 */
+    private static boolean isContinueLine(char[] line, int start, int end) {
+        int slashCount = 0;
+
+        for (int i = end - 1; i >= start && line[i] == '\\'; i--) {
+            slashCount++;
+        }
+
+        return slashCount % 2 == 1;
+    }
+
+    private static boolean isWhitespace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\r' || ch == '\n' || ch == '\f';
+    }
+
+    private static int hexDigit(char ch) {
+        if (ch >= '0' && ch <= '9') {
+            return ch - '0';
+        } else if (ch >= 'a' && ch <= 'f') {
+            return ch - 'a' + 10;
+        } else if (ch >= 'A' && ch <= 'F') {
+            return ch - 'A' + 10;
+        } else {
+            return -1;
+        }
+    }
+
+    /** 取得字符串，如果有转义符，则将&#92;uxxxx转换成unicode字符，将特殊符号转换成其原来的格式。 */
+    private String convert(char[] line, int start, int end, int lineNumber) {
+        int escape = start;
+
+        while (escape < end && line[escape] != '\\') {
+            escape++;
+        }
+
+        if (escape == end) {
+            return new String(line, start, end - start);
+        }
+
+        StringBuilder buffer = new StringBuilder(end - start).append(line, start, escape - start);
+
+        for (int x = escape; x < end; ) {
+            char ch = line[x++];
+
+            if (ch != '\\') {
+                buffer.append(ch);
+            } else if (x >= end) {
+                throw new IllegalArgumentException("Invalid \\ at " + url + ", line " + lineNumber);
+            } else if ((ch = line[x++]) == 'u') {
+                if (x + 4 > end) {
+                    throw new IllegalArgumentException("Malformed \\uxxxx encoding at " + url + ", line " + lineNumber);
+                }
+
+                int value = 0;
+
+                for (int i = 0; i < 4; i++) {
+                    int digit = hexDigit(line[x++]);
+
+                    if (digit < 0) {
+                        throw new IllegalArgumentException("Malformed \\uxxxx encoding at " + url + ", line "
+                                                           + lineNumber);
+                    }
+
+                    value = (value << 4) + digit;
+                }
+
+                buffer.append((char) value);
+            } else {
+                if (ch == '\\') {
+                    ch = '\\';
+                } else if (ch == 't') {
+                    ch = '\t';
+                } else if (ch == 'r') {
+                    ch = '\r';
+                } else if (ch == 'n') {
+                    ch = '\n';
+                } else if (ch == 'f') {
+                    ch = '\f';
+                } else {
+                    throw new IllegalArgumentException("Invalid \\" + ch + " at " + url + ", line " + lineNumber);
+                }
+
+                buffer.append(ch);
+            }
+        }
+
+        return buffer.toString();
+    }
+
+    /** 线程内复用的缓冲区，过大的缓冲区用完即丢弃。 */
+    private static class Buffers {
+        private byte[] bytes = new byte[8192];
+        private char[] chars = new char[0];
+
+        /** 读入整个输入流，返回字节数。 */
+        public int read(InputStream istream) throws IOException {
+            int count = 0;
+
+            // 对于文件，可以事先知道其长度
+            if (istream instanceof FileInputStream) {
+                long size = ((FileInputStream) istream).getChannel().size();
+
+                if (size + 1 > bytes.length && size < Integer.MAX_VALUE) {
+                    bytes = new byte[(int) size + 1];
+                }
+            }
+
+            while (true) {
+                if (count == bytes.length) {
+                    byte[] newBytes = new byte[bytes.length * 2];
+
+                    System.arraycopy(bytes, 0, newBytes, 0, count);
+                    bytes = newBytes;
+                }
+
+                int n = istream.read(bytes, count, bytes.length - count);
+
+                if (n < 0) {
+                    return count;
+                }
+
+                count += n;
+            }
+        }
+
+        /** 解码，返回字符数。 */
+        public int decode(int byteCount, CharsetDecoder decoder) {
+            int capacity = (int) Math.ceil(byteCount * (double) decoder.maxCharsPerByte()) + 1;
+
+            if (chars.length < capacity) {
+                chars = new char[capacity];
+            }
+
+            CharBuffer out = CharBuffer.wrap(chars);
+
+            decoder.decode(ByteBuffer.wrap(bytes, 0, byteCount), out, true);
+            decoder.flush(out);
+
+            return out.position();
+        }
+
+        public void release() {
+            if (bytes.length > MAX_POOLED_SIZE) {
+                bytes = new byte[8192];
+            }
+
+            if (chars.length > MAX_POOLED_SIZE) {
+                chars = new char[0];
+            }
+        }
+    }
+}
@@ -24,15 +24,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
-
-import com.alibaba.antx.util.FileUtil;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 /**
  * 文件扫描器。
+ * <p>
+ * 如果设置了<code>Executor</code>，则在扫描一个目录时，其所有子目录的列表会被预先在线程池中读取。
+ * 所有回调仍然在调用<code>scan()</code>的线程中，按照和串行扫描完全相同的顺序进行。
+ * </p>
  *
  * @author Michael Zhou
  */
@@ -40,6 +44,7 @@ public class DirectoryScanner extends AbstractScanner {
     private File basedir;
     private URL  baseURL;
     private boolean followSymlinks = true;
+    private Executor executor;
 
     /**
      * 创建一个文件目录扫描器。
@@ -125,9 +130,27 @@ public class DirectoryScanner extends AbstractScanner {
         this.followSymlinks = followSymlinks;
     }
 
+    /**
+     * 取得用来预读子目录的线程池。
+     *
+     * @return 线程池，如果为<code>null</code>，则串行扫描
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 设置用来预读子目录的线程池。
+     *
+     * @param executor 线程池，如果为<code>null</code>，则串行扫描
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
     /** 执行扫描。 */
     public void scan() {
-        Set processed = new HashSet();
+        Set<String> processed = new HashSet<String>();
 
         getScannerHandler().setScanner(this);
 
@@ -144,66 +167,154 @@ public class DirectoryScanner extends AbstractScanner {
      * @param dir       被扫描的目录
      * @param processed 已被扫描的绝对路径，用来防止因为符合链接错误导致的重复扫描
      */
-    protected void scandir(File dir, Set processed) {
-        // 防止符号链接无限循环
-        try {
-            String canonicalPath = dir.getCanonicalPath();
+    protected void scandir(File dir, Set<String> processed) {
+        scandir(newListing(dir), processed);
+    }
 
-            if (processed.contains(canonicalPath)) {
-                return;
-            }
+    private void scandir(FutureTask<Listing> listingTask, Set<String> processed) {
+        Listing listing = getListing(listingTask);
 
-            processed.add(canonicalPath);
-        } catch (IOException e) {
-            throw new ScannerException(e);
+        // 防止符号链接无限循环
+        if (!processed.add(listing.canonicalPath)) {
+            return;
         }
 
-        // 列出当前目录下的所有文件
-        String[] files = dir.list();
+        // 预读所有子目录
+        @SuppressWarnings("unchecked")
+        FutureTask<Listing>[] subdirs = new FutureTask[listing.names.length];
 
-        if (files == null) {
-            throw new ScannerException("IO error scanning directory " + dir.getAbsolutePath());
+        if (executor != null) {
+            for (int i = 0; i < subdirs.length; i++) {
+                if (listing.directories[i]) {
+                    subdirs[i] = newListing(new File(listing.dir, listing.names[i]));
+                    executor.execute(subdirs[i]);
+                }
+            }
         }
 
-        // 排除符号链接（如果需要的话）
-        if (!followSymlinks) {
-            List noLinks = new ArrayList(files.length);
+        // 递归扫描文件和目录
+        try {
+            for (int i = 0; i < listing.names.length; i++) {
+                String name = getPath() + listing.names[i];
+                String savedPath;
+
+                if (listing.directories[i]) {
+                    savedPath = setPath(name + '/');
 
-            for (int i = 0; i < files.length; i++) {
-                try {
-                    if (!FileUtil.isSymbolicLink(dir, files[i])) {
-                        noLinks.add(files[i]);
+                    getScannerHandler().directory();
+
+                    if (getScannerHandler().followUp()) {
+                        FutureTask<Listing> subdir = subdirs[i];
+
+                        subdirs[i] = null;
+                        scandir(subdir == null ? newListing(new File(listing.dir, listing.names[i])) : subdir,
+                                processed);
+                    } else if (subdirs[i] != null) {
+                        subdirs[i].cancel(false);
+                        subdirs[i] = null;
                     }
-                } catch (IOException e) {
-                    System.err.println("IOException caught while checking for links, couldn't get cannonical path!");
-                    noLinks.add(files[i]);
+                } else {
+                    savedPath = setPath(name);
+
+                    getScannerHandler().file();
+                }
+
+                setPath(savedPath);
+            }
+        } finally {
+            // 扫描被中断时，取消尚未开始的预读
+            for (FutureTask<Listing> subdir : subdirs) {
+                if (subdir != null) {
+                    subdir.cancel(false);
                 }
             }
+        }
+    }
+
+    private FutureTask<Listing> newListing(final File dir) {
+        return new FutureTask<Listing>(new Callable<Listing>() {
+            public Listing call() throws IOException {
+                return new Listing(dir, followSymlinks);
+            }
+        });
+    }
+
+    private Listing getListing(FutureTask<Listing> listingTask) {
+        // 如果该任务仍未开始，则在当前线程中执行，否则等待其结束。
+        listingTask.run();
 
-            files = (String[]) noLinks.toArray(new String[noLinks.size()]);
+        try {
+            return listingTask.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScannerException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new ScannerException(cause);
+            }
         }
+    }
 
-        // 递归扫描文件和目录
-        for (String file2 : files) {
-            String name = getPath() + file2;
-            File file = new File(dir, file2);
-            String savedPath;
+    /** 一个目录的文件列表，以及每个文件是否为目录。 */
+    private static class Listing {
+        private final File      dir;
+        private final String    canonicalPath;
+        private final String[]  names;
+        private final boolean[] directories;
 
-            if (file.isDirectory()) {
-                savedPath = setPath(name + '/');
+        public Listing(File dir, boolean followSymlinks) throws IOException {
+            this.dir = dir;
+            this.canonicalPath = dir.getCanonicalPath();
 
-                getScannerHandler().directory();
+            // 列出当前目录下的所有文件
+            String[] files = dir.list();
 
-                if (getScannerHandler().followUp()) {
-                    scandir(file, processed);
+            if (files == null) {
+                throw new ScannerException("IO error scanning directory " + dir.getAbsolutePath());
+            }
+
+            // 排除符号链接（如果需要的话）
+            if (!followSymlinks) {
+                int count = 0;
+
+                for (String file : files) {
+                    if (!isSymbolicLink(canonicalPath, file)) {
+                        files[count++] = file;
+                    }
                 }
-            } else {
-                savedPath = setPath(name);
 
-                getScannerHandler().file();
+                if (count < files.length) {
+                    String[] noLinks = new String[count];
+
+                    System.arraycopy(files, 0, noLinks, 0, count);
+                    files = noLinks;
+                }
+            }
+
+            this.names = files;
+            this.directories = new boolean[files.length];
+
+            for (int i = 0; i < files.length; i++) {
+                directories[i] = new File(dir, files[i]).isDirectory();
             }
+        }
+
+        /** 和<code>FileUtil.isSymbolicLink()</code>相同，但目录的canonical path只需计算一次。 */
+        private static boolean isSymbolicLink(String canonicalDir, String name) {
+            File toTest = new File(canonicalDir, name);
 
-            setPath(savedPath);
+            try {
+                return !toTest.getAbsolutePath().equals(toTest.getCanonicalPath());
+            } catch (IOException e) {
+                System.err.println("IOException caught while checking for links, couldn't get cannonical path!");
+                return false;
+            }
         }
     }
 }
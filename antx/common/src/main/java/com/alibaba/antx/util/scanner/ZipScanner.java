@@ -23,18 +23,27 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Enumeration;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import com.alibaba.antx.util.ZipUtil;
 
 /**
  * Zip文件扫描器。
+ * <p>
+ * 如果zip文件在本地，且未指定输入流，则通过zip文件的中央目录列出所有entries，只有当handler取得某个entry的输入流时，才解压该entry。
+ * 否则，顺序读取整个zip流。
+ * </p>
  *
  * @author Michael Zhou
  */
 public class ZipScanner extends AbstractScanner {
     private URL            zipURL;
+    private File           zipfile;
+    private ZipFile        zip;
     private ZipInputStream zis;
     private ZipEntry       zipEntry;
 
@@ -56,6 +65,8 @@ public class ZipScanner extends AbstractScanner {
         } catch (MalformedURLException e) {
             throw new IllegalArgumentException(zipfile + " is not a readable file");
         }
+
+        this.zipfile = zipfile;
     }
 
     /**
@@ -98,6 +109,14 @@ public class ZipScanner extends AbstractScanner {
      * @return 输入流
      */
     public InputStream getInputStream() {
+        if (zip != null) {
+            try {
+                return zip.getInputStream(zipEntry);
+            } catch (IOException e) {
+                throw new ScannerException(e);
+            }
+        }
+
         return new FilterInputStream(zis) {
             @Override
             public void close() throws IOException {
@@ -117,6 +136,15 @@ public class ZipScanner extends AbstractScanner {
         }
     }
 
+    /**
+     * 设置本地zip文件，以便通过中央目录随机访问之。
+     *
+     * @param zipfile 本地zip文件，如果为<code>null</code>，则顺序读取zip流
+     */
+    public void setZipFile(File zipfile) {
+        this.zipfile = zipfile;
+    }
+
     /**
      * 取得当前正在处理的zip entry。
      *
@@ -131,6 +159,44 @@ public class ZipScanner extends AbstractScanner {
         getScannerHandler().setScanner(this);
         getScannerHandler().startScanning();
 
+        if (zis == null) {
+            zip = openZipFile();
+        }
+
+        if (zip != null) {
+            try {
+                doScanIndex();
+            } finally {
+                try {
+                    zip.close();
+                } catch (IOException e) {
+                }
+
+                zip = null;
+            }
+        } else {
+            doScanStream();
+        }
+
+        getScannerHandler().endScanning();
+    }
+
+    private ZipFile openZipFile() {
+        if (zipfile == null || !zipfile.isFile()) {
+            return null;
+        }
+
+        try {
+            return new ZipFile(zipfile);
+        } catch (ZipException e) {
+            // 无法读取中央目录，改为顺序读取
+            return null;
+        } catch (IOException e) {
+            throw new ScannerException(e);
+        }
+    }
+
+    private void doScanStream() {
         boolean needClose = false;
 
         if (zis == null) {
@@ -152,8 +218,23 @@ public class ZipScanner extends AbstractScanner {
                 }
             }
         }
+    }
 
-        getScannerHandler().endScanning();
+    /** 根据中央目录执行扫描。 */
+    protected void doScanIndex() {
+        for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+            zipEntry = e.nextElement();
+
+            String savedPath = setPath(zipEntry.getName());
+
+            if (zipEntry.isDirectory()) {
+                getScannerHandler().directory();
+            } else {
+                getScannerHandler().file();
+            }
+
+            setPath(savedPath);
+        }
     }
 
     /** 执行扫描。 */
@@ -35,6 +35,7 @@ import java.util.NoSuchElementException;
  * </p>
  * <ul>
  * <li>在内部以数组的方式保存所有entry, 可以顺序访问</li>
+ * <li>删除entry时只在数组中留下空位, 直到需要按索引访问时才压缩数组, 因此按key删除的代价是常数</li>
  * <li>和<code>DefaultHashMap</code>一样, 没有进行任何<code>synchronized</code>操作</li>
  * </ul>
  *
@@ -59,6 +60,12 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
     /** 记录entry的顺序的数组. */
     protected transient Entry[] order;
 
+    /** <code>order</code>数组中已使用的长度, 包括被删除的entry留下的空位. */
+    private transient int orderSize;
+
+    /** <code>order</code>数组被压缩的次数, 遍历器据此校正自己在数组中的位置. */
+    private transient int compactCount;
+
     /** Key的列表视图. */
     private transient List keyList;
 
@@ -130,10 +137,10 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
     @Override
     public boolean containsValue(Object value) {
         // 覆盖此方法是出于性能的考虑.  利用数组查找更有效.
-        for (int i = 0; i < size; i++) {
+        for (int i = 0; i < orderSize; i++) {
             Entry entry = order[i];
 
-            if (eq(value, entry.getValue())) {
+            if (entry != null && eq(value, entry.getValue())) {
                 return true;
             }
         }
@@ -146,6 +153,7 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
     public void clear() {
         super.clear();
         Arrays.fill(order, null);
+        orderSize = 0;
     }
 
     /**
@@ -220,7 +228,7 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
 
     /** <code>Map.Entry</code>的实现. */
     protected class Entry extends DefaultHashMap.Entry {
-        /** Entry在列表中的索引值. */
+        /** Entry在<code>order</code>数组中的位置. 当数组中没有空位时, 也就是entry在列表中的索引值. */
         protected int index;
 
         /**
@@ -235,19 +243,15 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
             super(h, k, v, n);
         }
 
-        /** 当entry将被删除时, 更新后续的entry的索引值. */
+        /** 当entry将被删除时, 在<code>order</code>数组中留下空位, 待需要时再压缩. */
         @Override
         protected void onRemove() {
-            int numMoved = size - index;
-
-            if (numMoved > 0) {
-                System.arraycopy(order, index + 1, order, index, numMoved);
-            }
-
-            order[size] = null;
+            order[index] = null;
 
-            for (int i = index; i < size; i++) {
-                order[i].index--;
+            if (size == 0) {
+                orderSize = 0;
+            } else if (index == orderSize - 1) {
+                orderSize--;
             }
         }
     }
@@ -260,9 +264,15 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
         /** 当前位置. */
         private int cursor;
 
+        /** 当前位置在<code>order</code>数组中对应的位置. */
+        private int slot;
+
         /** 创建iterator时的修改计数. */
         private int expectedModCount;
 
+        /** 最近一次校正<code>slot</code>时, <code>order</code>数组被压缩的次数. */
+        private int expectedCompactCount;
+
         /**
          * 创建一个list iterator.
          *
@@ -274,8 +284,14 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
                 throw new IndexOutOfBoundsException("Index: " + index);
             }
 
+            if (index > 0) {
+                compact();
+            }
+
             cursor = index;
+            slot = index;
             expectedModCount = modCount;
+            expectedCompactCount = compactCount;
         }
 
         /**
@@ -339,10 +355,13 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
             }
 
             checkForComodification();
+            syncSlot();
+
+            boolean beforeCursor = lastReturned.index < slot;
 
             removeEntryForKey(lastReturned.getKey());
 
-            if (lastReturned.index < cursor) {
+            if (beforeCursor) {
                 cursor--;
             }
 
@@ -362,7 +381,14 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
                 throw new NoSuchElementException();
             }
 
-            lastReturned = order[cursor++];
+            syncSlot();
+
+            while (order[slot] == null) {
+                slot++;
+            }
+
+            lastReturned = order[slot++];
+            cursor++;
 
             return lastReturned;
         }
@@ -379,7 +405,14 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
                 throw new NoSuchElementException();
             }
 
-            lastReturned = order[--cursor];
+            syncSlot();
+
+            do {
+                slot--;
+            } while (order[slot] == null);
+
+            lastReturned = order[slot];
+            cursor--;
 
             return lastReturned;
         }
@@ -399,6 +432,14 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
             lastReturned.setValue(o);
         }
 
+        /** 如果<code>order</code>数组被压缩过, 则entry的位置和索引值一致, 据此校正<code>slot</code>. */
+        private void syncSlot() {
+            if (expectedCompactCount != compactCount) {
+                slot = cursor;
+                expectedCompactCount = compactCount;
+            }
+        }
+
         /** 检查是否同时被修改. */
         private void checkForComodification() {
             if (modCount != expectedModCount) {
@@ -627,6 +668,8 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
             if (o != null && o instanceof Map.Entry) {
                 Entry entry = (Entry) getEntry(((Map.Entry) o).getKey());
 
+                compact();
+
                 if (entry != null && entry.equals(o)) {
                     return entry.index;
                 }
@@ -712,6 +755,7 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
             Entry entry = (Entry) getEntry(o);
 
             if (entry != null) {
+                compact();
                 return entry.index;
             }
 
@@ -792,6 +836,8 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
          */
         @Override
         public int indexOf(Object o) {
+            compact();
+
             for (int i = 0; i < size; i++) {
                 if (eq(o, order[i].getValue())) {
                     return i;
@@ -827,6 +873,7 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
     @Override
     protected void onInit() {
         order = new Entry[threshold];
+        orderSize = 0;
     }
 
     /**
@@ -841,9 +888,15 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
         int i = indexFor(hash, table.length);
         Entry entry = new Entry(hash, key, value, table[i]);
 
+        // 数组已满, 但还有被删除的entry留下的空位
+        if (orderSize == order.length && orderSize > size) {
+            compact();
+        }
+
         table[i] = entry;
-        entry.index = size;
-        order[size++] = entry;
+        entry.index = orderSize;
+        order[orderSize++] = entry;
+        size++;
     }
 
     /**
@@ -904,8 +957,13 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
     protected void transfer(DefaultHashMap.Entry[] newTable) {
         int newCapacity = newTable.length;
 
-        for (int i = 0; i < size; i++) {
+        for (int i = 0; i < orderSize; i++) {
             Entry entry = order[i];
+
+            if (entry == null) {
+                continue;
+            }
+
             int index = indexFor(entry.hash, newCapacity);
 
             entry.next = newTable[index];
@@ -914,7 +972,7 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
     }
 
     /**
-     * 检查指定的索引值是否越界. 如果是, 则掷出运行时异常.
+     * 检查指定的索引值是否越界. 如果是, 则掷出运行时异常. 否则压缩<code>order</code>数组, 以便按索引访问.
      *
      * @param index 要检查的异常
      */
@@ -922,5 +980,29 @@ public class ArrayHashMap extends DefaultHashMap implements ListMap {
         if (index >= size || index < 0) {
             throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
         }
+
+        compact();
+    }
+
+    /** 压缩<code>order</code>数组, 去除被删除的entry所留下的空位, 使entry的位置和索引值一致. */
+    private void compact() {
+        if (orderSize == size) {
+            return;
+        }
+
+        int j = 0;
+
+        for (int i = 0; i < orderSize; i++) {
+            Entry entry = order[i];
+
+            if (entry != null) {
+                entry.index = j;
+                order[j++] = entry;
+            }
+        }
+
+        Arrays.fill(order, j, orderSize, null);
+        orderSize = j;
+        compactCount++;
     }
 }
@@ -0,0 +1,653 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.toolkit.util.collection;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * 线程安全的, 以软引用(或弱引用)保存value的hash表, 适合用作缓存.
+ * </p>
+ * <p>
+ * 和<code>SoftHashMap</code>相比, 这个实现具有以下特性:
+ * </p>
+ * <ul>
+ * <li>hash表被分成多个段(segment), 每个段有自己的锁, 不需要用<code>Collections.synchronizedMap</code>包装</li>
+ * <li>被垃圾回收的value, 由所在的段在写入时, 以及每隔若干次读取时从reference queue中清除, 不必每次访问都清除;
+ * 也可以调用<code>cleanUp()</code>方法, 例如在后台任务中定期清除</li>
+ * <li>可以限制entry的最大个数. 超过时, 每个段各自删除最近最少被访问的entry(LRU)</li>
+ * <li>统计命中, 未命中, 被LRU删除, 以及被垃圾回收的entry数, 以便调整缓存的大小</li>
+ * <li>不支持值为<code>null</code>的key和value</li>
+ * </ul>
+ * <p>
+ * 因为value可能随时被垃圾回收, 所以<code>size()</code>等方法返回的只是近似值.
+ * </p>
+ *
+ * @author Michael Zhou
+ * @see SoftHashMap
+ */
+public class ConcurrentSoftHashMap extends AbstractMap implements ConcurrentMap {
+    /** 默认的段数. */
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /** 最多的段数. */
+    private static final int MAX_SEGMENTS = 1 << 16;
+
+    /** 限制了entry数时, 每个段至少容纳的entry数, 以免按段进行的LRU过于不准确. */
+    private static final int MIN_SEGMENT_SIZE = 16;
+
+    /** 每个段在两次写入之间, 每读取多少次清除一次reference queue - <code>2的整数次幂</code>. */
+    private static final int DRAIN_INTERVAL = 64;
+
+    private final Segment[] segments;
+    private final int       segmentMask;
+    private final boolean   weakValues;
+    private transient Set entrySet;
+
+    /** 创建一个不限大小的, 以软引用保存value的hash表. */
+    public ConcurrentSoftHashMap() {
+        this(0, false, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * 创建一个以软引用保存value的hash表.
+     *
+     * @param maxSize 最多的entry数, <code>0</code>表示不限
+     */
+    public ConcurrentSoftHashMap(int maxSize) {
+        this(maxSize, false, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * 创建一个hash表.
+     *
+     * @param maxSize          最多的entry数, <code>0</code>表示不限. 每个段分别限制自己的entry数, 因此是近似值
+     * @param weakValues       是否以弱引用, 而不是软引用保存value
+     * @param concurrencyLevel 预计同时修改hash表的线程数, 也就是段数
+     */
+    public ConcurrentSoftHashMap(int maxSize, boolean weakValues, int concurrencyLevel) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Illegal max size: " + maxSize);
+        }
+
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("Illegal concurrency level: " + concurrencyLevel);
+        }
+
+        // 确保段数为2的整数次幂, 并且每个段可以容纳足够多的entry.
+        int segmentCount = 1;
+
+        while (segmentCount < concurrencyLevel && segmentCount < MAX_SEGMENTS
+               && (maxSize == 0 || segmentCount * 2 * MIN_SEGMENT_SIZE <= maxSize)) {
+            segmentCount <<= 1;
+        }
+
+        this.segments = new Segment[segmentCount];
+        this.segmentMask = segmentCount - 1;
+        this.weakValues = weakValues;
+
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(maxSize == 0 ? 0 : (maxSize + segmentCount - 1) / segmentCount);
+        }
+    }
+
+    /*
+     * ==========================================================================
+     * ==
+     */
+    /* 实现Map和ConcurrentMap接口的方法 */
+    /*
+     * ==========================================================================
+     * ==
+     */
+
+    /**
+     * 返回hash表中entry的个数. 其中可能包括已被垃圾回收, 但尚未进入reference queue的entry.
+     *
+     * @return hash表中的entry数
+     */
+    @Override
+    public int size() {
+        long size = 0;
+
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 判断是否为空的hash表.
+     *
+     * @return 如果为空, 则返回<code>true</code>
+     */
+    @Override
+    public boolean isEmpty() {
+        for (Segment segment : segments) {
+            if (segment.size() > 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * 返回指定key对应的value, 并记录命中或未命中.
+     *
+     * @param key 要查找的key
+     * @return 指定key对应的value, 如果不存在或已被垃圾回收, 则返回<code>null</code>
+     */
+    @Override
+    public Object get(Object key) {
+        return segmentFor(key).get(key);
+    }
+
+    /**
+     * 如果hash表中包含指定key的entry, 并且value尚未被垃圾回收, 则返回<code>true</code>. 不记录命中或未命中.
+     *
+     * @param key 要查找的key
+     * @return 如果存在, 则返回<code>true</code>
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return segmentFor(key).containsKey(key);
+    }
+
+    /**
+     * 将key和value关联起来. 如果hash表中已经存在此key, 则替换原来的value.
+     *
+     * @param key   要关联的key
+     * @param value 要和key关联的value
+     * @return 原来和此key相关联的value, 如果不存在, 则返回<code>null</code>
+     */
+    @Override
+    public Object put(Object key, Object value) {
+        return segmentFor(key).put(key, value, false);
+    }
+
+    /**
+     * 如果hash表中不存在此key, 或者value已被垃圾回收, 则将key和value关联起来.
+     *
+     * @param key   要关联的key
+     * @param value 要和key关联的value
+     * @return 已经和此key相关联的value, 如果不存在, 则返回<code>null</code>
+     */
+    public Object putIfAbsent(Object key, Object value) {
+        return segmentFor(key).put(key, value, true);
+    }
+
+    /**
+     * 删除指定key对应的entry.
+     *
+     * @param key 要删除的entry的key
+     * @return 被删除的entry的value, 如果entry不存在, 则返回<code>null</code>
+     */
+    @Override
+    public Object remove(Object key) {
+        return segmentFor(key).remove(key, null);
+    }
+
+    /**
+     * 如果指定key对应的value为<code>value</code>, 则删除此entry.
+     *
+     * @param key   要删除的entry的key
+     * @param value 期望的value
+     * @return 如果删除成功, 则返回<code>true</code>
+     */
+    public boolean remove(Object key, Object value) {
+        return value != null && segmentFor(key).remove(key, value) != null;
+    }
+
+    /**
+     * 如果指定key对应的value为<code>oldValue</code>, 则替换成<code>newValue</code>.
+     *
+     * @param key      key
+     * @param oldValue 期望的value
+     * @param newValue 新的value
+     * @return 如果替换成功, 则返回<code>true</code>
+     */
+    public boolean replace(Object key, Object oldValue, Object newValue) {
+        assertNotNull(oldValue);
+        return segmentFor(key).replace(key, oldValue, newValue) != null;
+    }
+
+    /**
+     * 如果hash表中存在指定key, 则替换它的value.
+     *
+     * @param key   key
+     * @param value 新的value
+     * @return 原来的value, 如果不存在, 则返回<code>null</code>
+     */
+    public Object replace(Object key, Object value) {
+        return segmentFor(key).replace(key, null, value);
+    }
+
+    /** 清除hash表中的所有entry. */
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * 返回所有entry的<code>Set</code>. 遍历时取得的是当时尚未被垃圾回收的entry的快照.
+     *
+     * @return 所有entry的<code>Set</code>
+     */
+    @Override
+    public Set entrySet() {
+        return entrySet != null ? entrySet : (entrySet = new EntrySet());
+    }
+
+    /*
+     * ==========================================================================
+     * ==
+     */
+    /* 统计和清理 */
+    /*
+     * ==========================================================================
+     * ==
+     */
+
+    /**
+     * 清除所有已被垃圾回收的entry. 这个方法可以在后台任务中定期调用, 以便及时释放key所占用的内存.
+     */
+    public void cleanUp() {
+        for (Segment segment : segments) {
+            segment.cleanUp();
+        }
+    }
+
+    /**
+     * 取得<code>get</code>命中的次数.
+     *
+     * @return 命中的次数
+     */
+    public long getHitCount() {
+        long count = 0;
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                count += segment.hitCount;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * 取得<code>get</code>未命中的次数, 包括value已被垃圾回收的情形.
+     *
+     * @return 未命中的次数
+     */
+    public long getMissCount() {
+        long count = 0;
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                count += segment.missCount;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * 取得因为超过最大entry数而被删除的entry数.
+     *
+     * @return 被LRU删除的entry数
+     */
+    public long getEvictionCount() {
+        long count = 0;
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                count += segment.evictionCount;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * 取得因为value被垃圾回收而被清除的entry数.
+     *
+     * @return 被垃圾回收的entry数
+     */
+    public long getCollectedCount() {
+        long count = 0;
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                count += segment.collectedCount;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * 取得统计信息的字符串形式.
+     *
+     * @return 统计信息
+     */
+    public String getStatistics() {
+        return "size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions="
+               + getEvictionCount() + ", collected=" + getCollectedCount();
+    }
+
+    /*
+     * ==========================================================================
+     * ==
+     */
+    /* 内部方法 */
+    /*
+     * ==========================================================================
+     * ==
+     */
+
+    /**
+     * 取得key所在的段.
+     *
+     * @param key key
+     * @return 段
+     */
+    private Segment segmentFor(Object key) {
+        assertNotNull(key);
+
+        int h = key.hashCode() * 0x9E3779B9;
+
+        return segments[(h ^ h >>> 16) & segmentMask];
+    }
+
+    /**
+     * 创建引用value的对象.
+     *
+     * @param key   key
+     * @param value value
+     * @param queue reference queue
+     * @return 引用对象
+     */
+    private Reference newValueRef(Object key, Object value, ReferenceQueue queue) {
+        assertNotNull(value);
+
+        return weakValues ? (Reference) new WeakValue(key, value, queue) : new SoftValue(key, value, queue);
+    }
+
+    private static void assertNotNull(Object object) {
+        if (object == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    private static Object getKey(Reference ref) {
+        return ref instanceof SoftValue ? ((SoftValue) ref).key : ((WeakValue) ref).key;
+    }
+
+    /*
+     * ==========================================================================
+     * ==
+     */
+    /* 内部类 */
+    /*
+     * ==========================================================================
+     * ==
+     */
+
+    /** 以软引用保存的value. 同时记住key, 以便被垃圾回收后, 从hash表中删除对应的entry. */
+    private static final class SoftValue extends SoftReference {
+        private final Object key;
+
+        public SoftValue(Object key, Object value, ReferenceQueue queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+
+    /** 以弱引用保存的value. */
+    private static final class WeakValue extends WeakReference {
+        private final Object key;
+
+        public WeakValue(Object key, Object value, ReferenceQueue queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+
+    /** hash表中的一段. 所有的操作都在段的锁中进行. */
+    private final class Segment {
+        private final ReferenceQueue queue = new ReferenceQueue();
+        private final LinkedHashMap  entries;
+        private final int            maxSize;
+        private int                  reads;
+        private long                 hitCount;
+        private long                 missCount;
+        private long                 evictionCount;
+        private long                 collectedCount;
+
+        public Segment(int maxSize) {
+            this.maxSize = maxSize;
+
+            // 如果限制了entry数, 则按访问的顺序排列entry, 以便删除最近最少被访问的entry
+            this.entries = new LinkedHashMap(16, 0.75f, maxSize > 0) {
+                private static final long serialVersionUID = 5231495383961536424L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry eldest) {
+                    if (Segment.this.maxSize > 0 && size() > Segment.this.maxSize) {
+                        if (((Reference) eldest.getValue()).get() == null) {
+                            collectedCount++;
+                        } else {
+                            evictionCount++;
+                        }
+
+                        return true;
+                    }
+
+                    return false;
+                }
+            };
+        }
+
+        public synchronized int size() {
+            drainQueue();
+            return entries.size();
+        }
+
+        public synchronized Object get(Object key) {
+            if ((++reads & DRAIN_INTERVAL - 1) == 0) {
+                drainQueue();
+            }
+
+            Object value = getValue(key);
+
+            if (value != null) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+
+            return value;
+        }
+
+        public synchronized boolean containsKey(Object key) {
+            return getValue(key) != null;
+        }
+
+        public synchronized Object put(Object key, Object value, boolean onlyIfAbsent) {
+            drainQueue();
+
+            if (onlyIfAbsent) {
+                Object oldValue = getValue(key);
+
+                if (oldValue != null) {
+                    return oldValue;
+                }
+            }
+
+            Reference oldRef = (Reference) entries.put(key, newValueRef(key, value, queue));
+
+            return oldRef == null ? null : oldRef.get();
+        }
+
+        public synchronized Object remove(Object key, Object expectedValue) {
+            drainQueue();
+
+            Object value = getValue(key);
+
+            if (value == null || expectedValue != null && !expectedValue.equals(value)) {
+                return null;
+            }
+
+            entries.remove(key);
+
+            return value;
+        }
+
+        public synchronized Object replace(Object key, Object expectedValue, Object newValue) {
+            drainQueue();
+
+            Reference newRef = newValueRef(key, newValue, queue);
+            Object value = getValue(key);
+
+            if (value == null || expectedValue != null && !expectedValue.equals(value)) {
+                return null;
+            }
+
+            entries.put(key, newRef);
+
+            return value;
+        }
+
+        public synchronized void clear() {
+            entries.clear();
+            drainQueue();
+        }
+
+        public synchronized void cleanUp() {
+            drainQueue();
+        }
+
+        /** 取得尚未被垃圾回收的entry的快照. */
+        public synchronized void snapshot(List list) {
+            drainQueue();
+
+            for (Iterator i = entries.entrySet().iterator(); i.hasNext(); ) {
+                Map.Entry entry = (Map.Entry) i.next();
+                Object value = ((Reference) entry.getValue()).get();
+
+                if (value != null) {
+                    list.add(new DefaultMapEntry(entry.getKey(), value));
+                }
+            }
+        }
+
+        /** 取得key对应的value. 如果value已被垃圾回收, 则立即删除entry. */
+        private Object getValue(Object key) {
+            Reference ref = (Reference) entries.get(key);
+
+            if (ref == null) {
+                return null;
+            }
+
+            Object value = ref.get();
+
+            if (value == null) {
+                entries.remove(key);
+                collectedCount++;
+            }
+
+            return value;
+        }
+
+        /** 删除所有value已被垃圾回收的entry. */
+        private void drainQueue() {
+            Reference ref;
+
+            while ((ref = queue.poll()) != null) {
+                Object key = getKey(ref);
+
+                // 只有当entry仍然引用此对象时才删除, 否则entry已被替换或删除
+                if (entries.get(key) == ref) {
+                    entries.remove(key);
+                    collectedCount++;
+                }
+            }
+        }
+    }
+
+    /** entry的集合视图. */
+    private class EntrySet extends AbstractSet {
+        @Override
+        public Iterator iterator() {
+            List list = new ArrayList();
+
+            for (Segment segment : segments) {
+                segment.snapshot(list);
+            }
+
+            final Iterator i = list.iterator();
+
+            return new Iterator() {
+                private Map.Entry current;
+
+                public boolean hasNext() {
+                    return i.hasNext();
+                }
+
+                public Object next() {
+                    return current = (Map.Entry) i.next();
+                }
+
+                public void remove() {
+                    if (current == null) {
+                        throw new IllegalStateException();
+                    }
+
+                    ConcurrentSoftHashMap.this.remove(current.getKey(), current.getValue());
+                    current = null;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return ConcurrentSoftHashMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentSoftHashMap.this.clear();
+        }
+    }
+}
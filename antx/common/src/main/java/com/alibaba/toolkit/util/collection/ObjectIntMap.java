@@ -0,0 +1,584 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.toolkit.util.collection;
+
+import java.util.ConcurrentModificationException;
+
+/**
+ * <p>
+ * 以<code>int</code>为value的hash表. 存取时value不需要被包装成<code>Integer</code>, 因此不实现<code>Map</code>接口.
+ * 适合用作计数器等.
+ * </p>
+ * <p>
+ * 这个hash表的实现具有以下特性:
+ * </p>
+ * <ul>
+ * <li>采用开放地址法(线性探测), key和value分别保存在两个数组中, 不需要为每个entry创建对象</li>
+ * <li>删除entry时, 将同一探测序列上后续的entry前移, 不留下&quot;删除标记&quot;</li>
+ * <li>支持值为<code>null</code>的key. 对于不存在的key, <code>get</code>返回<code>0</code></li>
+ * <li>和<code>DefaultHashMap</code>一样, 没有进行任何<code>synchronized</code>操作</li>
+ * </ul>
+ *
+ * @author Michael Zhou
+ * @see IntObjectMap
+ * @see LongObjectMap
+ */
+public class ObjectIntMap implements Cloneable {
+    /*
+     * ==========================================================================
+     * ==
+     */
+    /* 常量 */
+    /*
+     * ==========================================================================
+     * ==
+     */
+
+    /** 默认的初始容量. */
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /** 最大容量 - <code>2的整数次幂</code>. */
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /** 默认的负载系数. 线性探测在负载较低时, 探测的次数较少. */
+    private static final float DEFAULT_LOAD_FACTOR = 0.5f;
+
+    /** 代表值为<code>null</code>的key, 因为<code>null</code>被用来表示空位. */
+    private static final Object NULL_KEY = new Object();
+
+    /*
+     * ==========================================================================
+     * ==
+     */
+    /* 成员变量 */
+    /*
+     * ==========================================================================
+     * ==
+     */
+
+    /** key的数组, 长度必须是<code>2的整数次幂</code>. <code>null</code>表示空位. */
+    private Object[] keys;
+
+    /** value的数组, 和<code>keys</code>一一对应. */
+    private int[] values;
+
+    /** Hash表中的entry数. */
+    private int size;
+
+    /** 阈值. 当hash表中的entry数达到它时, 自动扩容. */
+    private int threshold;
+
+    /** 负载系数. */
+    private final float loadFactor;
+
+    /** 当hash表发生&quot;结构改变&quot;的计数, 用来实现<i>fail-fast</i>. */
+    private int modCount;
+
+    /*
+     * ==========================================================================
+     * ==
+     */
+    /* 构造函数 */
+    /*
+     * ==========================================================================
+     * ==
+     */
+
+    /** 创建一个空的hash表. 使用默认的初始容量(16)和默认的负载系数(0.5). */
+    public ObjectIntMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 创建一个空的hash表. 使用指定的初始容量和默认的负载系数(0.5).
+     *
+     * @param initialCapacity 初始容量, 也就是不需要扩容即可容纳的entry数
+     */
+    public ObjectIntMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 创建一个空的hash表. 使用指定的初始容量和负载系数.
+     *
+     * @param initialCapacity 初始容量, 也就是不需要扩容即可容纳的entry数
+     * @param loadFactor      负载系数, 必须大于<code>0</code>并小于<code>1</code>
+     */
+    public ObjectIntMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+        }
+
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor)) {
+            throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+        }
+
+        // 确保容量为2的整数次幂, 并且可以容纳initialCapacity个entry.
+        int capacity = 2;
+
+        while (capacity < MAXIMUM_CAPACITY && capacity * loadFactor < initialCapacity) {
+            capacity <<= 1;
+        }
+
+        this.loadFactor = loadFactor;
+
+        allocate(capacity);
+    }
+
+    /*
+     * ==========================================================================
+     * ==
+     */
+    /* 公共方法 */
+    /*
+     * ==========================================================================
+     * ==
+     */
+
+    /**
+     * 返回hash表中entry的个数.
+     *
+     * @return hash表中的entry数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 判断是否为空的hash表.
+     *
+     * @return 如果为空(<code>size() == 0</code>), 则返回<code>true</code>
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 如果hash表中包含指定key的entry, 则返回<code>true</code>.
+     *
+     * @param key 要查找的key
+     * @return 如果存在, 则返回<code>true</code>
+     */
+    public boolean containsKey(Object key) {
+        return indexOf(maskNull(key)) >= 0;
+    }
+
+    /**
+     * 返回指定key对应的value.
+     *
+     * @param key 要查找的key
+     * @return 指定key对应的value, 如果不存在, 则返回<code>0</code>
+     */
+    public int get(Object key) {
+        int index = indexOf(maskNull(key));
+
+        return index >= 0 ? values[index] : 0;
+    }
+
+    /**
+     * 将key和value关联起来. 如果hash表中已经存在此key, 则替换原来的value.
+     *
+     * @param key   要关联的key
+     * @param value 要和key关联的value
+     * @return 原来和此key相关联的value, 如果不存在, 则返回<code>0</code>
+     */
+    public int put(Object key, int value) {
+        Object k = maskNull(key);
+        int index = indexOf(k);
+
+        if (index >= 0) {
+            int oldValue = values[index];
+
+            values[index] = value;
+
+            return oldValue;
+        }
+
+        addEntry(k, value);
+
+        return 0;
+    }
+
+    /**
+     * 将指定key对应的value加上<code>delta</code>. 如果key不存在, 则视原来的value为<code>0</code>.
+     *
+     * @param key   要修改的key
+     * @param delta 增量
+     * @return 修改后的value
+     */
+    public int add(Object key, int delta) {
+        Object k = maskNull(key);
+        int index = indexOf(k);
+
+        if (index >= 0) {
+            return values[index] += delta;
+        }
+
+        addEntry(k, delta);
+
+        return delta;
+    }
+
+    /**
+     * 删除指定key对应的entry.
+     *
+     * @param key 要删除的entry的key
+     * @return 被删除的entry的value, 如果entry不存在, 则返回<code>0</code>
+     */
+    public int remove(Object key) {
+        int index = indexOf(maskNull(key));
+
+        if (index < 0) {
+            return 0;
+        }
+
+        int oldValue = values[index];
+
+        shiftEntries(index);
+        size--;
+        modCount++;
+
+        return oldValue;
+    }
+
+    /** 清除hash表中的所有entry. */
+    public void clear() {
+        modCount++;
+
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = null;
+            values[i] = 0;
+        }
+
+        size = 0;
+    }
+
+    /**
+     * 返回所有key的数组, 顺序不确定.
+     *
+     * @return 所有key的数组
+     */
+    public Object[] keys() {
+        Object[] result = new Object[size];
+        int j = 0;
+
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                result[j++] = unmaskNull(keys[i]);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * 取得遍历所有entry的游标, 顺序不确定. 遍历时不会创建任何对象.
+     *
+     * @return 游标
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * &quot;浅&quot;拷贝hash表, key本身并不被复制.
+     *
+     * @return 被复制的hash表
+     */
+    @Override
+    public Object clone() {
+        ObjectIntMap result;
+
+        try {
+            result = (ObjectIntMap) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(); // 不支持clone(不可能).
+        }
+
+        result.keys = keys.clone();
+        result.values = values.clone();
+        result.modCount = 0;
+
+        return result;
+    }
+
+    /**
+     * 将hash表转换成字符串.
+     *
+     * @return 字符串形式的hash表
+     */
+    @Override
+    public String toString() {
+        StringBuffer buffer = new StringBuffer("{");
+        String separator = "";
+
+        for (Cursor cursor = cursor(); cursor.next(); separator = ", ") {
+            buffer.append(separator).append(cursor.key()).append('=').append(cursor.value());
+        }
+
+        return buffer.append('}').toString();
+    }
+
+    /*
+     * ==========================================================================
+     * ==
+     */
+    /* 内部类 */
+    /*
+     * ==========================================================================
+     * ==
+     */
+
+    /**
+     * 遍历hash表的游标. 用法如下:
+     * <p/>
+     * <pre>
+     * for (ObjectIntMap.Cursor cursor = map.cursor(); cursor.next();) {
+     *     Object key = cursor.key();
+     *     int value = cursor.value();
+     * }
+     * </pre>
+     */
+    public final class Cursor {
+        /** 当前位置. */
+        private int index = -1;
+
+        /** 创建游标时的修改计数. */
+        private int expectedModCount = modCount;
+
+        private Cursor() {
+        }
+
+        /**
+         * 移到下一个entry.
+         *
+         * @return 如果还有下一个entry, 则返回<code>true</code>
+         */
+        public boolean next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+
+            while (++index < keys.length) {
+                if (keys[index] != null) {
+                    return true;
+                }
+            }
+
+            index = keys.length;
+
+            return false;
+        }
+
+        /**
+         * 取得当前entry的key.
+         *
+         * @return 当前entry的key
+         */
+        public Object key() {
+            return unmaskNull(keys[index]);
+        }
+
+        /**
+         * 取得当前entry的value.
+         *
+         * @return 当前entry的value
+         */
+        public int value() {
+            return values[index];
+        }
+
+        /**
+         * 设置当前entry的value.
+         *
+         * @param value 新的value
+         */
+        public void setValue(int value) {
+            values[index] = value;
+        }
+    }
+
+    /*
+     * ==========================================================================
+     * ==
+     */
+    /* 内部方法 */
+    /*
+     * ==========================================================================
+     * ==
+     */
+
+    /**
+     * 将值为<code>null</code>的key替换成<code>NULL_KEY</code>.
+     *
+     * @param key key
+     * @return 不为<code>null</code>的key
+     */
+    private static Object maskNull(Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    /**
+     * 将<code>NULL_KEY</code>还原成<code>null</code>.
+     *
+     * @param key 数组中的key
+     * @return 原来的key
+     */
+    private static Object unmaskNull(Object key) {
+        return key == NULL_KEY ? null : key;
+    }
+
+    /**
+     * 返回key的hash值. 对<code>hashCode</code>进行混合, 以免低位相同的key聚集在一起.
+     *
+     * @param key key(不为<code>null</code>)
+     * @return hash值
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+
+        return h ^ h >>> 16;
+    }
+
+    /**
+     * 查找指定key所在的位置.
+     *
+     * @param key 要查找的key(不为<code>null</code>)
+     * @return key在数组中的位置, 如果不存在, 则返回<code>-1</code>
+     */
+    private int indexOf(Object key) {
+        int mask = keys.length - 1;
+
+        for (int i = hash(key) & mask; ; i = i + 1 & mask) {
+            Object k = keys[i];
+
+            if (k == null) {
+                return -1;
+            }
+
+            if (k == key || k.equals(key)) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * 加入一个不存在的key, 如果表中的项数即将超过阈值, 则容量倍增.
+     *
+     * @param key   key(不为<code>null</code>)
+     * @param value value
+     */
+    private void addEntry(Object key, int value) {
+        modCount++;
+
+        if (size >= threshold) {
+            resize(keys.length * 2);
+        }
+
+        insert(key, value);
+        size++;
+    }
+
+    /**
+     * 将一个不存在的key加入到第一个空位中. 调用时必须确保表中有空位.
+     *
+     * @param key   key(不为<code>null</code>)
+     * @param value value
+     */
+    private void insert(Object key, int value) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+
+        while (keys[i] != null) {
+            i = i + 1 & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /**
+     * 删除指定位置的entry, 并将同一探测序列上后续的entry前移, 以免空位中断对它们的探测.
+     *
+     * @param index 要删除的entry的位置
+     */
+    private void shiftEntries(int index) {
+        int mask = keys.length - 1;
+
+        for (; ; ) {
+            int last = index;
+            Object k;
+
+            for (; ; ) {
+                index = index + 1 & mask;
+                k = keys[index];
+
+                if (k == null) {
+                    keys[last] = null;
+                    values[last] = 0;
+                    return;
+                }
+
+                int slot = hash(k) & mask;
+
+                // 如果entry的理想位置不在(last, index]之间, 则可以被移到last处.
+                if (last <= index ? last >= slot || slot > index : last >= slot && slot > index) {
+                    break;
+                }
+            }
+
+            keys[last] = k;
+            values[last] = values[index];
+        }
+    }
+
+    /**
+     * 分配指定容量的数组.
+     *
+     * @param capacity 容量(必须为2的整数次幂)
+     */
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new int[capacity];
+
+        // 至少留下一个空位, 以便探测终止.
+        threshold = Math.min((int) (capacity * loadFactor), capacity - 1);
+    }
+
+    /**
+     * 对hash表进行扩容. 此方法在entry数达到阈值时被调用.
+     *
+     * @param newCapacity 新的容量(必须为2的整数次幂)
+     */
+    private void resize(int newCapacity) {
+        if (keys.length >= MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("Capacity exceeded: " + MAXIMUM_CAPACITY);
+        }
+
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+
+        allocate(newCapacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                insert(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
@@ -20,15 +20,14 @@ package com.alibaba.toolkit.util.enumeration;
 import java.io.InvalidClassException;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.text.MessageFormat;
 import java.util.Collections;
-import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.WeakHashMap;
 
 import com.alibaba.toolkit.util.collection.ArrayHashMap;
 import com.alibaba.toolkit.util.collection.ListMap;
@@ -43,8 +42,8 @@ import com.alibaba.toolkit.util.typeconvert.Convertible;
  * @version $Id: Enum.java,v 1.1 2003/07/03 07:26:20 baobao Exp $
  */
 public abstract class Enum implements IntegralNumber, Comparable, Serializable, Convertible {
-    private static final long serialVersionUID = -3420208858441821772L;
-    private static final Map  entries          = new WeakHashMap();
+    private static final long             serialVersionUID = -3420208858441821772L;
+    private static final EnumTypeRegistry entries          = new EnumTypeRegistry();
     private final String name;
     private final Object value;
 
@@ -103,7 +102,8 @@ public abstract class Enum implements IntegralNumber, Comparable, Serializable,
 
         enumType.nameMap.put(name, this);
 
-        // 将enum加入valueMap, 如果有多个enum的值相同, 则取第一个
+        // 将enum加入valueMap, 如果有多个enum的值相同, 则取第一个.
+        // valueIndex记录了创建时valueMap的大小, 因此不必在此清除, 下次查找时会自动重建.
         if (!enumType.valueMap.containsKey(this.value)) {
             enumType.valueMap.put(this.value, this);
         }
@@ -174,7 +174,7 @@ public abstract class Enum implements IntegralNumber, Comparable, Serializable,
      * @return 枚举量, 如果不存在, 则返回<code>null</code>
      */
     public static Enum getEnumByValue(Class enumClass, Object value) {
-        return (Enum) getEnumType(enumClass).valueMap.get(value);
+        return getEnumType(enumClass).getEnumByValue(value);
     }
 
     /**
@@ -221,8 +221,27 @@ public abstract class Enum implements IntegralNumber, Comparable, Serializable,
         }
 
         if (enumType.flagSetClassExists && enumType.flagSetClass != null) {
+            Constructor flagSetConstructor = enumType.flagSetConstructor;
+
             try {
-                return (FlagSet) enumType.flagSetClass.newInstance();
+                if (flagSetConstructor != null) {
+                    return (FlagSet) flagSetConstructor.newInstance(new Object[0]);
+                }
+
+                // 第一次创建成功以后, 缓存构造函数, 以后不再检查访问权限
+                FlagSet flagSet = (FlagSet) enumType.flagSetClass.newInstance();
+
+                enumType.flagSetConstructor = getAccessibleConstructor(enumType.flagSetClass);
+
+                return flagSet;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
             } catch (IllegalAccessException e) {
             } catch (InstantiationException e) {
             }
@@ -249,27 +268,6 @@ public abstract class Enum implements IntegralNumber, Comparable, Serializable,
         return flagSet;
     }
 
-    /**
-     * 取得指定类的<code>ClassLoader</code>对应的entry表.
-     *
-     * @param enumClass <code>Enum</code>类
-     * @return entry表
-     */
-    private static Map getEnumEntryMap(Class enumClass) {
-        ClassLoader classLoader = enumClass.getClassLoader();
-        Map entryMap = null;
-        synchronized (entries) {
-            entryMap = (Map) entries.get(classLoader);
-
-            if (entryMap == null) {
-                entryMap = new Hashtable();
-                entries.put(classLoader, entryMap);
-            }
-        }
-
-        return entryMap;
-    }
-
     /**
      * 取得<code>Enum</code>类的<code>EnumType</code>
      *
@@ -286,8 +284,7 @@ public abstract class Enum implements IntegralNumber, Comparable, Serializable,
                                                                     new Object[] { enumClass.getName() }));
         }
 
-        Map entryMap = getEnumEntryMap(enumClass);
-        EnumType enumType = (EnumType) entryMap.get(enumClass.getName());
+        EnumType enumType = entries.get(enumClass);
 
         if (enumType == null) {
             Method createEnumTypeMethod = findStaticMethod(enumClass, EnumConstants.CREATE_ENUM_TYPE_METHOD_NAME,
@@ -303,8 +300,9 @@ public abstract class Enum implements IntegralNumber, Comparable, Serializable,
                 }
             }
 
+            // 如果另一个线程已经登记了, 则使用已有的对象
             if (enumType != null) {
-                entryMap.put(enumClass.getName(), enumType);
+                enumType = entries.putIfAbsent(enumClass, enumType);
             }
         }
 
@@ -342,6 +340,26 @@ public abstract class Enum implements IntegralNumber, Comparable, Serializable,
         return null;
     }
 
+    /**
+     * 取得无参数的构造函数, 并使之可以被访问.
+     *
+     * @param clazz 类
+     * @return 构造函数, 或<code>null</code>表示不可用
+     */
+    private static Constructor getAccessibleConstructor(Class clazz) {
+        try {
+            Constructor constructor = clazz.getDeclaredConstructor(new Class[0]);
+
+            constructor.setAccessible(true);
+
+            return constructor;
+        } catch (NoSuchMethodException e) {
+        } catch (SecurityException e) {
+        }
+
+        return null;
+    }
+
     /**
      * 查找内部类.
      *
@@ -628,8 +646,33 @@ public abstract class Enum implements IntegralNumber, Comparable, Serializable,
         final ListMap valueMap = new ArrayHashMap();
         boolean flagSetClassExists = true;
         Class   flagSetClass;
+        volatile Constructor flagSetConstructor;
+        volatile ValueIndex  valueIndex;
         FlagSet fullSet;
 
+        /**
+         * 取得指定值的枚举量. 如果所有的值都是连续的<code>Integer</code>或<code>Long</code>, 则直接从数组中取得.
+         *
+         * @param value 枚举量的值
+         * @return 枚举量, 如果不存在, 则返回<code>null</code>
+         */
+        final Enum getEnumByValue(Object value) {
+            ValueIndex index = valueIndex;
+
+            // 如果索引创建之后又有新的枚举量加入, 则重建索引.
+            // 不能依赖构造函数清除索引, 因为另一个线程可能在清除之后, 才存入之前创建的不完整的索引.
+            if (index == null || index.size != valueMap.size()) {
+                index = ValueIndex.create(valueMap);
+                valueIndex = index;
+            }
+
+            if (index.values != null && value != null && value.getClass() == index.type) {
+                return index.get(((Number) value).longValue());
+            }
+
+            return (Enum) valueMap.get(value);
+        }
+
         /**
          * 设置指定值为当前值.
          *
@@ -696,4 +739,74 @@ public abstract class Enum implements IntegralNumber, Comparable, Serializable,
          */
         protected abstract boolean isPowerOfTwo(Object value);
     }
+
+    /**
+     * 按值直接索引的枚举量数组, 创建以后不再改变. 当值不连续时, <code>values</code>为<code>null</code>.
+     * <code>size</code>为创建索引时枚举量的个数, 用来判断索引是否过时.
+     */
+    private static final class ValueIndex {
+        private static final int MIN_SIZE = 16;
+        private final int    size;
+        private final Class  type;
+        private final long   base;
+        private final Enum[] values;
+
+        private ValueIndex(int size, Class type, long base, Enum[] values) {
+            this.size = size;
+            this.type = type;
+            this.base = base;
+            this.values = values;
+        }
+
+        /**
+         * 为所有的值创建索引.
+         *
+         * @param valueMap 值和枚举量的表
+         * @return 索引, 如果值不是同一类型的<code>Integer</code>或<code>Long</code>, 或者太分散, 则<code>values</code>为
+         *         <code>null</code>
+         */
+        public static ValueIndex create(ListMap valueMap) {
+            int size = valueMap.size();
+            Class type = null;
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+
+            for (Iterator i = valueMap.keySet().iterator(); i.hasNext(); ) {
+                Object value = i.next();
+
+                if (value == null || value.getClass() != Integer.class && value.getClass() != Long.class
+                    || type != null && value.getClass() != type) {
+                    return new ValueIndex(size, null, 0, null);
+                }
+
+                type = value.getClass();
+
+                long longValue = ((Number) value).longValue();
+
+                min = Math.min(min, longValue);
+                max = Math.max(max, longValue);
+            }
+
+            // 值太分散(例如flags)时, 仍然使用hash表
+            if (type == null || max - min < 0 || max - min >= Math.max(size * 2, MIN_SIZE)) {
+                return new ValueIndex(size, null, 0, null);
+            }
+
+            Enum[] values = new Enum[(int) (max - min + 1)];
+
+            for (Iterator i = valueMap.entrySet().iterator(); i.hasNext(); ) {
+                Map.Entry entry = (Map.Entry) i.next();
+
+                values[(int) (((Number) entry.getKey()).longValue() - min)] = (Enum) entry.getValue();
+            }
+
+            return new ValueIndex(size, type, min, values);
+        }
+
+        public Enum get(long value) {
+            long index = value - base;
+
+            return index >= 0 && index < values.length ? values[(int) index] : null;
+        }
+    }
 }
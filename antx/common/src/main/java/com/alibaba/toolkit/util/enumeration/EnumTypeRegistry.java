@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2002-2012 Alibaba Group Holding Limited.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.toolkit.util.enumeration;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.alibaba.toolkit.util.enumeration.Enum.EnumType;
+
+/**
+ * 按<code>ClassLoader</code>分别保存<code>EnumType</code>的注册表.
+ * <p>
+ * 查找不需要加锁: class loader表是一个不可变的数组, 只在加入新的class loader时被整体替换, class loader被弱引用所持有;
+ * 每个class loader所对应的<code>EnumType</code>表是一个<code>ConcurrentHashMap</code>.
+ * </p>
+ *
+ * @author Michael Zhou
+ */
+final class EnumTypeRegistry {
+    private final    ConcurrentMap bootstrapTypes = new ConcurrentHashMap();
+    private volatile LoaderEntry[] loaders        = new LoaderEntry[0];
+
+    /**
+     * 取得<code>Enum</code>类对应的<code>EnumType</code>.
+     *
+     * @param enumClass <code>Enum</code>类
+     * @return <code>EnumType</code>对象, 如果不存在, 则返回<code>null</code>
+     */
+    public EnumType get(Class enumClass) {
+        ConcurrentMap types = getTypes(enumClass.getClassLoader(), false);
+
+        return types == null ? null : (EnumType) types.get(enumClass.getName());
+    }
+
+    /**
+     * 登记<code>Enum</code>类对应的<code>EnumType</code>. 如果另一个线程已经登记了, 则返回已有的对象.
+     *
+     * @param enumClass <code>Enum</code>类
+     * @param enumType  <code>EnumType</code>对象
+     * @return 被登记的<code>EnumType</code>对象
+     */
+    public EnumType putIfAbsent(Class enumClass, EnumType enumType) {
+        ConcurrentMap types = getTypes(enumClass.getClassLoader(), true);
+        EnumType existing = (EnumType) types.putIfAbsent(enumClass.getName(), enumType);
+
+        return existing == null ? enumType : existing;
+    }
+
+    /**
+     * 取得class loader对应的<code>EnumType</code>表.
+     *
+     * @param classLoader class loader
+     * @param create      如果不存在, 是否创建
+     * @return <code>EnumType</code>表, 如果不存在且<code>create</code>为<code>false</code>, 则返回<code>null</code>
+     */
+    private ConcurrentMap getTypes(ClassLoader classLoader, boolean create) {
+        if (classLoader == null) {
+            return bootstrapTypes;
+        }
+
+        for (LoaderEntry entry : loaders) {
+            if (entry.get() == classLoader) {
+                return entry.types;
+            }
+        }
+
+        if (!create) {
+            return null;
+        }
+
+        synchronized (this) {
+            // 再查找一次, 同时清除已被回收的class loader.
+            List newLoaders = new ArrayList(loaders.length + 1);
+
+            for (LoaderEntry entry : loaders) {
+                ClassLoader loader = (ClassLoader) entry.get();
+
+                if (loader == classLoader) {
+                    return entry.types;
+                }
+
+                if (loader != null) {
+                    newLoaders.add(entry);
+                }
+            }
+
+            LoaderEntry newEntry = new LoaderEntry(classLoader);
+
+            newLoaders.add(newEntry);
+            loaders = (LoaderEntry[]) newLoaders.toArray(new LoaderEntry[newLoaders.size()]);
+
+            return newEntry.types;
+        }
+    }
+
+    /** 代表一个class loader, 及其所对应的<code>EnumType</code>表. */
+    private static final class LoaderEntry extends WeakReference {
+        private final ConcurrentMap types = new ConcurrentHashMap();
+
+        public LoaderEntry(ClassLoader classLoader) {
+            super(classLoader);
+        }
+    }
+}
@@ -17,17 +17,16 @@
 
 package com.alibaba.toolkit.util.resourcebundle;
 
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
-import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.MissingResourceException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 
-import com.alibaba.toolkit.util.collection.SoftHashMap;
 import com.alibaba.toolkit.util.resourcebundle.xml.XMLResourceBundleFactory;
 
 /**
@@ -427,22 +426,23 @@ public abstract class ResourceBundleFactory {
         }
     }
 
-    /** 将(factory, bundleName, defaultLocale)映射到bundle对象的cache类. */
-    private static final class Cache extends SoftHashMap {
-        /** 静态的key, 用来在cache中查找bundle. 使用静态量可以减少GC的负担. 使用cacheKey必须对整个cache进行同步. */
-        private static final CacheKey cacheKey = new CacheKey();
-
-        /**
-         * 这个hash表用来同步多个线程, 以便同时装入同一个bundle. 这个hash表保存了cacheKey到thread的映射.
-         * 使用此hash表必须对整个cache进行同步.
-         */
-        private final Map underConstruction = new HashMap(ResourceBundleConstant.MAX_BUNDLES_SEARCHED,
-                                                          ResourceBundleConstant.CACHE_LOAD_FACTOR);
-
-        /** 构造一个cache. */
-        public Cache() {
-            super(ResourceBundleConstant.INITIAL_CACHE_SIZE, ResourceBundleConstant.CACHE_LOAD_FACTOR);
-        }
+    /**
+     * 将(factory, bundleName, defaultLocale)映射到bundle对象的cache类.
+     * <p>
+     * 查找bundle不需要加锁. 每个正在构造的bundle在表中占据一个<code>Construction</code>对象,
+     * 其它需要同一bundle的线程只等待这一个bundle构造完毕, 而不会阻塞其它bundle的查找.
+     * bundle对象被软引用所持有, 当内存不足时会自动释放.
+     * </p>
+     * <p>
+     * 查找时使用强引用factory的临时key, 只有放入表中的key才以软引用持有factory.
+     * 每个线程正在构造的bundle被记录在<code>ThreadLocal</code>中, 构造失败时只需清除这些bundle, 而不必扫描整个表.
+     * </p>
+     */
+    private static final class Cache {
+        private final ConcurrentMap<CacheKey, Object> map          = new ConcurrentHashMap<CacheKey, Object>(
+                ResourceBundleConstant.INITIAL_CACHE_SIZE, ResourceBundleConstant.CACHE_LOAD_FACTOR);
+        private final ReferenceQueue                  queue        = new ReferenceQueue();
+        private final ThreadLocal<List<CacheKey>>     constructing = new ThreadLocal<List<CacheKey>>();
 
         /**
          * 在cache中查找bundle.
@@ -452,13 +452,10 @@ public abstract class ResourceBundleFactory {
          * @param defaultLocale 系统locale
          * @return 被cache的bundle. 如果未找到, 则返回<code>null</code>
          */
-        public synchronized Object get(ResourceBundleFactory factory, String bundleName, Locale defaultLocale) {
-            cacheKey.set(factory, bundleName, defaultLocale);
-
-            Object result = get(cacheKey);
+        public Object get(ResourceBundleFactory factory, String bundleName, Locale defaultLocale) {
+            Object value = map.get(new CacheKey(factory, bundleName, defaultLocale, false));
 
-            cacheKey.clear();
-            return result;
+            return value instanceof BundleRef ? ((BundleRef) value).get() : null;
         }
 
         /**
@@ -471,55 +468,43 @@ public abstract class ResourceBundleFactory {
          * @param defaultLocale 系统locale
          * @return 被cache的bundle. 如果未找到, 则返回<code>null</code>
          */
-        public synchronized Object getWait(ResourceBundleFactory factory, String bundleName, Locale defaultLocale) {
-            Object result;
+        public Object getWait(ResourceBundleFactory factory, String bundleName, Locale defaultLocale) {
+            CacheKey key = new CacheKey(factory, bundleName, defaultLocale, false);
 
-            // 首先查找cache中是否已经有这个bundle了, 如果有, 直接返回.
-            cacheKey.set(factory, bundleName, defaultLocale);
-            result = get(cacheKey);
+            while (true) {
+                Object value = map.get(key);
 
-            if (result != null) {
-                cacheKey.clear();
-                return result;
-            }
+                if (value instanceof BundleRef) {
+                    Object bundle = ((BundleRef) value).get();
 
-            // 检查是不已经有另一个thread正在创建这个bundle.
-            // 注意, 有可能递归调用getBundle方法, 例如, 在factory中调用了getBundle.
-            // 这种情况下, beingBuilt == false
-            Thread builder = (Thread) underConstruction.get(cacheKey);
-            boolean beingBuilt = builder != null && builder != Thread.currentThread();
-
-            // 如果已经有另一个thread正在创建这个bundle.
-            if (beingBuilt) {
-                while (beingBuilt) {
-                    cacheKey.clear();
-
-                    try {
-                        // 等待, 直到别的线程创建完成.
-                        wait();
-                    } catch (InterruptedException e) {
+                    if (bundle != null) {
+                        return bundle;
                     }
 
-                    cacheKey.set(factory, bundleName, defaultLocale);
-                    beingBuilt = underConstruction.containsKey(cacheKey);
-                }
+                    // bundle已被释放, 准备重新构造此bundle.
+                    if (map.replace(key, value, new Construction())) {
+                        startConstruction(key);
+                        return null;
+                    }
+                } else if (value instanceof Construction) {
+                    Construction construction = (Construction) value;
 
-                // 如果另一个线程把这个bundle创建好了, 则直接返回即可
-                result = get(cacheKey);
+                    // 注意, 有可能递归调用getBundle方法, 例如, 在factory中调用了getBundle.
+                    // 这种情况下, 不必等待.
+                    if (construction.builder == Thread.currentThread()) {
+                        return null;
+                    }
 
-                if (result != null) {
-                    cacheKey.clear();
-                    return result;
+                    // 等待, 直到别的线程创建完成.
+                    construction.await();
+                } else if (map.putIfAbsent(new CacheKey(factory, bundleName, defaultLocale, true),
+                                           new Construction()) == null) {
+                    // 如果bundle不在cache中, 则准备构造此bundle.
+                    // 调用者必须在随后调用put或cleanUpConstructionList方法, 否则将会死锁.
+                    startConstruction(key);
+                    return null;
                 }
             }
-
-            // 如果bundle不在cache中, 则准备构造此bundle.
-            // 调用者必须在随后调用put或cleanUpConstructionList方法, 否则将会死锁.
-            underConstruction.put(cacheKey.clone(), Thread.currentThread());
-
-            cacheKey.clear();
-
-            return null;
         }
 
         /**
@@ -530,67 +515,162 @@ public abstract class ResourceBundleFactory {
          * @param defaultLocale 系统locale
          * @param bundle        将被cache的bundle对象
          */
-        public synchronized void put(ResourceBundleFactory factory, String bundleName, Locale defaultLocale,
-                                     Object bundle) {
-            cacheKey.set(factory, bundleName, defaultLocale);
-
-            put(cacheKey.clone(), bundle);
+        public void put(ResourceBundleFactory factory, String bundleName, Locale defaultLocale, Object bundle) {
+            expungeStaleEntries();
 
-            underConstruction.remove(cacheKey);
+            CacheKey key = new CacheKey(factory, bundleName, defaultLocale, true);
+            Object old = map.put(key, new BundleRef(key, bundle, queue));
 
-            cacheKey.clear();
+            // 唤醒等待此bundle的线程
+            if (old instanceof Construction) {
+                if (((Construction) old).builder == Thread.currentThread()) {
+                    endConstruction(key);
+                }
 
-            // 唤醒所有线程
-            notifyAll();
+                ((Construction) old).done();
+            }
         }
 
         /** 从"正在构造bundle"的线程表中清除当前线程. 如果装入bundle失败, 则需要调用此方法. */
-        public synchronized void cleanUpConstructionList() {
-            final Collection entries = underConstruction.values();
+        public void cleanUpConstructionList() {
+            List<CacheKey> keys = constructing.get();
+
+            if (keys == null) {
+                return;
+            }
+
+            constructing.remove();
+
             final Thread thisThread = Thread.currentThread();
 
-            while (entries.remove(thisThread)) {
+            for (CacheKey key : keys) {
+                Object value = map.get(key);
+
+                if (value instanceof Construction && ((Construction) value).builder == thisThread) {
+                    if (map.remove(key, value)) {
+                        ((Construction) value).done();
+                    }
+                }
+            }
+        }
+
+        /** 记录当前线程正在构造的bundle. */
+        private void startConstruction(CacheKey key) {
+            List<CacheKey> keys = constructing.get();
+
+            if (keys == null) {
+                keys = new ArrayList<CacheKey>(2);
+                constructing.set(keys);
+            }
+
+            keys.add(key);
+        }
+
+        /** bundle构造完成, 从当前线程的记录中删除. */
+        private void endConstruction(CacheKey key) {
+            List<CacheKey> keys = constructing.get();
+
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                constructing.remove();
             }
+        }
+
+        /** 清除已被释放的bundle. */
+        private void expungeStaleEntries() {
+            BundleRef ref;
+
+            while ((ref = (BundleRef) queue.poll()) != null) {
+                map.remove(ref.key, ref);
+            }
+        }
+    }
+
+    /** 被cache的bundle的软引用. */
+    private static final class BundleRef extends SoftReference {
+        private final CacheKey key;
 
-            // 唤醒所有线程
-            notifyAll();
+        public BundleRef(CacheKey key, Object bundle, ReferenceQueue queue) {
+            super(bundle, queue);
+            this.key = key;
         }
     }
 
-    /** 和bundle对应的cache key, 由bundle工厂, bundle名称, 系统locale几个字段组成. */
-    private static final class CacheKey implements Cloneable {
-        private SoftReference factoryRef;
-        private String        bundleName;
-        private Locale        defaultLocale;
-        private int           hashCode;
+    /** 代表一个正在被某线程构造的bundle. */
+    private static final class Construction {
+        private final Thread         builder = Thread.currentThread();
+        private final CountDownLatch latch   = new CountDownLatch(1);
+
+        /** 等待, 直到bundle被构造完成或构造失败. */
+        public void await() {
+            boolean interrupted = false;
+
+            while (true) {
+                try {
+                    latch.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public void done() {
+            latch.countDown();
+        }
+    }
+
+    /**
+     * 和bundle对应的cache key, 由bundle工厂, bundle名称, 系统locale几个字段组成.
+     * <p>
+     * 放入cache的key以软引用持有bundle工厂, 查找用的临时key则直接持有工厂, 不必创建软引用.
+     * </p>
+     */
+    private static final class CacheKey {
+        private final ResourceBundleFactory factory;
+        private final SoftReference         factoryRef;
+        private final boolean               hasFactory;
+        private final String                bundleName;
+        private final Locale                defaultLocale;
+        private final int                   hashCode;
 
         /**
-         * 设置cache key.
+         * 创建cache key.
          *
          * @param factory       bundle工厂
          * @param bundleName    bundle名称
          * @param defaultLocale 系统locale
+         * @param stored        是否被放入cache中, 如果是, 则以软引用持有工厂
          */
-        public void set(ResourceBundleFactory factory, String bundleName, Locale defaultLocale) {
-            this.bundleName = bundleName;
-            this.hashCode = bundleName.hashCode();
-            this.defaultLocale = defaultLocale;
+        public CacheKey(ResourceBundleFactory factory, String bundleName, Locale defaultLocale, boolean stored) {
+            int hashCode = bundleName.hashCode();
 
             if (defaultLocale != null) {
                 hashCode ^= defaultLocale.hashCode();
             }
 
-            if (factory == null) {
-                this.factoryRef = null;
-            } else {
-                factoryRef = new SoftReference(factory);
+            if (factory != null) {
                 hashCode ^= factory.hashCode();
             }
+
+            this.factory = stored ? null : factory;
+            this.factoryRef = stored && factory != null ? new SoftReference(factory) : null;
+            this.hasFactory = factory != null;
+            this.bundleName = bundleName;
+            this.defaultLocale = defaultLocale;
+            this.hashCode = hashCode;
         }
 
-        /** 清除cache key. */
-        public void clear() {
-            set(null, "", null);
+        /**
+         * 取得bundle工厂.
+         *
+         * @return bundle工厂, 如果不存在或已被释放, 则返回<code>null</code>
+         */
+        private Object getFactory() {
+            return factoryRef == null ? factory : factoryRef.get();
         }
 
         /**
@@ -624,11 +704,7 @@ public abstract class ResourceBundleFactory {
                 }
 
                 // factory是否相同?
-                if (factoryRef == null) {
-                    return otherKey.factoryRef == null;
-                } else {
-                    return otherKey.factoryRef != null && eq(factoryRef.get(), otherKey.factoryRef.get());
-                }
+                return hasFactory == otherKey.hasFactory && eq(getFactory(), otherKey.getFactory());
             } catch (NullPointerException e) {
                 return false;
             } catch (ClassCastException e) {
@@ -657,21 +733,6 @@ public abstract class ResourceBundleFactory {
             return hashCode;
         }
 
-        /**
-         * 复制对象.
-         *
-         * @return cache key的复本
-         */
-        @Override
-        public Object clone() {
-            try {
-                return super.clone();
-            } catch (CloneNotSupportedException e) {
-                throw new InternalError(MessageFormat.format(ResourceBundleConstant.RB_CLONE_NOT_SUPPORTED,
-                                                             new Object[] { CacheKey.class.getName() }));
-            }
-        }
-
         /**
          * 取得字符串值表示.
          *
@@ -679,7 +740,7 @@ public abstract class ResourceBundleFactory {
          */
         @Override
         public String toString() {
-            return new StringBuffer("CacheKey[factory=").append(factoryRef == null ? "null" : factoryRef.get())
+            return new StringBuffer("CacheKey[factory=").append(getFactory())
                                                         .append(", bundleName=").append(bundleName).append(", defaultLocale=").append(defaultLocale)
                                                         .append("]").toString();
         }
@@ -17,16 +17,22 @@
 
 package com.alibaba.toolkit.util.typeconvert;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.sql.Date;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.alibaba.toolkit.util.enumeration.Enum;
 import com.alibaba.toolkit.util.enumeration.EnumConverter;
@@ -51,14 +57,21 @@ import com.alibaba.toolkit.util.typeconvert.converters.StringConverter;
 
 /**
  * <code>Converter</code>的管理器.
+ * <p>
+ * 每个目标类型所对应的转换器链在第一次使用时被计算出来, 并被缓存, 直到<code>register</code>被调用.
+ * 读取缓存不需要加锁; 缓存以弱引用持有目标类型, 不会阻止其class loader被回收.
+ * </p>
  *
  * @author Michael Zhou
  * @version $Id: ConvertManager.java,v 1.1 2003/07/03 07:26:36 baobao Exp $
  */
 public class ConvertManager {
-    private static final Object NO_DEFAULT_VALUE = new Object();
-    private              Map    registry         = Collections.synchronizedMap(new HashMap());
-    private              Map    aliases          = Collections.synchronizedMap(new HashMap());
+    private static final Object         NO_DEFAULT_VALUE  = new Object();
+    private static final Object         USE_DEFAULT_VALUE = new Object();
+    private              Map            registry          = Collections.synchronizedMap(new HashMap());
+    private              ConcurrentMap  aliases           = new ConcurrentHashMap();
+    private              ConcurrentMap  chains            = new ConcurrentHashMap();
+    private              ReferenceQueue staleTypes        = new ReferenceQueue();
 
     /** 创建一个转换器. */
     public ConvertManager() {
@@ -121,6 +134,9 @@ public class ConvertManager {
             } else {
                 internalRegister(type, converter);
             }
+
+            // 清除已计算的转换器链
+            chains.clear();
         }
     }
 
@@ -131,10 +147,8 @@ public class ConvertManager {
      * @param type  目标类型
      */
     public void registerAlias(String alias, Class type) {
-        synchronized (aliases) {
-            if (alias != null && type != null && !aliases.containsKey(alias)) {
-                aliases.put(alias, type);
-            }
+        if (alias != null && type != null) {
+            aliases.putIfAbsent(alias, type);
         }
     }
 
@@ -165,6 +179,10 @@ public class ConvertManager {
      * @return 转换后的值
      */
     public boolean asBoolean(Object value) {
+        if (isDirect(value, Boolean.class, BooleanConverter.class)) {
+            return ((Boolean) value).booleanValue();
+        }
+
         return ((Boolean) asType(Boolean.class, value)).booleanValue();
     }
 
@@ -176,7 +194,13 @@ public class ConvertManager {
      * @return 转换后的值
      */
     public boolean asBoolean(Object value, boolean defaultValue) {
-        return ((Boolean) asType(Boolean.class, value, new Boolean(defaultValue))).booleanValue();
+        if (isDirect(value, Boolean.class, BooleanConverter.class)) {
+            return ((Boolean) value).booleanValue();
+        }
+
+        Object result = asType(Boolean.class, value, USE_DEFAULT_VALUE);
+
+        return result == USE_DEFAULT_VALUE ? defaultValue : ((Boolean) result).booleanValue();
     }
 
     /**
@@ -186,6 +210,10 @@ public class ConvertManager {
      * @return 转换后的值
      */
     public byte asByte(Object value) {
+        if (isDirect(value, Byte.class, ByteConverter.class)) {
+            return ((Byte) value).byteValue();
+        }
+
         return ((Byte) asType(Byte.class, value)).byteValue();
     }
 
@@ -197,7 +225,13 @@ public class ConvertManager {
      * @return 转换后的值
      */
     public byte asByte(Object value, byte defaultValue) {
-        return ((Byte) asType(Byte.class, value, new Byte(defaultValue))).byteValue();
+        if (isDirect(value, Byte.class, ByteConverter.class)) {
+            return ((Byte) value).byteValue();
+        }
+
+        Object result = asType(Byte.class, value, USE_DEFAULT_VALUE);
+
+        return result == USE_DEFAULT_VALUE ? defaultValue : ((Byte) result).byteValue();
     }
 
     /**
@@ -207,6 +241,10 @@ public class ConvertManager {
      * @return 转换后的值
      */
     public char asChar(Object value) {
+        if (isDirect(value, Character.class, CharacterConverter.class)) {
+            return ((Character) value).charValue();
+        }
+
         return ((Character) asType(Character.class, value)).charValue();
     }
 
@@ -218,7 +256,13 @@ public class ConvertManager {
      * @return 转换后的值
      */
     public char asChar(Object value, char defaultValue) {
-        return ((Character) asType(Character.class, value, new Character(defaultValue))).charValue();
+        if (isDirect(value, Character.class, CharacterConverter.class)) {
+            return ((Character) value).charValue();
+        }
+
+        Object result = asType(Character.class, value, USE_DEFAULT_VALUE);
+
+        return result == USE_DEFAULT_VALUE ? defaultValue : ((Character) result).charValue();
     }
 
     /**
@@ -228,6 +272,10 @@ public class ConvertManager {
      * @return 转换后的值
      */
     public double asDouble(Object value) {
+        if (isDirect(value, Double.class, DoubleConverter.class)) {
+            return ((Double) value).doubleValue();
+        }
+
         return ((Double) asType(Double.class, value)).doubleValue();
     }
 
@@ -239,7 +287,13 @@ public class ConvertManager {
      * @return 转换后的值
      */
     public double asDouble(Object value, double defaultValue) {
-        return ((Double) asType(Double.class, value, new Double(defaultValue))).doubleValue();
+        if (isDirect(value, Double.class, DoubleConverter.class)) {
+            return ((Double) value).doubleValue();
+        }
+
+        Object result = asType(Double.class, value, USE_DEFAULT_VALUE);
+
+        return result == USE_DEFAULT_VALUE ? defaultValue : ((Double) result).doubleValue();
     }
 
     /**
@@ -249,6 +303,10 @@ public class ConvertManager {
      * @return 转换后的值
      */
     public float asFloat(Object value) {
+        if (isDirect(value, Float.class, FloatConverter.class)) {
+            return ((Float) value).floatValue();
+        }
+
         return ((Float) asType(Float.class, value)).floatValue();
     }
 
@@ -260,7 +318,13 @@ public class ConvertManager {
      * @return 转换后的值
      */
     public float asFloat(Object value, float defaultValue) {
-        return ((Float) asType(Float.class, value, new Float(defaultValue))).floatValue();
+        if (isDirect(value, Float.class, FloatConverter.class)) {
+            return ((Float) value).floatValue();
+        }
+
+        Object result = asType(Float.class, value, USE_DEFAULT_VALUE);
+
+        return result == USE_DEFAULT_VALUE ? defaultValue : ((Float) result).floatValue();
     }
 
     /**
@@ -270,6 +334,10 @@ public class ConvertManager {
      * @return 转换后的值
      */
     public int asInt(Object value) {
+        if (isDirect(value, Integer.class, IntegerConverter.class)) {
+            return ((Integer) value).intValue();
+        }
+
         return ((Integer) asType(Integer.class, value)).intValue();
     }
 
@@ -281,7 +349,13 @@ public class ConvertManager {
      * @return 转换后的值
      */
     public int asInt(Object value, int defaultValue) {
-        return ((Integer) asType(Integer.class, value, new Integer(defaultValue))).intValue();
+        if (isDirect(value, Integer.class, IntegerConverter.class)) {
+            return ((Integer) value).intValue();
+        }
+
+        Object result = asType(Integer.class, value, USE_DEFAULT_VALUE);
+
+        return result == USE_DEFAULT_VALUE ? defaultValue : ((Integer) result).intValue();
     }
 
     /**
@@ -291,6 +365,10 @@ public class ConvertManager {
      * @return 转换后的值
      */
     public long asLong(Object value) {
+        if (isDirect(value, Long.class, LongConverter.class)) {
+            return ((Long) value).longValue();
+        }
+
         return ((Long) asType(Long.class, value)).longValue();
     }
 
@@ -302,7 +380,13 @@ public class ConvertManager {
      * @return 转换后的值
      */
     public long asLong(Object value, long defaultValue) {
-        return ((Long) asType(Long.class, value, new Long(defaultValue))).longValue();
+        if (isDirect(value, Long.class, LongConverter.class)) {
+            return ((Long) value).longValue();
+        }
+
+        Object result = asType(Long.class, value, USE_DEFAULT_VALUE);
+
+        return result == USE_DEFAULT_VALUE ? defaultValue : ((Long) result).longValue();
     }
 
     /**
@@ -312,6 +396,10 @@ public class ConvertManager {
      * @return 转换后的值
      */
     public short asShort(Object value) {
+        if (isDirect(value, Short.class, ShortConverter.class)) {
+            return ((Short) value).shortValue();
+        }
+
         return ((Short) asType(Short.class, value)).shortValue();
     }
 
@@ -323,7 +411,13 @@ public class ConvertManager {
      * @return 转换后的值
      */
     public short asShort(Object value, short defaultValue) {
-        return ((Short) asType(Short.class, value, new Short(defaultValue))).shortValue();
+        if (isDirect(value, Short.class, ShortConverter.class)) {
+            return ((Short) value).shortValue();
+        }
+
+        Object result = asType(Short.class, value, USE_DEFAULT_VALUE);
+
+        return result == USE_DEFAULT_VALUE ? defaultValue : ((Short) result).shortValue();
     }
 
     /**
@@ -368,7 +462,7 @@ public class ConvertManager {
      */
     public Object asType(Object targetType, Object value, Object defaultValue) {
         try {
-            return new ChainImpl(this, getTargetType(targetType)).convert(value);
+            return asTypeWithoutDefaultValue(targetType, value);
         } catch (ConvertFailedException e) {
             if (e.isDefaultValueSet()) {
                 return defaultValue == NO_DEFAULT_VALUE ? e.getDefaultValue() : defaultValue;
@@ -386,7 +480,163 @@ public class ConvertManager {
      * @return 转换后的值
      */
     public Object asTypeWithoutDefaultValue(Object targetType, Object value) {
-        return new ChainImpl(this, getTargetType(targetType)).convert(value);
+        Class type = getTargetType(targetType);
+
+        return new ChainImpl(this, type, getConverters(type)).convert(value);
+    }
+
+    /**
+     * 如果值已经是指定的包装类型, 并且该类型的第一个转换器是默认的转换器(它会原样返回这个值), 则不必经过转换器链.
+     *
+     * @param value            要转换的值
+     * @param wrapperType      目标包装类型
+     * @param defaultConverter 默认的转换器类
+     * @return 如果可以直接返回该值, 则返回<code>true</code>
+     */
+    private boolean isDirect(Object value, Class wrapperType, Class defaultConverter) {
+        if (value == null || value.getClass() != wrapperType) {
+            return false;
+        }
+
+        Converter[] converters = getConverters(wrapperType);
+
+        return converters.length > 0 && converters[0].getClass() == defaultConverter;
+    }
+
+    /**
+     * 取得目标类型的转换器链. 依次为: targetType对应的转换器, targetType的基类(不包括Object类)对应的转换器,
+     * targetType的接口对应的转换器, Object类所对应的转换器.
+     *
+     * @param targetType 目标类型
+     * @return 转换器链
+     */
+    private Converter[] getConverters(Class targetType) {
+        Converter[] converters = (Converter[]) chains.get(new TypeKey(targetType));
+
+        if (converters != null) {
+            return converters;
+        }
+
+        // 在锁内计算并缓存, 以免和register冲突而缓存过时的转换器链
+        synchronized (registry) {
+            expungeStaleChains();
+
+            converters = (Converter[]) chains.get(new TypeKey(targetType));
+
+            if (converters != null) {
+                return converters;
+            }
+
+            List result = new ArrayList();
+            TypeInfo targetTypeInfo = TypeInfo.getTypeInfo(targetType);
+
+            addConverters(result, targetType);
+
+            for (Iterator i = targetTypeInfo.getSuperclasses().iterator(); i.hasNext(); ) {
+                Class superclass = (Class) i.next();
+
+                if (!superclass.equals(Object.class)) {
+                    addConverters(result, superclass);
+                }
+            }
+
+            for (Iterator i = targetTypeInfo.getInterfaces().iterator(); i.hasNext(); ) {
+                addConverters(result, (Class) i.next());
+            }
+
+            if (!Object.class.equals(targetType)) {
+                addConverters(result, Object.class);
+            }
+
+            converters = (Converter[]) result.toArray(new Converter[result.size()]);
+            chains.put(new WeakTypeKey(targetType, staleTypes), converters);
+
+            return converters;
+        }
+    }
+
+    /** 清除目标类型已被回收的转换器链. 在registry锁内调用. */
+    private void expungeStaleChains() {
+        Object ref;
+
+        while ((ref = staleTypes.poll()) != null) {
+            chains.remove(ref);
+        }
+    }
+
+    /**
+     * 取得key所代表的类型.
+     *
+     * @param key <code>TypeKey</code>或<code>WeakTypeKey</code>
+     * @return 类型, 如果已被回收, 则返回<code>null</code>
+     */
+    private static Class getType(Object key) {
+        if (key instanceof TypeKey) {
+            return ((TypeKey) key).type;
+        } else if (key instanceof WeakTypeKey) {
+            return (Class) ((WeakTypeKey) key).get();
+        } else {
+            return null;
+        }
+    }
+
+    /** 查找转换器链时使用的临时key, 直接持有类型. */
+    private static final class TypeKey {
+        private final Class type;
+
+        public TypeKey(Class type) {
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other == this || type == getType(other);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(type);
+        }
+    }
+
+    /** 保存在缓存中的key, 以弱引用持有类型. */
+    private static final class WeakTypeKey extends WeakReference {
+        private final int hashCode;
+
+        public WeakTypeKey(Class type, ReferenceQueue queue) {
+            super(type, queue);
+            this.hashCode = System.identityHashCode(type);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other == this) {
+                return true;
+            }
+
+            Object type = get();
+
+            return type != null && type == getType(other);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * 将指定类型的所有转换器加入列表. 不同步.
+     *
+     * @param result 转换器列表
+     * @param type   要查找转换器的类型
+     */
+    private void addConverters(List result, Class type) {
+        LinkedList converters = (LinkedList) registry.get(type);
+
+        if (converters != null) {
+            result.addAll(converters);
+        }
     }
 
     /**
@@ -412,33 +662,26 @@ public class ConvertManager {
     }
 
     /**
-     * 转换器链. 依次尝试: Convertible.getConverter(targetType), targetType对应的转换器,
-     * targetType的基类(不包括Object类)对应的转换器, targetType的接口对应的转换器, Object类所对应的转换器.
+     * 转换器链. 依次尝试: Convertible.getConverter(targetType), 以及<code>getConverters(targetType)</code>中的转换器.
      */
     private class ChainImpl implements ConvertChain {
-        private static final int STATE_START       = 0;
-        private static final int STATE_TARGET_TYPE = STATE_START + 1;
-        private static final int STATE_BASE_TYPE   = STATE_TARGET_TYPE + 1;
-        private static final int STATE_INTERFACE   = STATE_BASE_TYPE + 1;
-        private static final int STATE_OBJECT      = STATE_INTERFACE + 1;
-        private static final int STATE_END         = STATE_OBJECT + 1;
         private final ConvertManager manager;
-        private final TypeInfo       targetTypeInfo;
-        private int state = STATE_START;
-        private Convertible previousConvertibleValue;
-        private Iterator    converterIterator;
-        private Iterator    superclassIterator;
-        private Iterator    interfaceIterator;
+        private final Class          targetType;
+        private final Converter[]    converters;
+        private       int            index;
+        private       Convertible    previousConvertibleValue;
 
         /**
          * 创建转换链.
          *
          * @param manager    创建此链的<code>ConvertManager</code>
          * @param targetType 转换的目标类型
+         * @param converters 转换器链
          */
-        ChainImpl(ConvertManager manager, Class targetType) {
+        ChainImpl(ConvertManager manager, Class targetType, Converter[] converters) {
             this.manager = manager;
-            this.targetTypeInfo = TypeInfo.getTypeInfo(targetType);
+            this.targetType = targetType;
+            this.converters = converters;
         }
 
         /**
@@ -456,7 +699,7 @@ public class ConvertManager {
          * @return 目标类型
          */
         public Class getTargetType() {
-            return targetTypeInfo.getType();
+            return targetType;
         }
 
         /**
@@ -466,8 +709,6 @@ public class ConvertManager {
          * @return 转换后的值
          */
         public Object convert(Object value) {
-            Class targetType = targetTypeInfo.getType();
-
             // 优先处理实现Convertible接口的value值,
             // 并防止对同一个convertible value反复调用其converter
             if (value instanceof Convertible && !value.equals(previousConvertibleValue)) {
@@ -479,134 +720,12 @@ public class ConvertManager {
                 }
             }
 
-            // 开始状态
-            if (state == STATE_START) {
-                state++; // 进入STATE_TARGET_TYPE状态
-                converterIterator = getConverterIterator(targetType);
-            }
-
-            // 处理targetType对应的转换器
-            if (state == STATE_TARGET_TYPE) {
-                if (!hasNext(converterIterator)) {
-                    state++; // 进入STATE_BASE_TYPE状态
-                    superclassIterator = targetTypeInfo.getSuperclasses().iterator();
-                    converterIterator = getSuperclassConverterIterator();
-                }
-            }
-
-            // 处理targetType的基类对应的转换器
-            if (state == STATE_BASE_TYPE) {
-                if (!hasNext(converterIterator)) {
-                    converterIterator = getSuperclassConverterIterator();
-
-                    if (!hasNext(converterIterator)) {
-                        state++; // 进入STATE_INTERFACE状态
-                        interfaceIterator = targetTypeInfo.getInterfaces().iterator();
-                        converterIterator = getInterfaceConverterIterator();
-                    }
-                }
-            }
-
-            // 处理targetType的接口对应的转换器
-            if (state == STATE_INTERFACE) {
-                if (!hasNext(converterIterator)) {
-                    converterIterator = getInterfaceConverterIterator();
-
-                    if (!hasNext(converterIterator)) {
-                        state++; // 进入STATE_OBJECT状态
-
-                        if (!Object.class.equals(targetTypeInfo.getType())) {
-                            converterIterator = getConverterIterator(Object.class);
-                        }
-                    }
-                }
-            }
-
-            // 处理Object类对应的转换器
-            if (state == STATE_OBJECT) {
-                if (!hasNext(converterIterator)) {
-                    state++; // 进入STATE_END状态
-                }
-            }
-
-            // 开始转换
-            if (state != STATE_END) {
-                Converter converter = (Converter) converterIterator.next();
-
-                return converter.convert(value, this);
-            }
-
             // 如果找不到converter, 则失败
-            throw new ConvertFailedException();
-        }
-
-        /**
-         * 取得指定类型的所有转换器.
-         *
-         * @param type 要查找转换器的类型
-         * @return 转换器的<code>Iterator</code>, 如果不存在, 则返回<code>null</code>
-         */
-        private Iterator getConverterIterator(Class type) {
-            LinkedList converters = (LinkedList) registry.get(type);
-
-            if (converters != null && converters.size() > 0) {
-                return converters.iterator();
+            if (index >= converters.length) {
+                throw new ConvertFailedException();
             }
 
-            return null;
-        }
-
-        /**
-         * 取得targetType基类(不包括Object类)的转换器.
-         *
-         * @return 基类的转换器的<code>Iterator</code>, 如果不存在, 则返回<code>null</code>
-         */
-        private Iterator getSuperclassConverterIterator() {
-            Iterator iterator = null;
-
-            while (superclassIterator.hasNext()) {
-                Class superclass = (Class) superclassIterator.next();
-
-                if (!superclass.equals(Object.class)) {
-                    iterator = getConverterIterator(superclass);
-
-                    if (hasNext(iterator)) {
-                        return iterator;
-                    }
-                }
-            }
-
-            return null;
-        }
-
-        /**
-         * 取得targetType接口的转换器.
-         *
-         * @return 接口的转换器的<code>Iterator</code>, 如果不存在, 则返回<code>null</code>
-         */
-        private Iterator getInterfaceConverterIterator() {
-            Iterator iterator = null;
-
-            while (interfaceIterator.hasNext()) {
-                iterator = getConverterIterator((Class) interfaceIterator.next());
-
-                if (hasNext(iterator)) {
-                    return iterator;
-                }
-            }
-
-            return null;
-        }
-
-        /**
-         * 检查iterator是否存在下一个元素.
-         *
-         * @param iterator 要检查的iterator
-         * @return 如果iterator为<code>null</code>, 或iterator已经走到底, 则返回
-         *         <code>false</code>
-         */
-        private boolean hasNext(Iterator iterator) {
-            return iterator != null && iterator.hasNext();
+            return converters[index++].convert(value, this);
         }
     }
 }